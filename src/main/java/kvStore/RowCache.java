@@ -0,0 +1,196 @@
+package kvStore;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Byte-bounded LRU cache of fully resolved point lookups from the SSTables, "not found" results included.
+ *
+ * Invalidations bump the generation counter of the shard their key falls in, range invalidations those of
+ * every shard. A reader takes its key's generation before it goes to disk and only caches its result if no
+ * invalidation happened in between, so a lookup racing with a flush can never cache a value that the flush
+ * has already superseded, while writes to keys of other shards do not keep it from being cached.
+ */
+public class RowCache {
+    private static final int SHARD_COUNT = 16;
+    // Rough per-row bookkeeping cost (map node, row holder, string headers) charged on top of the characters.
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final long capacity;
+    private final Shard[] shards = new Shard[SHARD_COUNT];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * A cached lookup result.
+     */
+    public static final class Row {
+        public final String value; // null if the key does not exist
+
+        Row(String value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * @param capacity Maximum number of bytes held by the cache.
+     */
+    public RowCache(long capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Row cache capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            shards[i] = new Shard(capacity / SHARD_COUNT);
+        }
+    }
+
+    /**
+     * @return the cached row, or null if the key is not cached.
+     */
+    public Row get(String key) {
+        Row row = shardFor(key).get(key);
+        if (row == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return row;
+    }
+
+    /**
+     * @return the generation to pass to {@link #put} for a lookup of the key that is about to start.
+     */
+    public long generation(String key) {
+        return shardFor(key).generation;
+    }
+
+    /**
+     * Caches a lookup result unless the key's shard was invalidated since {@code startGeneration} was taken.
+     */
+    public void put(String key, String value, long startGeneration) {
+        shardFor(key).put(key, new Row(value), startGeneration);
+    }
+
+    public void invalidate(String key) {
+        shardFor(key).remove(key);
+    }
+
+    public void invalidateAll(Collection<String> keys) {
+        for (String key : keys) {
+            shardFor(key).remove(key);
+        }
+    }
+
+    /**
+     * Drops the cached rows of every key from startKey to endKey, both inclusive.
+     */
+    public void invalidateRange(String startKey, String endKey) {
+        for (Shard shard : shards) {
+            shard.removeRange(startKey, endKey);
+        }
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public long getUsage() {
+        long usage = 0;
+        for (Shard shard : shards) {
+            usage += shard.usage();
+        }
+        return usage;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    private Shard shardFor(String key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return shards[hash & (SHARD_COUNT - 1)];
+    }
+
+    private static long charge(String key, Row row) {
+        return ENTRY_OVERHEAD + 2L * key.length() + (row.value == null ? 0 : 2L * row.value.length());
+    }
+
+    private static final class Shard {
+        private final long capacity;
+        private final LinkedHashMap<String, Row> rows = new LinkedHashMap<>(16, 0.75f, true);
+        // The keys of rows in key order, so a range invalidation only visits the rows in its range.
+        private final TreeSet<String> sortedKeys = new TreeSet<>();
+        private long usage;
+        // Bumped under the shard lock by every invalidation of the shard; read without it by lookups.
+        private volatile long generation;
+
+        Shard(long capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized Row get(String key) {
+            return rows.get(key);
+        }
+
+        synchronized void put(String key, Row row, long startGeneration) {
+            // Checked under the shard lock: an invalidation of this key either happened before
+            // (generation moved on) or will remove the row after it is inserted.
+            if (generation != startGeneration) {
+                return;
+            }
+            long charge = charge(key, row);
+            if (charge > capacity) {
+                return;
+            }
+            Row previous = rows.put(key, row);
+            if (previous != null) {
+                usage -= charge(key, previous);
+            } else {
+                sortedKeys.add(key);
+            }
+            usage += charge;
+            while (usage > capacity) {
+                Map.Entry<String, Row> eldest = rows.entrySet().iterator().next();
+                rows.remove(eldest.getKey());
+                sortedKeys.remove(eldest.getKey());
+                usage -= charge(eldest.getKey(), eldest.getValue());
+            }
+        }
+
+        synchronized void remove(String key) {
+            generation++;
+            Row removed = rows.remove(key);
+            if (removed != null) {
+                sortedKeys.remove(key);
+                usage -= charge(key, removed);
+            }
+        }
+
+        synchronized void removeRange(String startKey, String endKey) {
+            generation++;
+            if (startKey.compareTo(endKey) > 0) {
+                return;
+            }
+            Iterator<String> keys = sortedKeys.subSet(startKey, true, endKey, true).iterator();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                usage -= charge(key, rows.remove(key));
+                keys.remove();
+            }
+        }
+
+        synchronized long usage() {
+            return usage;
+        }
+    }
+}
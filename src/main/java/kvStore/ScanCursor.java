@@ -0,0 +1,303 @@
+package kvStore;
+
+import kvStore.fileStore.Entry;
+import kvStore.fileStore.MergingIterator;
+import kvStore.fileStore.SSTableManager;
+import kvStore.memStore.MemTable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazily scans the live keys of a {@link StorageEngine} in key order, or in reverse key order.
+ *
+ * Entries are read from a merged stream over the MemTable and the SSTables, so the cost of a scan is
+ * proportional to the entries consumed, not to the size of the range. Like a {@link java.util.ListIterator}
+ * the cursor sits between two entries: {@link #next()} moves forward in scan order and
+ * {@link #previous()} moves back. Changing direction or calling {@link #seek} reopens the stream at the
+ * current position.
+ *
+ * An open cursor keeps the files of the SSTables it reads from being deleted by compaction, so it must be
+ * closed once the page is read.
+ */
+public class ScanCursor implements Iterator<Map.Entry<String, String>>, Closeable {
+    private final MemTable memTable;
+    private final SSTableManager ssTableManager;
+    private final Options options;
+    private final String prefixEnd; // smallest key above every key with the prefix; null if none or no prefix
+    private MergingIterator stream;
+    private boolean streamForward;
+    private boolean streamExhausted;
+    private String streamSkipKey; // key at which the stream was opened exclusively
+    private Entry pending;
+    // Position between two entries: next() returns positionKey itself if nextIncludesPosition,
+    // otherwise the entry after it. A null key is the start of the scan.
+    private String positionKey;
+    private boolean nextIncludesPosition = true;
+    private int returned;
+
+    ScanCursor(MemTable memTable, SSTableManager ssTableManager, Options options) {
+        this.memTable = memTable;
+        this.ssTableManager = ssTableManager;
+        this.options = options;
+        this.prefixEnd = options.prefix == null ? null : prefixEnd(options.prefix);
+        if (options.continuationToken != null) {
+            positionKey = decodeToken(options.continuationToken);
+        }
+    }
+
+    /**
+     * Which keys a scan returns and in which order.
+     */
+    public static class Options {
+        private String startKey;
+        private String endKey;
+        private String prefix;
+        private int limit = Integer.MAX_VALUE;
+        private boolean reverse;
+        private String continuationToken;
+
+        /**
+         * @param startKey Smallest key to return, inclusive.
+         */
+        public Options setStartKey(String startKey) {
+            this.startKey = startKey;
+            return this;
+        }
+
+        /**
+         * @param endKey Largest key to return, inclusive.
+         */
+        public Options setEndKey(String endKey) {
+            this.endKey = endKey;
+            return this;
+        }
+
+        /**
+         * @param prefix Only return keys starting with this prefix; combines with the start and end keys.
+         */
+        public Options setPrefix(String prefix) {
+            this.prefix = prefix;
+            return this;
+        }
+
+        /**
+         * @param limit Maximum number of entries returned by {@link #next()}.
+         */
+        public Options setLimit(int limit) {
+            if (limit < 0) {
+                throw new IllegalArgumentException("Limit must not be negative: " + limit);
+            }
+            this.limit = limit;
+            return this;
+        }
+
+        /**
+         * @param reverse Whether to scan from the largest key down.
+         */
+        public Options setReverse(boolean reverse) {
+            this.reverse = reverse;
+            return this;
+        }
+
+        /**
+         * @param continuationToken Token returned by {@link #continuationToken()} of a previous scan with the
+         *                          same options, to resume where its page ended.
+         */
+        public Options setContinuationToken(String continuationToken) {
+            this.continuationToken = continuationToken;
+            return this;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return returned < options.limit && peek(true) != null;
+    }
+
+    @Override
+    public Map.Entry<String, String> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Entry entry = take();
+        positionKey = entry.key;
+        nextIncludesPosition = false;
+        returned++;
+        return Map.entry(entry.key, entry.value);
+    }
+
+    public boolean hasPrevious() {
+        return peek(false) != null;
+    }
+
+    /**
+     * @return the entry before the cursor in scan order, i.e. the one the last next() returned, if any.
+     */
+    public Map.Entry<String, String> previous() {
+        if (!hasPrevious()) {
+            throw new NoSuchElementException();
+        }
+        Entry entry = take();
+        positionKey = entry.key;
+        nextIncludesPosition = true;
+        return Map.entry(entry.key, entry.value);
+    }
+
+    /**
+     * Positions the cursor so that {@link #next()} returns the first key at or after the given key in scan order.
+     */
+    public void seek(String key) {
+        closeStream();
+        positionKey = key;
+        nextIncludesPosition = true;
+    }
+
+    /**
+     * @return a token to resume the scan at the entry next() would return, ignoring the limit,
+     * or null if the scan is exhausted.
+     */
+    public String continuationToken() {
+        Entry entry = peek(true);
+        return entry == null ? null
+                : Base64.getUrlEncoder().withoutPadding().encodeToString(entry.key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeStream();
+    }
+
+    // Returns the next live entry in the given direction without consuming it.
+    private Entry peek(boolean forward) {
+        if (stream == null || streamForward != forward) {
+            if (positionKey == null && !forward) {
+                return null; // nothing before the start
+            }
+            closeStream();
+            openStream(forward);
+        } else if (pending != null || streamExhausted) {
+            return pending;
+        }
+        boolean descending = forward == options.reverse;
+        while (stream.hasNext()) {
+            Entry entry = stream.next();
+            if (entry.key.equals(streamSkipKey)) {
+                continue;
+            }
+            if (descending ? isBelowRange(entry.key) : isAboveRange(entry.key)) {
+                break;
+            }
+            if (!entry.isTombstone() && isInRange(entry.key)) {
+                pending = entry;
+                return entry;
+            }
+        }
+        streamExhausted = true;
+        return null;
+    }
+
+    private Entry take() {
+        Entry entry = pending;
+        pending = null;
+        return entry;
+    }
+
+    // Opens the stream in the given direction at the current position, clamped to the scan's bounds.
+    private void openStream(boolean forward) {
+        boolean inclusive = forward == nextIncludesPosition;
+        boolean descending = forward == options.reverse;
+        String from = positionKey;
+        if (descending) {
+            String upper = options.endKey;
+            boolean upperInclusive = true;
+            if (prefixEnd != null && (upper == null || prefixEnd.compareTo(upper) <= 0)) {
+                upper = prefixEnd;
+                upperInclusive = false;
+            }
+            if (from == null || (upper != null && from.compareTo(upper) > 0)) {
+                from = upper;
+                inclusive = upperInclusive;
+            } else if (from.equals(upper)) {
+                inclusive &= upperInclusive;
+            }
+        } else {
+            String lower = lowerBound();
+            if (from == null || (lower != null && from.compareTo(lower) < 0)) {
+                from = lower;
+                inclusive = true;
+            }
+        }
+        streamForward = forward;
+        streamExhausted = false;
+        streamSkipKey = inclusive ? null : from;
+        String to = descending ? lowerBound() : options.endKey;
+        List<Iterator<Entry>> memTableSource = List.of(descending ? memTable.reverseIterator(from) : memTable.iterator(from));
+        stream = ssTableManager.scan(from, to, descending, options.prefix, memTableSource, memTable.getRangeTombstones());
+    }
+
+    private void closeStream() {
+        pending = null;
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                throw new RuntimeException("Error closing scan", e);
+            }
+            stream = null;
+        }
+    }
+
+    private String lowerBound() {
+        if (options.prefix == null) {
+            return options.startKey;
+        }
+        return options.startKey == null || options.prefix.compareTo(options.startKey) > 0 ? options.prefix : options.startKey;
+    }
+
+    private boolean isInRange(String key) {
+        return (options.startKey == null || key.compareTo(options.startKey) >= 0)
+                && (options.endKey == null || key.compareTo(options.endKey) <= 0)
+                && (options.prefix == null || key.startsWith(options.prefix));
+    }
+
+    // No key after this one in ascending order can be in range.
+    private boolean isAboveRange(String key) {
+        return (options.endKey != null && key.compareTo(options.endKey) > 0)
+                || (prefixEnd != null && key.compareTo(prefixEnd) >= 0);
+    }
+
+    // No key after this one in descending order can be in range.
+    private boolean isBelowRange(String key) {
+        String lower = lowerBound();
+        return lower != null && key.compareTo(lower) < 0;
+    }
+
+    // "user:" -> "user;": every key with the prefix sorts below it. Null if no such key exists.
+    private static String prefixEnd(String prefix) {
+        StringBuilder end = new StringBuilder(prefix);
+        while (end.length() > 0) {
+            char last = end.charAt(end.length() - 1);
+            if (last != Character.MAX_VALUE) {
+                end.setCharAt(end.length() - 1, (char) (last + 1));
+                return end.toString();
+            }
+            end.setLength(end.length() - 1);
+        }
+        return null;
+    }
+
+    private static String decodeToken(String token) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid continuation token: " + token, e);
+        }
+    }
+}
@@ -1,22 +1,55 @@
 package kvStore;
 
+import kvStore.fileStore.Entry;
+import kvStore.fileStore.MergingIterator;
+import kvStore.fileStore.RangeTombstone;
 import kvStore.fileStore.SSTableManager;
 import kvStore.memStore.MemTable;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
 import java.util.TreeMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.Map;
 
-public class StorageEngine {
+public class StorageEngine implements Closeable {
     private final MemTable memTable;
     private final SSTableManager ssTableManager;
+    private final RowCache rowCache;  // null when disabled
     private ScheduledExecutorService compactionExecutor;
 
     public StorageEngine(MemTable memTable, SSTableManager ssTableManager) {
+        this(memTable, ssTableManager, 0);
+    }
+
+    /**
+     * @param rowCacheCapacity Size in bytes of the cache of resolved SSTable lookups; 0 disables it.
+     */
+    public StorageEngine(MemTable memTable, SSTableManager ssTableManager, long rowCacheCapacity) {
         this.memTable = memTable;
         this.ssTableManager = ssTableManager;
+        this.rowCache = rowCacheCapacity > 0 ? new RowCache(rowCacheCapacity) : null;
+        if (rowCache != null) {
+            // Flushes and compactions change what the SSTables return for their keys, and flushed range
+            // deletes for every key in their ranges.
+            ssTableManager.addTableChangeListener(new SSTableManager.TableChangeListener() {
+                @Override
+                public void onKeysChanged(Collection<String> keys) {
+                    rowCache.invalidateAll(keys);
+                }
+
+                @Override
+                public void onRangesChanged(List<RangeTombstone> ranges) {
+                    for (RangeTombstone range : ranges) {
+                        rowCache.invalidateRange(range.startKey, range.endKey);
+                    }
+                }
+            });
+        }
     }
 
     public String get(String key) {
@@ -27,40 +60,104 @@ public class StorageEngine {
         if (value != null) {
             return value;
         }
-        return ssTableManager.readFromSSTables(key);
+        if (memTable.isDeletedByRange(key)) {
+            return null;
+        }
+        if (rowCache == null) {
+            return ssTableManager.readFromSSTables(key);
+        }
+        RowCache.Row row = rowCache.get(key);
+        if (row != null) {
+            return row.value;
+        }
+        long generation = rowCache.generation(key);
+        value = ssTableManager.readFromSSTables(key);
+        rowCache.put(key, value, generation);
+        return value;
     }
 
+    /**
+     * @return the row cache, or null if it is disabled.
+     */
+    public RowCache getRowCache() {
+        return rowCache;
+    }
+
+    /**
+     * Compacts all SSTables into the deepest level, regardless of the compaction strategy.
+     * @return count of SSTables after compaction
+     */
     public int compactSSTables() {
-        return ssTableManager.compact(memTable.getTombstones().keySet());
+        return ssTableManager.compact();
     }
 
     // New method to support reading a key range.
+    // The MemTable and the SSTables are merged as streams from startKey on, newest first,
+    // so only the entries up to endKey are read.
     public Map<String, String> readKeyRange(String startKey, String endKey) {
-        // Get results from MemTable.
-        Map<String, String> memRange = memTable.readRange(startKey, endKey);
-        // Get results from SSTables.
-        Map<String, String> sstableRange = ssTableManager.readKeyRange(startKey, endKey);
-
-        // Merge: MemTable data (if present) overrides SSTable values.
-        sstableRange.putAll(memRange);
-        // Filter out any keys that have been deleted (tombstoned).
-        for (String key : memTable.getTombstones().keySet()) {
-            sstableRange.remove(key);
+        Map<String, String> result = new TreeMap<>();
+        try (MergingIterator iterator = ssTableManager.scan(startKey, endKey, false, null,
+                List.of(memTable.iterator(startKey)), memTable.getRangeTombstones())) {
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.key.compareTo(endKey) > 0) {
+                    break;
+                }
+                if (!entry.isTombstone()) {
+                    result.put(entry.key, entry.value);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading key range", e);
         }
-        return new TreeMap<>(sstableRange);
+        return result;
+    }
+
+    /**
+     * Opens a lazy cursor over the live keys, e.g. to serve one page of a paginated listing.
+     * The cursor must be closed when done; until then compaction keeps the files of the tables it reads.
+     */
+    public ScanCursor scan(ScanCursor.Options options) {
+        return new ScanCursor(memTable, ssTableManager, options);
     }
 
     public void put(String key, String value){
         memTable.put(key, value);
+        if (rowCache != null) {
+            rowCache.invalidate(key);
+        }
+    }
+
+    public void delete(String key) {
+        memTable.delete(key);
+        if (rowCache != null) {
+            rowCache.invalidate(key);
+        }
+    }
+
+    /**
+     * Deletes every key from startKey to endKey, both inclusive, e.g. all keys of a tenant. The range is
+     * stored as a single range tombstone, so the cost does not depend on the number of keys deleted;
+     * compaction later drops the data it covers.
+     */
+    public void deleteRange(String startKey, String endKey) {
+        memTable.deleteRange(startKey, endKey);
+        if (rowCache != null) {
+            rowCache.invalidateRange(startKey, endKey);
+        }
     }
 
     // New method to support batch insertion.
     public void batchPut(Map<String, String> entries) {
         memTable.batchPut(entries);
+        if (rowCache != null) {
+            rowCache.invalidateAll(entries.keySet());
+        }
     }
 
     /**
-     * Starts a background thread that triggers compaction at fixed intervals.
+     * Starts a background thread that runs the compactions the SSTable manager's
+     * {@link kvStore.fileStore.CompactionStrategy} asks for at fixed intervals.
      * @param periodMillis The compaction period in milliseconds.
      */
     public void startBackgroundCompaction(long periodMillis) {
@@ -68,8 +165,8 @@ public class StorageEngine {
         compactionExecutor.scheduleAtFixedRate(() -> {
             try {
                 System.out.println("Background compaction triggered.");
-                int ssTablesCount = compactSSTables();
-                System.out.println("Number of SSTables after compaction: " + ssTablesCount);
+                int compactions = ssTableManager.compactAsNeeded();
+                System.out.println("Ran " + compactions + " compactions, number of SSTables: " + ssTableManager.getTableCount());
             } catch (Exception e) {
                 System.err.println("Compaction error: " + e.getMessage());
             }
@@ -85,4 +182,15 @@ public class StorageEngine {
         }
     }
 
+    /**
+     * Stops the background compaction, waits for the MemTable flushes in progress and closes the WAL and the
+     * SSTable files. The engine must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        stopBackgroundCompaction();
+        memTable.close();
+        ssTableManager.close();
+    }
+
 }
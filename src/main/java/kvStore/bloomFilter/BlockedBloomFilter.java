@@ -0,0 +1,125 @@
+package kvStore.bloomFilter;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/*
+BlockedBloomFilter Class:
+
+A split-block Bloom filter: the bits are cut into blocks of 512 bits, one 64-byte cache line, and a key
+sets exactly one bit in each of the eight 64-bit words of the one block its hash picks. A probe therefore
+touches a single cache line instead of k random ones, and checks all eight words without a branch.
+The price is a somewhat higher false positive rate than a classic Bloom filter of the same size, since
+keys crowd some blocks more than others; the bitset is sized as for the classic filter and rounded up to
+whole blocks.
+ */
+public class BlockedBloomFilter implements KeyFilter {
+    // "BBLF", followed by the format version.
+    static final int MAGIC = 0x42424C46;
+    private static final byte FORMAT_VERSION = 1;
+    private static final int WORDS_PER_BLOCK = 8;
+    // Odd multipliers that pick one bit of each word of a block from the same hash.
+    private static final long[] SALTS = {
+            0x47b6137b44974d91L, 0x8824ad5ba2b7289dL, 0x705495c72df1424bL, 0x9efc49475c6bfb31L,
+            0xd6e1b4e3a4b6c3f5L, 0xa4c6a3f0c6b1e2d7L, 0x5bd1e9955bd1e995L, 0xc2b2ae3d27d4eb4fL
+    };
+
+    private final long[] bits;
+    private final int numBlocks;
+
+    /**
+     * Constructs a BlockedBloomFilter with as many bits as a classic Bloom filter for the same parameters.
+     * @param expectedElements Expected number of elements to be stored.
+     * @param falsePositiveProbability Desired false positive probability of the classic filter.
+     */
+    public BlockedBloomFilter(int expectedElements, double falsePositiveProbability) {
+        if (expectedElements < 1 || falsePositiveProbability <= 0 || falsePositiveProbability >= 1) {
+            throw new IllegalArgumentException("Invalid Bloom filter parameters: " + expectedElements
+                    + " elements at a false positive probability of " + falsePositiveProbability);
+        }
+        double bitsetSize = Math.ceil(-expectedElements * Math.log(falsePositiveProbability) / (Math.pow(Math.log(2), 2)));
+        this.numBlocks = (int) Math.ceil(bitsetSize / (WORDS_PER_BLOCK * 64));
+        this.bits = new long[numBlocks * WORDS_PER_BLOCK];
+    }
+
+    private BlockedBloomFilter(long[] bits) {
+        this.bits = bits;
+        this.numBlocks = bits.length / WORDS_PER_BLOCK;
+    }
+
+    public void add(CharSequence element) {
+        addHash(KeyFilter.hash(element));
+    }
+
+    /**
+     * Adds an element by its {@link KeyFilter#hash}, for callers that hashed it already.
+     */
+    public void addHash(long hash) {
+        int block = block(hash);
+        for (int i = 0; i < WORDS_PER_BLOCK; i++) {
+            bits[block + i] |= 1L << ((hash * SALTS[i]) >>> 58);
+        }
+    }
+
+    public boolean contains(CharSequence element) {
+        return containsHash(KeyFilter.hash(element));
+    }
+
+    @Override
+    public boolean containsHash(long hash) {
+        int block = block(hash);
+        long missing = 0;
+        for (int i = 0; i < WORDS_PER_BLOCK; i++) {
+            missing |= ~bits[block + i] & (1L << ((hash * SALTS[i]) >>> 58));
+        }
+        return missing == 0;
+    }
+
+    // Index of the first word of the block for a hash, picked from its upper 32 bits by a multiply-shift.
+    private int block(long hash) {
+        return (int) (((hash >>> 32) * numBlocks) >>> 32) * WORDS_PER_BLOCK;
+    }
+
+    /**
+     * Writes the filter as: magic (4) | version (1) | block count (4) | bit words (8 each), all big-endian.
+     */
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeByte(FORMAT_VERSION);
+        data.writeInt(numBlocks);
+        for (long word : bits) {
+            data.writeLong(word);
+        }
+        data.flush();
+    }
+
+    // Reads the rest of a filter after its magic number.
+    static BlockedBloomFilter readBody(DataInputStream data) throws IOException {
+        byte version = data.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported blocked Bloom filter version " + version);
+        }
+        int numBlocks = data.readInt();
+        if (numBlocks < 1) {
+            throw new IOException("Corrupt blocked Bloom filter header");
+        }
+        long[] bits = new long[numBlocks * WORDS_PER_BLOCK];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = data.readLong();
+        }
+        return new BlockedBloomFilter(bits);
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return bits.length * 8L;
+    }
+
+    public int getNumBlocks() {
+        return numBlocks;
+    }
+}
@@ -1,22 +1,27 @@
 package kvStore.bloomFilter;
 
-import java.io.Serial;
-import java.io.Serializable;
-import java.util.BitSet;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 /*
 BloomFilter Class:
 
-The contains method checks whether all of the bits for the computed hash values are set.
+Every key is hashed once to 64 bits; the k bit positions are derived from the two 32-bit halves of that
+hash by double hashing (Kirsch-Mitzenmacher), g_i = h1 + i * h2, and mapped onto the m bits by a
+multiply-shift instead of a modulo. The contains method checks whether all of those bits are set.
+Neither add nor contains allocates.
  */
-public class BloomFilter<T> implements Serializable {
-    @Serial
-    private static final long serialVersionUID = 1L;
-    private final BitSet bitset;
+public class BloomFilter<T extends CharSequence> implements KeyFilter {
+    // "BLMF", followed by the format version.
+    static final int MAGIC = 0x424C4D46;
+    private static final byte FORMAT_VERSION = 1;
+
+    private final long[] bits;
     private final int bitsetSize;
     private final int numHashFunctions;
-    private final int expectedElements;
-    private final double falsePositiveProbability;
 
     /**
      * Constructs a BloomFilter.
@@ -25,26 +30,41 @@ public class BloomFilter<T> implements Serializable {
      * @param falsePositiveProbability Desired false positive probability.
      */
     public BloomFilter(int expectedElements, double falsePositiveProbability) {
-        this.expectedElements = expectedElements;
-        this.falsePositiveProbability = falsePositiveProbability;
+        if (expectedElements < 1 || falsePositiveProbability <= 0 || falsePositiveProbability >= 1) {
+            throw new IllegalArgumentException("Invalid Bloom filter parameters: " + expectedElements
+                    + " elements at a false positive probability of " + falsePositiveProbability);
+        }
         // Compute bitset size: m = -(n * ln(p)) / (ln2)^2
         // Source of equations: https://en.wikipedia.org/wiki/Bloom_filter
         this.bitsetSize = (int) Math.ceil(-expectedElements * Math.log(falsePositiveProbability) / (Math.pow(Math.log(2), 2)));
         // Compute number of hash functions: k = (m/n) * ln2
         this.numHashFunctions = (int) Math.ceil((bitsetSize / (double) expectedElements) * Math.log(2));
-        this.bitset = new BitSet(bitsetSize);
+        this.bits = new long[(bitsetSize + 63) >>> 6];
+    }
+
+    private BloomFilter(long[] bits, int bitsetSize, int numHashFunctions) {
+        this.bits = bits;
+        this.bitsetSize = bitsetSize;
+        this.numHashFunctions = numHashFunctions;
     }
 
     /**
      * Adds an element to the Bloom filter.
-     * The add method computes multiple hash values (using a simple double hashing strategy) and sets bits in the bitset.
      * @param element The element to add.
      */
     public void add(T element) {
-        int[] hashes = createHashes(element, numHashFunctions);
-        for (int hash : hashes) {
-            int pos = Math.abs(hash % bitsetSize);
-            bitset.set(pos);
+        addHash(hash(element));
+    }
+
+    /**
+     * Adds an element by its {@link #hash}, for callers that hashed it already.
+     */
+    public void addHash(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < numHashFunctions; i++) {
+            int pos = position(h1 + i * h2);
+            bits[pos >>> 6] |= 1L << pos;
         }
     }
 
@@ -54,31 +74,83 @@ public class BloomFilter<T> implements Serializable {
      * @return True if the element might be present; false if definitely not present.
      */
     public boolean contains(T element) {
-        int[] hashes = createHashes(element, numHashFunctions);
-        for (int hash : hashes) {
-            int pos = Math.abs(hash % bitsetSize);
-            if (!bitset.get(pos)) {
+        return containsHash(hash(element));
+    }
+
+    @Override
+    public boolean containsHash(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < numHashFunctions; i++) {
+            int pos = position(h1 + i * h2);
+            if ((bits[pos >>> 6] & (1L << pos)) == 0) {
                 return false;
             }
         }
         return true;
     }
 
+    // Maps a 32-bit hash uniformly onto [0, bitsetSize).
+    private int position(int hash) {
+        return (int) (((hash & 0xFFFFFFFFL) * bitsetSize) >>> 32);
+    }
+
+    /**
+     * @see KeyFilter#hash(CharSequence)
+     */
+    public static long hash(CharSequence key) {
+        return KeyFilter.hash(key);
+    }
+
+    /**
+     * Writes the filter as: magic (4) | version (1) | bitset size (4) | hash functions (4) | bit words (8 each),
+     * all big-endian.
+     */
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeByte(FORMAT_VERSION);
+        data.writeInt(bitsetSize);
+        data.writeInt(numHashFunctions);
+        for (long word : bits) {
+            data.writeLong(word);
+        }
+        data.flush();
+    }
+
     /**
-     * Creates multiple hash values for the given element.
-     * This implementation uses double hashing.
-     * @param element The element to hash.
-     * @param numHashes The number of hash values to produce.
-     * @return An array of hash values.
+     * Reads a filter written by {@link #writeTo}.
      */
-    private int[] createHashes(T element, int numHashes) {
-        int[] result = new int[numHashes];
-        int hash1 = element.hashCode();
-        int hash2 = hash1 >>> 16; // A simple way to generate a second hash.
-        for (int i = 0; i < numHashes; i++) {
-            result[i] = hash1 + i * hash2;
+    public static <T extends CharSequence> BloomFilter<T> readFrom(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a Bloom filter");
         }
-        return result;
+        return readBody(data);
+    }
+
+    // Reads the rest of a filter after its magic number.
+    static <T extends CharSequence> BloomFilter<T> readBody(DataInputStream data) throws IOException {
+        byte version = data.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported Bloom filter version " + version);
+        }
+        int bitsetSize = data.readInt();
+        int numHashFunctions = data.readInt();
+        if (bitsetSize < 1 || numHashFunctions < 1) {
+            throw new IOException("Corrupt Bloom filter header");
+        }
+        long[] bits = new long[(bitsetSize + 63) >>> 6];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = data.readLong();
+        }
+        return new BloomFilter<>(bits, bitsetSize, numHashFunctions);
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return bits.length * 8L;
     }
 
     public int getBitsetSize() {
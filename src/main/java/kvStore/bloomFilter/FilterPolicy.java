@@ -0,0 +1,112 @@
+package kvStore.bloomFilter;
+
+/**
+ * Builds the {@link KeyFilter} stored with a table from the hashes of all of its keys, once the table is
+ * written. Filters of every policy can be read back by {@link KeyFilter#readFrom}, so the policy of a
+ * store can change while tables built by another one are still in use.
+ */
+public interface FilterPolicy {
+    /**
+     * @return a name identifying the policy and its settings.
+     */
+    String name();
+
+    /**
+     * @param hashes Hashes of the keys computed by {@link KeyFilter#hash}; there may be none.
+     * @param count Number of hashes to use from the start of the array.
+     */
+    KeyFilter build(long[] hashes, int count);
+
+    /**
+     * @return the same kind of policy for another false positive rate; policies with a fixed rate return
+     *         themselves.
+     */
+    default FilterPolicy withFalsePositiveRate(double falsePositiveRate) {
+        return this;
+    }
+
+    /**
+     * @return a policy building classic Bloom filters for the false positive rate.
+     */
+    static FilterPolicy bloom(double falsePositiveRate) {
+        checkFalsePositiveRate(falsePositiveRate);
+        return new Bloom(falsePositiveRate);
+    }
+
+    /**
+     * @return a policy building cache-line-blocked Bloom filters of the size of a classic one for the false
+     *         positive rate, which they slightly exceed.
+     */
+    static FilterPolicy blockedBloom(double falsePositiveRate) {
+        checkFalsePositiveRate(falsePositiveRate);
+        return new BlockedBloom(falsePositiveRate);
+    }
+
+    /**
+     * @return a policy building xor filters, at 9.84 bits per key and a false positive rate of 0.39%.
+     */
+    static FilterPolicy xor() {
+        return new Xor();
+    }
+
+    private static void checkFalsePositiveRate(double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1: " + falsePositiveRate);
+        }
+    }
+
+    record Bloom(double falsePositiveRate) implements FilterPolicy {
+        @Override
+        public String name() {
+            return "bloom:" + falsePositiveRate;
+        }
+
+        @Override
+        public FilterPolicy withFalsePositiveRate(double falsePositiveRate) {
+            return bloom(falsePositiveRate);
+        }
+
+        @Override
+        public KeyFilter build(long[] hashes, int count) {
+            // A filter for no keys cannot be probed, and a table may hold only range tombstones.
+            BloomFilter<String> filter = new BloomFilter<>(Math.max(1, count), falsePositiveRate);
+            for (int i = 0; i < count; i++) {
+                filter.addHash(hashes[i]);
+            }
+            return filter;
+        }
+    }
+
+    record BlockedBloom(double falsePositiveRate) implements FilterPolicy {
+        @Override
+        public String name() {
+            return "blocked-bloom:" + falsePositiveRate;
+        }
+
+        @Override
+        public FilterPolicy withFalsePositiveRate(double falsePositiveRate) {
+            return blockedBloom(falsePositiveRate);
+        }
+
+        @Override
+        public KeyFilter build(long[] hashes, int count) {
+            BlockedBloomFilter filter = new BlockedBloomFilter(Math.max(1, count), falsePositiveRate);
+            for (int i = 0; i < count; i++) {
+                filter.addHash(hashes[i]);
+            }
+            return filter;
+        }
+    }
+
+    record Xor() implements FilterPolicy {
+        @Override
+        public String name() {
+            return "xor8";
+        }
+
+        @Override
+        public KeyFilter build(long[] hashes, int count) {
+            return XorFilter.build(hashes, count);
+        }
+    }
+}
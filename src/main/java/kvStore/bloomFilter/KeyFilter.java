@@ -0,0 +1,80 @@
+package kvStore.bloomFilter;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Probabilistic set of keys, probed by the 64-bit {@link #hash} of a key so that one lookup hashes its key
+ * once for the filters of all tables. A filter never reports an added key as absent.
+ */
+public interface KeyFilter {
+    // murmur3 constants.
+    long C1 = 0x87c37b91114253d5L;
+    long C2 = 0x4cf5ad432745937fL;
+
+    /**
+     * @return false if the key with this hash was definitely not added.
+     */
+    boolean containsHash(long hash);
+
+    /**
+     * Writes the filter in its binary format, which starts with a magic number identifying the filter type.
+     */
+    void writeTo(OutputStream out) throws IOException;
+
+    /**
+     * @return the memory used by the filter's bits, in bytes.
+     */
+    long sizeInBytes();
+
+    /**
+     * 64-bit murmur3-style hash of the UTF-16 code units of a key, four per round.
+     */
+    static long hash(CharSequence key) {
+        int length = key.length();
+        long h = length * C2;
+        int i = 0;
+        for (; i + 4 <= length; i += 4) {
+            long k = key.charAt(i) | (long) key.charAt(i + 1) << 16 | (long) key.charAt(i + 2) << 32
+                    | (long) key.charAt(i + 3) << 48;
+            h ^= mixKey(k);
+            h = Long.rotateLeft(h, 27) * 5 + 0x52dce729;
+        }
+        if (i < length) {
+            long k = 0;
+            for (int shift = 0; i < length; i++, shift += 16) {
+                k |= (long) key.charAt(i) << shift;
+            }
+            h ^= mixKey(k);
+        }
+        // fmix64
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static long mixKey(long k) {
+        k *= C1;
+        k = Long.rotateLeft(k, 31);
+        return k * C2;
+    }
+
+    /**
+     * Reads a filter of any type written by {@link #writeTo}.
+     */
+    static KeyFilter readFrom(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        int magic = data.readInt();
+        return switch (magic) {
+            case BloomFilter.MAGIC -> BloomFilter.readBody(data);
+            case BlockedBloomFilter.MAGIC -> BlockedBloomFilter.readBody(data);
+            case XorFilter.MAGIC -> XorFilter.readBody(data);
+            default -> throw new IOException("Unknown filter type " + Integer.toHexString(magic));
+        };
+    }
+}
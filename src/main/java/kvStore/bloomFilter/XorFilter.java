@@ -0,0 +1,194 @@
+package kvStore.bloomFilter;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/*
+XorFilter Class:
+
+A static filter with 8-bit fingerprints (Graf and Lemire, "Xor Filters: Faster and Smaller Than Bloom
+and Cuckoo Filters"). Every key maps to one slot in each of three blocks of fingerprints, and the slots
+are filled so that the three fingerprints of every key xor to the key's own fingerprint. An absent key
+passes with probability 1/256, about 0.39%, at 1.23 * 8 = 9.84 bits per key; a Bloom filter needs
+11.5 bits per key for that rate. Unlike a Bloom filter it cannot be added to after it was built, which
+suits SSTables: their keys are all known when the filter is written.
+ */
+public class XorFilter implements KeyFilter {
+    // "XORF", followed by the format version.
+    static final int MAGIC = 0x584F5246;
+    private static final byte FORMAT_VERSION = 1;
+
+    private final long seed;
+    private final int blockLength;
+    private final byte[] fingerprints;
+
+    private XorFilter(long seed, int blockLength, byte[] fingerprints) {
+        this.seed = seed;
+        this.blockLength = blockLength;
+        this.fingerprints = fingerprints;
+    }
+
+    /**
+     * Builds a filter of the given key hashes; duplicates are allowed.
+     * @param hashes Hashes computed by {@link KeyFilter#hash}.
+     * @param count Number of hashes to use from the start of the array.
+     */
+    public static XorFilter build(long[] hashes, int count) {
+        long[] keys = Arrays.copyOf(hashes, count);
+        int size = count;
+        int blockLength = (int) ((32 + 1.23 * size) / 3);
+        int capacity = 3 * blockLength;
+
+        long[] order = new long[size];
+        byte[] orderSlot = new byte[size];
+        int[] slotCounts = new int[capacity];
+        long[] slotHashes = new long[capacity];
+        int[] singles = new int[capacity];
+        long seed = 0;
+        for (int attempt = 0; ; attempt++) {
+            // Mapping the keys to slots fails with a small probability, and a new seed gives new slots. A key
+            // given twice can never be peeled, whatever the seed, so duplicates are removed after a failure.
+            if (attempt == 1) {
+                size = removeDuplicates(keys);
+            }
+            seed = mix(attempt + 0x9E3779B97F4A7C15L);
+            Arrays.fill(slotCounts, 0);
+            Arrays.fill(slotHashes, 0);
+            for (int i = 0; i < size; i++) {
+                long hash = mix(keys[i] + seed);
+                for (int block = 0; block < 3; block++) {
+                    int slot = slot(hash, block, blockLength);
+                    slotCounts[slot]++;
+                    slotHashes[slot] ^= keys[i];
+                }
+            }
+            // Peel keys off slots that only they use, until every key is peeled or none is left to peel.
+            int singleCount = 0;
+            for (int slot = 0; slot < capacity; slot++) {
+                if (slotCounts[slot] == 1) {
+                    singles[singleCount++] = slot;
+                }
+            }
+            int peeled = 0;
+            while (singleCount > 0) {
+                int single = singles[--singleCount];
+                if (slotCounts[single] != 1) {
+                    continue;
+                }
+                long key = slotHashes[single];
+                long hash = mix(key + seed);
+                for (int block = 0; block < 3; block++) {
+                    int slot = slot(hash, block, blockLength);
+                    slotHashes[slot] ^= key;
+                    if (--slotCounts[slot] == 1) {
+                        singles[singleCount++] = slot;
+                    }
+                    if (slot == single) {
+                        orderSlot[peeled] = (byte) block;
+                    }
+                }
+                order[peeled++] = key;
+            }
+            if (peeled == size) {
+                break;
+            }
+        }
+
+        // In reverse peeling order, each key's own slot is the last of its three to be set.
+        byte[] fingerprints = new byte[capacity];
+        for (int i = size - 1; i >= 0; i--) {
+            long hash = mix(order[i] + seed);
+            int fingerprint = fingerprint(hash);
+            int own = -1;
+            for (int block = 0; block < 3; block++) {
+                int slot = slot(hash, block, blockLength);
+                if (block == orderSlot[i]) {
+                    own = slot;
+                } else {
+                    fingerprint ^= fingerprints[slot];
+                }
+            }
+            fingerprints[own] = (byte) fingerprint;
+        }
+        return new XorFilter(seed, blockLength, fingerprints);
+    }
+
+    // Sorts the keys and moves the distinct ones to the front; returns their count.
+    private static int removeDuplicates(long[] keys) {
+        Arrays.sort(keys);
+        int size = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (size == 0 || keys[i] != keys[size - 1]) {
+                keys[size++] = keys[i];
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public boolean containsHash(long hash) {
+        long h = mix(hash + seed);
+        int fingerprint = fingerprint(h);
+        return (byte) (fingerprint ^ fingerprints[slot(h, 0, blockLength)] ^ fingerprints[slot(h, 1, blockLength)]
+                ^ fingerprints[slot(h, 2, blockLength)]) == 0;
+    }
+
+    // Slot of a hash in one of the three blocks, from a different 32 bits of it for each.
+    private static int slot(long hash, int block, int blockLength) {
+        long bits = Long.rotateLeft(hash, 21 * block) & 0xFFFFFFFFL;
+        return (int) ((bits * blockLength) >>> 32) + block * blockLength;
+    }
+
+    private static int fingerprint(long hash) {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    // murmur3 fmix64.
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Writes the filter as: magic (4) | version (1) | seed (8) | block length (4) | fingerprints (1 each),
+     * all big-endian.
+     */
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeByte(FORMAT_VERSION);
+        data.writeLong(seed);
+        data.writeInt(blockLength);
+        data.write(fingerprints);
+        data.flush();
+    }
+
+    // Reads the rest of a filter after its magic number.
+    static XorFilter readBody(DataInputStream data) throws IOException {
+        byte version = data.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported xor filter version " + version);
+        }
+        long seed = data.readLong();
+        int blockLength = data.readInt();
+        if (blockLength < 1) {
+            throw new IOException("Corrupt xor filter header");
+        }
+        byte[] fingerprints = new byte[3 * blockLength];
+        data.readFully(fingerprints);
+        return new XorFilter(seed, blockLength, fingerprints);
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return fingerprints.length;
+    }
+}
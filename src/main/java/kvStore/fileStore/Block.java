@@ -0,0 +1,165 @@
+package kvStore.fileStore;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Read-only view over a data block produced by {@link BlockBuilder}.
+ * Records are decoded through a {@link Cursor}; keys are compared as UTF-8 bytes and only
+ * turned into Strings for the entries actually returned.
+ * The block may be a view of a memory-mapped file, in which case nothing is copied to the heap
+ * until an entry is returned.
+ */
+class Block {
+    private final ByteBuffer data;
+    private final int restartsStart;
+    private final int restartCount;
+    private final int framedLength;
+
+    public Block(byte[] bytes) {
+        this(ByteBuffer.wrap(bytes), BlockFrame.HEADER_SIZE + bytes.length + BlockFrame.TRAILER_SIZE);
+    }
+
+    /**
+     * @param data The uncompressed block, from index 0 to its limit.
+     * @param framedLength Size of the block on disk, including its frame.
+     */
+    public Block(ByteBuffer data, int framedLength) {
+        this.data = data;
+        this.framedLength = framedLength;
+        this.restartCount = data.getInt(data.limit() - 4);
+        this.restartsStart = data.limit() - 4 - 4 * restartCount;
+    }
+
+    public int sizeInBytes() {
+        return data.limit();
+    }
+
+    // Whether the block lives outside the heap, i.e. is a view of a memory-mapped file.
+    public boolean isDirect() {
+        return data.isDirect();
+    }
+
+    // Size on disk including the frame, i.e. the distance to the next block.
+    public int framedLength() {
+        return framedLength;
+    }
+
+    /**
+     * @return a cursor positioned before the first record.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Forward cursor over the records of the block. {@link #seek} positions it so that {@link #next()}
+     * returns the first record whose key is greater than or equal to the target.
+     */
+    class Cursor {
+        private int offset = restartCount == 0 ? restartsStart : data.getInt(restartsStart);
+        private byte[] key = new byte[32];
+        private int keyLength;
+        private byte type;
+        private int valueOffset;
+        private int valueLength;
+        // The current record is decoded but has not been returned by next() yet.
+        private boolean pending;
+
+        public void seek(byte[] target) {
+            // Find the last restart point whose key is smaller than the target...
+            int low = 0;
+            int high = restartCount - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (compareRestartKey(mid, target) < 0) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            offset = data.getInt(restartsStart + 4 * low);
+            keyLength = 0;
+            pending = false;
+            // ...and scan forward from it.
+            while (decodeNext()) {
+                if (Coding.compareKeys(key, 0, keyLength, target, 0, target.length) >= 0) {
+                    pending = true;
+                    return;
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            return pending || offset < restartsStart;
+        }
+
+        /**
+         * @return whether the record next() would return has exactly this key.
+         */
+        public boolean nextKeyEquals(byte[] target) {
+            if (!pending && !(pending = decodeNext())) {
+                return false;
+            }
+            return Arrays.equals(key, 0, keyLength, target, 0, target.length);
+        }
+
+        public Entry next() {
+            if (!pending && !decodeNext()) {
+                throw new NoSuchElementException();
+            }
+            pending = false;
+            String entryKey = new String(key, 0, keyLength, StandardCharsets.UTF_8);
+            if (Entry.Type.fromCode(type) == Entry.Type.TOMBSTONE) {
+                return Entry.tombstone(entryKey);
+            }
+            if (data.hasArray()) {
+                return Entry.value(entryKey, new String(data.array(), data.arrayOffset() + valueOffset, valueLength,
+                        StandardCharsets.UTF_8));
+            }
+            byte[] value = new byte[valueLength];
+            data.get(valueOffset, value);
+            return Entry.value(entryKey, new String(value, StandardCharsets.UTF_8));
+        }
+
+        private boolean decodeNext() {
+            if (offset >= restartsStart) {
+                return false;
+            }
+            type = data.get(offset++);
+            int shared = readVarInt();
+            int unshared = readVarInt();
+            valueLength = readVarInt();
+            if (shared + unshared > key.length) {
+                key = Arrays.copyOf(key, Math.max(2 * key.length, shared + unshared));
+            }
+            data.get(offset, key, shared, unshared);
+            keyLength = shared + unshared;
+            valueOffset = offset + unshared;
+            offset = valueOffset + valueLength;
+            return true;
+        }
+
+        // Restart records store their full key, so it can be compared in place.
+        private int compareRestartKey(int restart, byte[] target) {
+            offset = data.getInt(restartsStart + 4 * restart) + 1;
+            readVarInt(); // shared, always 0 at a restart
+            int unshared = readVarInt();
+            readVarInt(); // value length
+            return Coding.compareKeys(data, offset, unshared, target, 0, target.length);
+        }
+
+        private int readVarInt() {
+            int result = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = data.get(offset++);
+                result |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package kvStore.fileStore;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds a single SSTable data block.
+ *
+ * Keys are prefix-compressed: each record only stores the part of its key that differs from the
+ * previous key. Every {@code restartInterval} records the full key is stored again (a restart point),
+ * so a reader can binary-search the restart points and decode at most one interval.
+ * Layout:
+ * <pre>
+ * record*:  type (1) | shared key bytes | unshared key bytes | value length | key suffix | value
+ *           (lengths as varints)
+ * trailer:  restart offset (4) * n | n (4)
+ * </pre>
+ */
+class BlockBuilder {
+    static final int DEFAULT_RESTART_INTERVAL = 16;
+
+    private final int restartInterval;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final List<Integer> restarts = new ArrayList<>();
+    private int sinceRestart;
+    private byte[] lastKeyBytes;
+    private String lastKey;
+
+    BlockBuilder() {
+        this(DEFAULT_RESTART_INTERVAL);
+    }
+
+    BlockBuilder(int restartInterval) {
+        if (restartInterval < 1) {
+            throw new IllegalArgumentException("Restart interval must be positive: " + restartInterval);
+        }
+        this.restartInterval = restartInterval;
+    }
+
+    public void add(Entry entry) {
+        byte[] key = entry.key.getBytes(StandardCharsets.UTF_8);
+        byte[] value = entry.isTombstone() ? new byte[0] : entry.value.getBytes(StandardCharsets.UTF_8);
+        int shared = 0;
+        if (lastKeyBytes == null || sinceRestart == restartInterval) {
+            restarts.add(buffer.size());
+            sinceRestart = 0;
+        } else {
+            int limit = Math.min(lastKeyBytes.length, key.length);
+            while (shared < limit && lastKeyBytes[shared] == key[shared]) {
+                shared++;
+            }
+        }
+        buffer.write(entry.type.code);
+        Coding.putVarInt(buffer, shared);
+        Coding.putVarInt(buffer, key.length - shared);
+        Coding.putVarInt(buffer, value.length);
+        buffer.write(key, shared, key.length - shared);
+        Coding.putBytes(buffer, value);
+        sinceRestart++;
+        lastKeyBytes = key;
+        lastKey = entry.key;
+    }
+
+    // Size of the block if it were finished now.
+    public int estimatedSize() {
+        return buffer.size() + 4 * restarts.size() + 4;
+    }
+
+    public boolean isEmpty() {
+        return restarts.isEmpty();
+    }
+
+    public String lastKey() {
+        return lastKey;
+    }
+
+    public byte[] finish() {
+        for (int restart : restarts) {
+            Coding.putInt(buffer, restart);
+        }
+        Coding.putInt(buffer, restarts.size());
+        return buffer.toByteArray();
+    }
+
+    public void reset() {
+        buffer.reset();
+        restarts.clear();
+        sinceRestart = 0;
+        lastKeyBytes = null;
+        lastKey = null;
+    }
+}
@@ -0,0 +1,214 @@
+package kvStore.fileStore;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Byte-bounded cache of data blocks shared by all SSTables of a manager.
+ *
+ * Eviction is segmented LRU: a block enters the probationary segment and is promoted to the
+ * protected segment when it is hit again. A one-off scan therefore only churns the probationary
+ * segment and cannot flush out the hot blocks. The cache is split into shards, each guarded by
+ * its own lock, so concurrent readers of different blocks rarely contend. Every shard indexes its
+ * blocks by file, so dropping the blocks of a deleted file costs no more than the blocks it has cached.
+ */
+public class BlockCache {
+    private static final int SHARD_COUNT = 16;
+    // Share of each shard reserved for blocks that were hit at least twice.
+    private static final double PROTECTED_RATIO = 0.8;
+    // Rough per-entry bookkeeping cost (key, map node, block header) charged on top of the block bytes.
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final long capacity;
+    private final Shard[] shards = new Shard[SHARD_COUNT];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacity Maximum number of bytes held by the cache.
+     */
+    public BlockCache(long capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Block cache capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            shards[i] = new Shard(capacity / SHARD_COUNT);
+        }
+    }
+
+    Block get(long fileId, long offset) {
+        Key key = new Key(fileId, offset);
+        Block block = shardFor(key).get(key);
+        if (block == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return block;
+    }
+
+    void put(long fileId, long offset, Block block) {
+        Key key = new Key(fileId, offset);
+        shardFor(key).put(key, block);
+    }
+
+    /**
+     * Drops every cached block of a file, e.g. once compaction has deleted it.
+     */
+    void invalidate(long fileId) {
+        for (Shard shard : shards) {
+            shard.invalidate(fileId);
+        }
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public long getUsage() {
+        long usage = 0;
+        for (Shard shard : shards) {
+            usage += shard.usage();
+        }
+        return usage;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "BlockCache{" +
+                "capacity=" + capacity +
+                ", usage=" + getUsage() +
+                ", hits=" + getHitCount() +
+                ", misses=" + getMissCount() +
+                ", evictions=" + getEvictionCount() +
+                '}';
+    }
+
+    private Shard shardFor(Key key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return shards[hash & (SHARD_COUNT - 1)];
+    }
+
+    private static long charge(Block block) {
+        return block.sizeInBytes() + ENTRY_OVERHEAD;
+    }
+
+    private record Key(long fileId, long offset) {
+    }
+
+    private final class Shard {
+        private final long capacity;
+        private final long protectedCapacity;
+        // Both segments are kept in access order, eldest first.
+        private final LinkedHashMap<Key, Block> probation = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<Key, Block> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+        // Keys of the blocks in either segment, by file.
+        private final Map<Long, Set<Key>> keysByFile = new HashMap<>();
+        private long probationUsage;
+        private long protectedUsage;
+
+        Shard(long capacity) {
+            this.capacity = capacity;
+            this.protectedCapacity = (long) (capacity * PROTECTED_RATIO);
+        }
+
+        synchronized Block get(Key key) {
+            Block block = protectedSegment.get(key);
+            if (block != null) {
+                return block;
+            }
+            block = probation.remove(key);
+            if (block == null) {
+                return null;
+            }
+            // Second hit: promote, demoting the coldest protected blocks back to probation if needed.
+            probationUsage -= charge(block);
+            protectedSegment.put(key, block);
+            protectedUsage += charge(block);
+            while (protectedUsage > protectedCapacity && protectedSegment.size() > 1) {
+                Map.Entry<Key, Block> eldest = protectedSegment.entrySet().iterator().next();
+                protectedSegment.remove(eldest.getKey());
+                protectedUsage -= charge(eldest.getValue());
+                probation.put(eldest.getKey(), eldest.getValue());
+                probationUsage += charge(eldest.getValue());
+            }
+            evictOverflow();
+            return block;
+        }
+
+        synchronized void put(Key key, Block block) {
+            long charge = charge(block);
+            if (charge > capacity || protectedSegment.containsKey(key)) {
+                return;
+            }
+            Block previous = probation.put(key, block);
+            if (previous != null) {
+                probationUsage -= charge(previous);
+            } else {
+                keysByFile.computeIfAbsent(key.fileId(), fileId -> new HashSet<>()).add(key);
+            }
+            probationUsage += charge;
+            evictOverflow();
+        }
+
+        synchronized void invalidate(long fileId) {
+            Set<Key> keys = keysByFile.remove(fileId);
+            if (keys == null) {
+                return;
+            }
+            for (Key key : keys) {
+                Block block = probation.remove(key);
+                if (block != null) {
+                    probationUsage -= charge(block);
+                } else {
+                    protectedUsage -= charge(protectedSegment.remove(key));
+                }
+            }
+        }
+
+        synchronized long usage() {
+            return probationUsage + protectedUsage;
+        }
+
+        private void evictOverflow() {
+            while (probationUsage + protectedUsage > capacity) {
+                LinkedHashMap<Key, Block> victims = probation.isEmpty() ? protectedSegment : probation;
+                Map.Entry<Key, Block> eldest = victims.entrySet().iterator().next();
+                victims.remove(eldest.getKey());
+                unindex(eldest.getKey());
+                if (victims == probation) {
+                    probationUsage -= charge(eldest.getValue());
+                } else {
+                    protectedUsage -= charge(eldest.getValue());
+                }
+                evictions.increment();
+            }
+        }
+
+        private void unindex(Key key) {
+            Set<Key> keys = keysByFile.get(key.fileId());
+            if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                keysByFile.remove(key.fileId());
+            }
+        }
+    }
+}
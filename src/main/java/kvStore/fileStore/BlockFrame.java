@@ -0,0 +1,80 @@
+package kvStore.fileStore;
+
+import kvStore.fileStore.compression.CompressionCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+/**
+ * On-disk framing of a data block:
+ * <pre>
+ * stored length (4) | codec id (1) | uncompressed length (4) | stored bytes | CRC32C (4)
+ * </pre>
+ * The checksum covers the codec id, the uncompressed length and the stored bytes.
+ * A block is stored uncompressed whenever compression would save less than an eighth of its size.
+ */
+final class BlockFrame {
+    static final int HEADER_SIZE = 9;
+    static final int TRAILER_SIZE = 4;
+
+    private BlockFrame() {
+    }
+
+    static byte[] encode(byte[] raw, CompressionCodec codec) {
+        byte[] stored = codec.compress(raw);
+        if (stored.length > raw.length - raw.length / 8) {
+            codec = CompressionCodec.NONE;
+            stored = raw;
+        }
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + stored.length + TRAILER_SIZE);
+        frame.putInt(stored.length);
+        frame.put(codec.id());
+        frame.putInt(raw.length);
+        frame.put(stored);
+        frame.putInt(checksum(frame.array(), 4, HEADER_SIZE - 4 + stored.length));
+        return frame.array();
+    }
+
+    /**
+     * Decodes the frame at the buffer's position and advances past it.
+     * An uncompressed block is returned as a view of the input buffer rather than a copy.
+     * @param offset File offset of the frame, for error messages.
+     */
+    static Block decode(ByteBuffer in, long offset) throws IOException {
+        int start = in.position();
+        if (in.remaining() < HEADER_SIZE + TRAILER_SIZE) {
+            throw new IOException("Truncated block at offset " + offset);
+        }
+        int storedLength = in.getInt();
+        // The length is untrusted until the checksum passes, but the checksum cannot be located without it.
+        if (storedLength < 0 || storedLength > in.limit() - start - HEADER_SIZE - TRAILER_SIZE) {
+            throw new IOException("Corrupt block length " + storedLength + " at offset " + offset);
+        }
+        byte codecId = in.get();
+        int rawLength = in.getInt();
+        ByteBuffer stored = in.slice(start + HEADER_SIZE, storedLength);
+        int expected = in.getInt(start + HEADER_SIZE + storedLength);
+        in.position(start + HEADER_SIZE + storedLength + TRAILER_SIZE);
+        ByteBuffer covered = in.duplicate().position(start + 4).limit(start + HEADER_SIZE + storedLength);
+        CRC32C crc = new CRC32C();
+        crc.update(covered);
+        if ((int) crc.getValue() != expected) {
+            throw new IOException("Block checksum mismatch at offset " + offset);
+        }
+        int framedLength = HEADER_SIZE + storedLength + TRAILER_SIZE;
+        CompressionCodec codec = CompressionCodec.forId(codecId);
+        if (codec == CompressionCodec.NONE) {
+            return new Block(stored, framedLength);
+        }
+        byte[] bytes = new byte[storedLength];
+        stored.get(bytes);
+        return new Block(ByteBuffer.wrap(codec.decompress(bytes, rawLength)), framedLength);
+    }
+
+    private static int checksum(byte[] bytes, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,92 @@
+package kvStore.fileStore;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Encoding helpers shared by the SSTable block, index and footer formats.
+ * Variable-length integers use the usual 7-bits-per-byte little-endian layout.
+ */
+final class Coding {
+    private Coding() {
+    }
+
+    static void putVarInt(ByteArrayOutputStream out, int value) {
+        putVarLong(out, value & 0xFFFFFFFFL);
+    }
+
+    static void putVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static void putInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    static void putBytes(ByteArrayOutputStream out, byte[] bytes) {
+        out.write(bytes, 0, bytes.length);
+    }
+
+    static int getVarInt(ByteBuffer in) {
+        return (int) getVarLong(in);
+    }
+
+    static long getVarLong(ByteBuffer in) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+
+    /**
+     * Compares two UTF-8 encoded keys in the same order as {@link String#compareTo}, without decoding them.
+     * Byte order of UTF-8 is code point order, which only differs from the UTF-16 order of Strings for
+     * supplementary characters (surrogate pairs in UTF-16) against U+E000..U+FFFF.
+     */
+    static int compareKeys(byte[] a, int aOffset, int aLength, byte[] b, int bOffset, int bLength) {
+        int length = Math.min(aLength, bLength);
+        int mismatch = Arrays.mismatch(a, aOffset, aOffset + length, b, bOffset, bOffset + length);
+        if (mismatch < 0) {
+            return aLength - bLength;
+        }
+        return compareMismatch(a[aOffset + mismatch] & 0xFF, b[bOffset + mismatch] & 0xFF);
+    }
+
+    /**
+     * Same as {@link #compareKeys(byte[], int, int, byte[], int, int)} for a key held in a buffer,
+     * e.g. a memory-mapped file, compared in place. Offsets are absolute indexes into the buffer.
+     */
+    static int compareKeys(ByteBuffer a, int aOffset, int aLength, byte[] b, int bOffset, int bLength) {
+        if (a.hasArray()) {
+            return compareKeys(a.array(), a.arrayOffset() + aOffset, aLength, b, bOffset, bLength);
+        }
+        int length = Math.min(aLength, bLength);
+        int mismatch = a.slice(aOffset, length).mismatch(ByteBuffer.wrap(b, bOffset, length));
+        if (mismatch < 0) {
+            return aLength - bLength;
+        }
+        return compareMismatch(a.get(aOffset + mismatch) & 0xFF, b[bOffset + mismatch] & 0xFF);
+    }
+
+    // Orders the first differing bytes x and y of two UTF-8 keys.
+    private static int compareMismatch(int x, int y) {
+        // 0xEE/0xEF lead U+E000..U+FFFF, 0xF0 and above lead supplementary characters.
+        if (x >= 0xEE && y >= 0xEE && (x >= 0xF0) != (y >= 0xF0)) {
+            return x >= 0xF0 ? -1 : 1;
+        }
+        return x - y;
+    }
+}
@@ -0,0 +1,61 @@
+package kvStore.fileStore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A unit of compaction work: the input tables are merged and written to the output level.
+ * The result must not overlap the tables of the output level that are not inputs, so every table
+ * of the output level overlapping the inputs' key range has to be an input itself.
+ */
+public final class Compaction {
+    public final List<SSTable> inputs;
+    public final int outputLevel;
+
+    public Compaction(List<SSTable> inputs, int outputLevel) {
+        if (outputLevel < 1) {
+            throw new IllegalArgumentException("Compaction must write to level 1 or deeper: " + outputLevel);
+        }
+        this.inputs = List.copyOf(inputs);
+        this.outputLevel = outputLevel;
+    }
+
+    /**
+     * @return the tables of a level with disjoint key ranges that overlap the key range covered by the given tables.
+     */
+    public static List<SSTable> overlapping(List<SSTable> level, List<SSTable> tables) throws IOException {
+        String smallestKey = null;
+        String largestKey = null;
+        for (SSTable table : tables) {
+            TableProperties properties = table.properties();
+            if (properties.smallestKey == null) {
+                continue;
+            }
+            if (smallestKey == null || properties.smallestKey.compareTo(smallestKey) < 0) {
+                smallestKey = properties.smallestKey;
+            }
+            if (largestKey == null || properties.largestKey.compareTo(largestKey) > 0) {
+                largestKey = properties.largestKey;
+            }
+        }
+        List<SSTable> overlapping = new ArrayList<>();
+        if (smallestKey == null) {
+            return overlapping;
+        }
+        for (SSTable table : level) {
+            if (table.properties().overlaps(smallestKey, largestKey)) {
+                overlapping.add(table);
+            }
+        }
+        return overlapping;
+    }
+
+    @Override
+    public String toString() {
+        return "Compaction{" +
+                "inputs=" + inputs.size() +
+                ", outputLevel=" + outputLevel +
+                '}';
+    }
+}
@@ -0,0 +1,28 @@
+package kvStore.fileStore;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Decides which tables an {@link SSTableManager} compacts, and into which level.
+ * The manager asks for one compaction at a time and applies it before asking again,
+ * so a strategy only needs to look at the current shape of the levels.
+ */
+public interface CompactionStrategy {
+
+    /**
+     * @param levels The tables of each level, read-only: level 0 holds flushed tables from oldest to newest,
+     *               which may overlap; every deeper level holds tables with disjoint key ranges, sorted by key.
+     * @return the next compaction to run, or null if the levels need no compaction.
+     */
+    Compaction pickCompaction(List<List<SSTable>> levels) throws IOException;
+
+    /**
+     * @param levels The tables of each level, as for {@link #pickCompaction(List)}.
+     * @return an estimate of the bytes compaction still has to merge to bring the levels back in shape,
+     * its debt; 0 if the strategy does not estimate it.
+     */
+    default long estimatePendingCompactionBytes(List<List<SSTable>> levels) {
+        return 0;
+    }
+}
@@ -0,0 +1,59 @@
+package kvStore.fileStore;
+
+/**
+ * A single record stored in an SSTable: either a live key-value pair or a tombstone.
+ * Tombstones are kept inline with the data so that a table is fully sorted by key.
+ */
+public final class Entry {
+    public enum Type {
+        VALUE((byte) 0),
+        TOMBSTONE((byte) 1);
+
+        // Code persisted on disk; never reorder or reuse.
+        final byte code;
+
+        Type(byte code) {
+            this.code = code;
+        }
+
+        static Type fromCode(byte code) {
+            for (Type type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("Unknown entry type: " + code);
+        }
+    }
+
+    public final String key;
+    public final String value; // null for tombstones
+    public final Type type;
+
+    private Entry(String key, String value, Type type) {
+        this.key = key;
+        this.value = value;
+        this.type = type;
+    }
+
+    public static Entry value(String key, String value) {
+        return new Entry(key, value, Type.VALUE);
+    }
+
+    public static Entry tombstone(String key) {
+        return new Entry(key, null, Type.TOMBSTONE);
+    }
+
+    public boolean isTombstone() {
+        return type == Type.TOMBSTONE;
+    }
+
+    @Override
+    public String toString() {
+        return "Entry{" +
+                "key='" + key + '\'' +
+                ", value='" + value + '\'' +
+                ", type=" + type +
+                '}';
+    }
+}
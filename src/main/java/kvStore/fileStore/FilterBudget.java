@@ -0,0 +1,66 @@
+package kvStore.fileStore;
+
+/**
+ * Splits a memory budget for key filters between the sorted runs a point lookup probes: every table of
+ * level 0, and every deeper level, of which a lookup probes one table.
+ *
+ * A lookup of an absent key reads one table for each false positive, so the expected reads are the sum of
+ * the false positive rates of all runs. Giving every run the same rate, as a fixed bits-per-key setting
+ * does, spends most of the memory on the largest run, whose rate counts no more than that of a small one.
+ * The sum is lowest for a given memory when the rate of each run is proportional to its number of entries
+ * (Dayan et al., "Monkey: Optimal Navigable Key-Value Store", SIGMOD 2017): small young tables get precise
+ * filters and the largest level a coarse one, or none if even that does not pay off.
+ */
+final class FilterBudget {
+    private static final double LN2_SQUARED = Math.log(2) * Math.log(2);
+
+    private FilterBudget() {
+    }
+
+    /**
+     * @param runEntries Number of entries of every run.
+     * @param budgetBits Memory for the Bloom filters of all runs, in bits, at -ln(p) / ln(2)^2 bits per entry.
+     * @return the false positive rate of the filter of every run; 1 for runs that get no filter.
+     */
+    static double[] falsePositiveRates(long[] runEntries, double budgetBits) {
+        double[] rates = new double[runEntries.length];
+        boolean[] filtered = new boolean[runEntries.length];
+        for (int run = 0; run < runEntries.length; run++) {
+            rates[run] = 1;
+            filtered[run] = runEntries[run] > 0;
+        }
+        while (true) {
+            // With rate p = lambda * n for a run of n entries, the filters of the runs take
+            // sum(n * -ln(lambda * n)) / ln(2)^2 bits, which is solved for ln(lambda).
+            double entries = 0;
+            double weightedLogEntries = 0;
+            for (int run = 0; run < runEntries.length; run++) {
+                if (filtered[run]) {
+                    entries += runEntries[run];
+                    weightedLogEntries += runEntries[run] * Math.log(runEntries[run]);
+                }
+            }
+            if (entries == 0) {
+                return rates;
+            }
+            double logLambda = -(budgetBits * LN2_SQUARED + weightedLogEntries) / entries;
+            // A run whose rate would reach 1 gets no filter, which leaves its share of the budget to the others.
+            int largest = -1;
+            for (int run = 0; run < runEntries.length; run++) {
+                if (filtered[run] && logLambda + Math.log(runEntries[run]) >= 0
+                        && (largest < 0 || runEntries[run] > runEntries[largest])) {
+                    largest = run;
+                }
+            }
+            if (largest < 0) {
+                for (int run = 0; run < runEntries.length; run++) {
+                    if (filtered[run]) {
+                        rates[run] = Math.exp(logLambda + Math.log(runEntries[run]));
+                    }
+                }
+                return rates;
+            }
+            filtered[largest] = false;
+        }
+    }
+}
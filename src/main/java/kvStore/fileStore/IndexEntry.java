@@ -0,0 +1,69 @@
+package kvStore.fileStore;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Points at a data block, or a run of consecutive data blocks, inside an SSTable file.
+ * The key is the last key stored in the range, so the range that may hold a key is the
+ * first one whose last key is greater than or equal to it.
+ */
+public final class IndexEntry {
+    public final String lastKey;
+    public final long offset;
+    public final int length;
+
+    public IndexEntry(String lastKey, long offset, int length) {
+        this.lastKey = lastKey;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Binary search for the first entry whose last key is greater than or equal to the given key.
+     * @return the entry position, or {@code index.size()} if the key is past the end of the table.
+     */
+    static int search(List<IndexEntry> index, String key) {
+        int low = 0;
+        int high = index.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (index.get(mid).lastKey.compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Layout: count | (keyLength | key | offset | length)*, all integers as varints.
+    static byte[] encode(List<IndexEntry> index) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Coding.putVarInt(out, index.size());
+        for (IndexEntry entry : index) {
+            byte[] key = entry.lastKey.getBytes(StandardCharsets.UTF_8);
+            Coding.putVarInt(out, key.length);
+            Coding.putBytes(out, key);
+            Coding.putVarLong(out, entry.offset);
+            Coding.putVarInt(out, entry.length);
+        }
+        return out.toByteArray();
+    }
+
+    static List<IndexEntry> decode(ByteBuffer in) {
+        int count = Coding.getVarInt(in);
+        List<IndexEntry> index = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] key = new byte[Coding.getVarInt(in)];
+            in.get(key);
+            long offset = Coding.getVarLong(in);
+            int length = Coding.getVarInt(in);
+            index.add(new IndexEntry(new String(key, StandardCharsets.UTF_8), offset, length));
+        }
+        return index;
+    }
+}
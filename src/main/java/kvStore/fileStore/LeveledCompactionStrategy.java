@@ -0,0 +1,139 @@
+package kvStore.fileStore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the tables in levels of exponentially growing size, as in LevelDB. Level 0 is compacted into
+ * level 1 once it holds too many tables; a deeper level that grows past its size limit has one table
+ * compacted into the next level, together with the tables there that overlap it. Each compaction so
+ * rewrites a bounded amount of data, and a point read touches at most one table per level below 0.
+ *
+ * Tables are picked round-robin within a level, so the strategy keeps state: use one instance per manager.
+ */
+public class LeveledCompactionStrategy implements CompactionStrategy {
+    public static final int DEFAULT_LEVEL0_FILE_TRIGGER = 4;
+    public static final long DEFAULT_LEVEL1_MAX_BYTES = 256L * 1024 * 1024;
+    public static final int DEFAULT_LEVEL_SIZE_MULTIPLIER = 10;
+
+    private final int level0FileTrigger;
+    private final long level1MaxBytes;
+    private final int levelSizeMultiplier;
+    // Largest key of the last table compacted out of each level; the next pick starts after it.
+    private final Map<Integer, String> compactPointers = new HashMap<>();
+
+    public LeveledCompactionStrategy() {
+        this(DEFAULT_LEVEL0_FILE_TRIGGER, DEFAULT_LEVEL1_MAX_BYTES, DEFAULT_LEVEL_SIZE_MULTIPLIER);
+    }
+
+    /**
+     * @param level0FileTrigger Number of flushed tables in level 0 that triggers a compaction into level 1.
+     * @param level1MaxBytes Size limit of level 1.
+     * @param levelSizeMultiplier Factor by which the size limit grows from one level to the next.
+     */
+    public LeveledCompactionStrategy(int level0FileTrigger, long level1MaxBytes, int levelSizeMultiplier) {
+        if (level0FileTrigger < 1 || level1MaxBytes < 1 || levelSizeMultiplier < 2) {
+            throw new IllegalArgumentException("Invalid leveled compaction settings: trigger " + level0FileTrigger
+                    + ", level 1 size " + level1MaxBytes + ", multiplier " + levelSizeMultiplier);
+        }
+        this.level0FileTrigger = level0FileTrigger;
+        this.level1MaxBytes = level1MaxBytes;
+        this.levelSizeMultiplier = levelSizeMultiplier;
+    }
+
+    @Override
+    public synchronized Compaction pickCompaction(List<List<SSTable>> levels) throws IOException {
+        // Compact the level that is furthest over its limit first.
+        int bestLevel = -1;
+        double bestScore = 1;
+        for (int level = 0; level < levels.size(); level++) {
+            double score = score(levels.get(level), level);
+            if (score >= bestScore) {
+                bestLevel = level;
+                bestScore = score;
+            }
+        }
+        if (bestLevel < 0) {
+            return null;
+        }
+        List<SSTable> nextLevel = bestLevel + 1 < levels.size() ? levels.get(bestLevel + 1) : List.of();
+        List<SSTable> inputs = new ArrayList<>();
+        if (bestLevel == 0) {
+            // Flushed tables overlap each other, so they all move down together.
+            inputs.addAll(levels.get(0));
+        } else {
+            inputs.add(pickTable(levels.get(bestLevel), bestLevel));
+        }
+        inputs.addAll(Compaction.overlapping(nextLevel, inputs));
+        return new Compaction(inputs, bestLevel + 1);
+    }
+
+    // Level 0 once it reaches the trigger, and the bytes by which every deeper level exceeds its limit.
+    @Override
+    public long estimatePendingCompactionBytes(List<List<SSTable>> levels) {
+        long pending = 0;
+        for (int level = 0; level < levels.size(); level++) {
+            long size = size(levels.get(level));
+            if (level == 0) {
+                pending += levels.get(0).size() >= level0FileTrigger ? size : 0;
+            } else {
+                pending += Math.max(0, size - maxBytes(level));
+            }
+        }
+        return pending;
+    }
+
+    private double score(List<SSTable> tables, int level) {
+        if (level == 0) {
+            return tables.size() / (double) level0FileTrigger;
+        }
+        return size(tables) / (double) maxBytes(level);
+    }
+
+    private static long size(List<SSTable> tables) {
+        long size = 0;
+        for (SSTable table : tables) {
+            size += table.fileSize();
+        }
+        return size;
+    }
+
+    private long maxBytes(int level) {
+        long maxBytes = level1MaxBytes;
+        for (int i = 1; i < level && maxBytes < Long.MAX_VALUE / levelSizeMultiplier; i++) {
+            maxBytes *= levelSizeMultiplier;
+        }
+        return maxBytes;
+    }
+
+    // The first table after the compact pointer, wrapping around to the start of the level.
+    private SSTable pickTable(List<SSTable> tables, int level) throws IOException {
+        String pointer = compactPointers.get(level);
+        SSTable picked = tables.get(0);
+        if (pointer != null) {
+            for (SSTable table : tables) {
+                if (table.properties().smallestKey.compareTo(pointer) > 0) {
+                    picked = table;
+                    break;
+                }
+            }
+        }
+        compactPointers.put(level, picked.properties().largestKey);
+        return picked;
+    }
+
+    public int getLevel0FileTrigger() {
+        return level0FileTrigger;
+    }
+
+    public long getLevel1MaxBytes() {
+        return level1MaxBytes;
+    }
+
+    public int getLevelSizeMultiplier() {
+        return levelSizeMultiplier;
+    }
+}
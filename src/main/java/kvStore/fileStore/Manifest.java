@@ -0,0 +1,140 @@
+package kvStore.fileStore;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of the changes to the set of tables of an {@link SSTableManager}, so startup replays it
+ * instead of listing the directory and opening every table to find out its level and key range.
+ *
+ * Every change is written as one edit record before it takes effect in memory:
+ * <pre>
+ * payload length (4) | payload | CRC32C of the payload (4)
+ * payload: next file number | removed count | file number* | added count | (file number | level | properties)*
+ * </pre>
+ * with all integers in the payload as varints and the properties as encoded by {@link TableProperties}.
+ * An edit that moves a table to another level removes and adds the same file number. A record cut short
+ * by a crash is ignored on replay, like the change it described, which had not taken effect yet. Every start
+ * replaces the manifest with a single edit holding the replayed tables, so nothing is appended after such a record.
+ */
+final class Manifest implements Closeable {
+    static final String FILE_NAME = "MANIFEST";
+    private static final String TEMP_FILE_NAME = "MANIFEST.tmp";
+
+    private final FileOutputStream out;
+
+    /**
+     * A live table: the number in its file name, its level and its properties.
+     */
+    record TableEntry(long fileNumber, int level, TableProperties properties) {
+    }
+
+    /**
+     * The tables left after replaying the manifest, by file number, and the first unused file number.
+     */
+    record State(SortedMap<Long, TableEntry> tables, long nextFileNumber) {
+    }
+
+    private Manifest(File file) throws IOException {
+        this.out = new FileOutputStream(file, true);
+    }
+
+    /**
+     * @return whether the directory has a manifest to replay.
+     */
+    static boolean exists(String directory) {
+        return new File(directory, FILE_NAME).exists();
+    }
+
+    static State replay(String directory) throws IOException {
+        SortedMap<Long, TableEntry> tables = new TreeMap<>();
+        long nextFileNumber = 1;
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(new File(directory, FILE_NAME).toPath()));
+        while (in.remaining() >= 4) {
+            int length = in.getInt();
+            if (length < 0 || in.remaining() < length + 4) {
+                break;
+            }
+            ByteBuffer payload = in.slice(in.position(), length);
+            in.position(in.position() + length);
+            if (checksum(payload.duplicate()) != in.getInt()) {
+                break;
+            }
+            nextFileNumber = Math.max(nextFileNumber, Coding.getVarLong(payload));
+            for (int removed = Coding.getVarInt(payload); removed > 0; removed--) {
+                tables.remove(Coding.getVarLong(payload));
+            }
+            for (int added = Coding.getVarInt(payload); added > 0; added--) {
+                long fileNumber = Coding.getVarLong(payload);
+                int level = Coding.getVarInt(payload);
+                byte[] properties = new byte[Coding.getVarInt(payload)];
+                payload.get(properties);
+                tables.put(fileNumber, new TableEntry(fileNumber, level, TableProperties.decode(ByteBuffer.wrap(properties))));
+            }
+        }
+        return new State(tables, nextFileNumber);
+    }
+
+    /**
+     * Starts a new manifest holding just the given tables, replacing any old one atomically, and opens it
+     * for appending. Replayed edits would otherwise pile up from one start to the next.
+     */
+    static Manifest create(String directory, long nextFileNumber, Collection<TableEntry> tables) throws IOException {
+        File temp = new File(directory, TEMP_FILE_NAME);
+        try (FileOutputStream tempOut = new FileOutputStream(temp)) {
+            tempOut.write(record(nextFileNumber, List.of(), tables));
+            tempOut.getFD().sync();
+        }
+        File file = new File(directory, FILE_NAME);
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new Manifest(file);
+    }
+
+    /**
+     * Appends one edit and syncs it to disk; the change may take effect once this returns.
+     * @param nextFileNumber First file number not used by any table written so far.
+     */
+    synchronized void append(long nextFileNumber, Collection<Long> removed, Collection<TableEntry> added)
+            throws IOException {
+        out.write(record(nextFileNumber, removed, added));
+        out.getFD().sync();
+    }
+
+    private static byte[] record(long nextFileNumber, Collection<Long> removed, Collection<TableEntry> added) {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        Coding.putVarLong(payload, nextFileNumber);
+        Coding.putVarInt(payload, removed.size());
+        for (long fileNumber : removed) {
+            Coding.putVarLong(payload, fileNumber);
+        }
+        Coding.putVarInt(payload, added.size());
+        for (TableEntry table : added) {
+            Coding.putVarLong(payload, table.fileNumber());
+            Coding.putVarInt(payload, table.level());
+            byte[] properties = table.properties().encode();
+            Coding.putVarInt(payload, properties.length);
+            Coding.putBytes(payload, properties);
+        }
+        byte[] bytes = payload.toByteArray();
+        ByteBuffer record = ByteBuffer.allocate(bytes.length + 8);
+        record.putInt(bytes.length);
+        record.put(bytes);
+        record.putInt(checksum(ByteBuffer.wrap(bytes)));
+        return record.array();
+    }
+
+    private static int checksum(ByteBuffer bytes) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,117 @@
+package kvStore.fileStore;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An SSTable file mapped into memory. A single {@link MappedByteBuffer} is limited to 2 GB, so the file
+ * is mapped in chunks; a range that lies within one chunk is returned as a view without copying,
+ * one that straddles two chunks is copied.
+ *
+ * {@link #close()} unmaps the file right away instead of waiting for the garbage collector, so the
+ * caller must make sure nobody reads from the file, or from blocks viewing it, afterwards.
+ */
+final class MappedTableFile {
+    private static final long DEFAULT_CHUNK_SIZE = 1L << 30;
+    private static final Method INVOKE_CLEANER;
+    private static final Object UNSAFE;
+
+    static {
+        // sun.misc.Unsafe.invokeCleaner is the only way to release a mapping before it is garbage collected.
+        Method invokeCleaner = null;
+        Object unsafe = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            System.err.println("Unmapping SSTables is not supported, mappings are released by the garbage collector: " + e);
+        }
+        INVOKE_CLEANER = invokeCleaner;
+        UNSAFE = unsafe;
+    }
+
+    private final Path path;
+    private final long size;
+    private final long chunkSize;
+    private volatile MappedByteBuffer[] chunks;
+
+    private MappedTableFile(Path path, long size, long chunkSize, MappedByteBuffer[] chunks) {
+        this.path = path;
+        this.size = size;
+        this.chunkSize = chunkSize;
+        this.chunks = chunks;
+    }
+
+    static MappedTableFile map(Path path) throws IOException {
+        return map(path, DEFAULT_CHUNK_SIZE);
+    }
+
+    // Smaller chunks let tests cover ranges that cross a chunk boundary.
+    static MappedTableFile map(Path path, long chunkSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            MappedByteBuffer[] chunks = new MappedByteBuffer[(int) ((size + chunkSize - 1) / chunkSize)];
+            for (int i = 0; i < chunks.length; i++) {
+                long start = i * chunkSize;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(chunkSize, size - start));
+            }
+            // The mapping stays valid after the channel is closed.
+            return new MappedTableFile(path, size, chunkSize, chunks);
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * @return the bytes [position, position + length) of the file, positioned at 0.
+     */
+    ByteBuffer slice(long position, int length) throws IOException {
+        MappedByteBuffer[] chunks = this.chunks;
+        if (chunks == null) {
+            throw new IOException("SSTable is no longer mapped: " + path);
+        }
+        if (position < 0 || position + length > size) {
+            throw new IOException("Read past the end of SSTable " + path + " at offset " + position);
+        }
+        int chunk = (int) (position / chunkSize);
+        int offset = (int) (position % chunkSize);
+        if (offset + length <= chunks[chunk].limit()) {
+            return chunks[chunk].slice(offset, length);
+        }
+        ByteBuffer copy = ByteBuffer.allocate(length);
+        while (copy.hasRemaining()) {
+            int count = Math.min(copy.remaining(), chunks[chunk].limit() - offset);
+            copy.put(chunks[chunk].slice(offset, count));
+            chunk++;
+            offset = 0;
+        }
+        return copy.flip();
+    }
+
+    void close() {
+        MappedByteBuffer[] released = chunks;
+        chunks = null;
+        if (released == null || INVOKE_CLEANER == null) {
+            return;
+        }
+        for (MappedByteBuffer chunk : released) {
+            try {
+                INVOKE_CLEANER.invoke(UNSAFE, chunk);
+            } catch (ReflectiveOperationException e) {
+                System.err.println("Failed to unmap " + path + ": " + e.getMessage());
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package kvStore.fileStore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Merges sorted entry sources into one sorted stream with a heap holding the head of each source.
+ * When several sources have an entry for the same key only the one from the newest source is returned,
+ * tombstones included, so callers decide whether a tombstone hides the key or must be kept.
+ * Memory use is proportional to the number of sources, not to the number of entries.
+ */
+public class MergingIterator implements Iterator<Entry>, Closeable {
+    private final List<? extends Iterator<Entry>> sources;
+    private final Closeable onClose;
+    // Smallest key first (largest when reversed); for equal keys the newest source (lowest index) first.
+    private final PriorityQueue<Head> heap;
+
+    private record Head(Entry entry, int source) {
+    }
+
+    /**
+     * @param sources Iterators sorted by key, ordered from newest to oldest.
+     */
+    public MergingIterator(List<? extends Iterator<Entry>> sources) {
+        this(sources, false, null);
+    }
+
+    /**
+     * @param reverse Whether the sources, and so the result, are sorted by descending key.
+     */
+    public MergingIterator(List<? extends Iterator<Entry>> sources, boolean reverse) {
+        this(sources, reverse, null);
+    }
+
+    /**
+     * @param onClose Run after the sources are closed, e.g. to release the tables read; may be null.
+     */
+    MergingIterator(List<? extends Iterator<Entry>> sources, boolean reverse, Closeable onClose) {
+        this.sources = sources;
+        this.onClose = onClose;
+        Comparator<String> keyOrder = reverse ? Comparator.reverseOrder() : Comparator.naturalOrder();
+        this.heap = new PriorityQueue<>(Comparator.comparing((Head head) -> head.entry.key, keyOrder)
+                .thenComparingInt(head -> head.source));
+        for (int i = 0; i < sources.size(); i++) {
+            advance(i);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !heap.isEmpty();
+    }
+
+    @Override
+    public Entry next() {
+        Head head = heap.poll();
+        if (head == null) {
+            throw new NoSuchElementException();
+        }
+        advance(head.source);
+        // Older versions of the same key are shadowed.
+        while (!heap.isEmpty() && heap.peek().entry.key.equals(head.entry.key)) {
+            advance(heap.poll().source);
+        }
+        return head.entry;
+    }
+
+    private void advance(int source) {
+        Iterator<Entry> iterator = sources.get(source);
+        if (iterator.hasNext()) {
+            heap.add(new Head(iterator.next(), source));
+        }
+    }
+
+    /**
+     * Closes every source that is {@link Closeable}, then runs the close hook.
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (Iterator<Entry> source : sources) {
+            if (source instanceof Closeable closeable) {
+                try {
+                    closeable.close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        }
+        if (onClose != null) {
+            onClose.close();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package kvStore.fileStore;
+
+/**
+ * Maps a key to the prefix indexed by the prefix filters of the tables, e.g. the tenant of a
+ * "tenant:entity:id" key. Scans that only read keys with one such prefix skip the tables whose filter
+ * rules it out, without opening them.
+ *
+ * An extractor must be consistent with key order: a prefix is itself a key with that prefix, and every key
+ * that starts with a key's prefix has the same prefix. Both extractors below are. The name is stored with
+ * every prefix filter, and filters built by an extractor of another name are ignored, so changing the
+ * extractor of a store is safe.
+ */
+public interface PrefixExtractor {
+    /**
+     * @return the prefix of the key, or null if it has none; such keys are not in the prefix filter.
+     */
+    String extract(String key);
+
+    /**
+     * @return a name identifying the extractor and its settings.
+     */
+    String name();
+
+    /**
+     * @return an extractor of the first length characters of a key; shorter keys have no prefix.
+     */
+    static PrefixExtractor fixedLength(int length) {
+        if (length < 1) {
+            throw new IllegalArgumentException("Prefix length must be positive: " + length);
+        }
+        return new FixedLength(length);
+    }
+
+    /**
+     * @return an extractor of a key up to and including the first delimiter; keys without one have no prefix.
+     */
+    static PrefixExtractor delimiter(char delimiter) {
+        return new Delimiter(delimiter);
+    }
+
+    record FixedLength(int length) implements PrefixExtractor {
+        @Override
+        public String extract(String key) {
+            return key.length() < length ? null : key.substring(0, length);
+        }
+
+        @Override
+        public String name() {
+            return "fixed:" + length;
+        }
+    }
+
+    record Delimiter(char delimiter) implements PrefixExtractor {
+        @Override
+        public String extract(String key) {
+            int end = key.indexOf(delimiter);
+            return end < 0 ? null : key.substring(0, end + 1);
+        }
+
+        @Override
+        public String name() {
+            return "delimiter:" + (int) delimiter;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package kvStore.fileStore;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Marks every key from startKey to endKey, both inclusive, as deleted with a single record.
+ *
+ * A range tombstone only hides data older than itself: entries of older tables, and of older sources in
+ * general. The entries stored next to it in the same table are always newer, since the data it covered was
+ * dropped before the table was written, so a table's own entries take precedence over its range tombstones.
+ * Range tombstones of one table can therefore be merged freely; lists of them are kept as a sorted union of
+ * disjoint ranges, see {@link #union(Collection)}.
+ */
+public final class RangeTombstone {
+    public final String startKey;
+    public final String endKey;
+
+    public RangeTombstone(String startKey, String endKey) {
+        if (startKey.compareTo(endKey) > 0) {
+            throw new IllegalArgumentException("Range start '" + startKey + "' is after its end '" + endKey + "'");
+        }
+        this.startKey = startKey;
+        this.endKey = endKey;
+    }
+
+    public boolean covers(String key) {
+        return key.compareTo(startKey) >= 0 && key.compareTo(endKey) <= 0;
+    }
+
+    /**
+     * @return the smallest key after the given one: no key sorts between the two.
+     */
+    static String successor(String key) {
+        return key + '\0';
+    }
+
+    /**
+     * @return the union of the ranges as a list of disjoint, non-adjacent ranges sorted by key.
+     */
+    public static List<RangeTombstone> union(Collection<RangeTombstone> tombstones) {
+        List<RangeTombstone> sorted = new ArrayList<>(tombstones);
+        sorted.sort(Comparator.comparing((RangeTombstone tombstone) -> tombstone.startKey));
+        List<RangeTombstone> union = new ArrayList<>(sorted.size());
+        for (RangeTombstone tombstone : sorted) {
+            RangeTombstone last = union.isEmpty() ? null : union.get(union.size() - 1);
+            if (last != null && tombstone.startKey.compareTo(successor(last.endKey)) <= 0) {
+                if (tombstone.endKey.compareTo(last.endKey) > 0) {
+                    union.set(union.size() - 1, new RangeTombstone(last.startKey, tombstone.endKey));
+                }
+            } else {
+                union.add(tombstone);
+            }
+        }
+        return union;
+    }
+
+    /**
+     * @param union Ranges as returned by {@link #union(Collection)}.
+     */
+    public static boolean covers(List<RangeTombstone> union, String key) {
+        RangeTombstone tombstone = find(union, key);
+        return tombstone != null && tombstone.startKey.compareTo(key) <= 0;
+    }
+
+    /**
+     * @param union Ranges as returned by {@link #union(Collection)}.
+     * @return whether every key from startKey to endKey, inclusive, is covered.
+     */
+    static boolean coversRange(List<RangeTombstone> union, String startKey, String endKey) {
+        RangeTombstone tombstone = find(union, startKey);
+        return tombstone != null && tombstone.covers(startKey) && tombstone.endKey.compareTo(endKey) >= 0;
+    }
+
+    // Binary search for the first range that does not end before the key.
+    private static RangeTombstone find(List<RangeTombstone> union, String key) {
+        int low = 0;
+        int high = union.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (union.get(mid).endKey.compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low < union.size() ? union.get(low) : null;
+    }
+
+    /**
+     * @param startKey Inclusive lower bound, or null for none.
+     * @param endKey Inclusive upper bound, or null for none.
+     * @return the parts of the sorted ranges within the bounds.
+     */
+    static List<RangeTombstone> clip(List<RangeTombstone> union, String startKey, String endKey) {
+        List<RangeTombstone> clipped = new ArrayList<>();
+        for (RangeTombstone tombstone : union) {
+            String start = startKey != null && startKey.compareTo(tombstone.startKey) > 0 ? startKey : tombstone.startKey;
+            String end = endKey != null && endKey.compareTo(tombstone.endKey) < 0 ? endKey : tombstone.endKey;
+            if (start.compareTo(end) <= 0) {
+                clipped.add(new RangeTombstone(start, end));
+            }
+        }
+        return clipped;
+    }
+
+    // Layout: count | (keyLength | start key | keyLength | end key)*, all integers as varints.
+    static void encode(ByteArrayOutputStream out, List<RangeTombstone> tombstones) {
+        Coding.putVarInt(out, tombstones.size());
+        for (RangeTombstone tombstone : tombstones) {
+            TableProperties.putKey(out, tombstone.startKey);
+            TableProperties.putKey(out, tombstone.endKey);
+        }
+    }
+
+    static List<RangeTombstone> decode(ByteBuffer in) {
+        int count = Coding.getVarInt(in);
+        List<RangeTombstone> tombstones = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String startKey = TableProperties.getKey(in);
+            tombstones.add(new RangeTombstone(startKey, TableProperties.getKey(in)));
+        }
+        return tombstones;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof RangeTombstone other && startKey.equals(other.startKey) && endKey.equals(other.endKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * startKey.hashCode() + endKey.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "RangeTombstone{" +
+                "startKey='" + startKey + '\'' +
+                ", endKey='" + endKey + '\'' +
+                '}';
+    }
+}
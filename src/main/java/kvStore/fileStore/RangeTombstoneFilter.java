@@ -0,0 +1,54 @@
+package kvStore.fileStore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Leaves out the entries of a source that range tombstones of newer sources delete. Putting one in front
+ * of every source of a {@link MergingIterator} hides deleted keys from the merge: if the newest entry of a
+ * key is covered, so are all older ones, since the tombstones covering it are newer than them as well.
+ */
+final class RangeTombstoneFilter implements Iterator<Entry>, Closeable {
+    private final Iterator<Entry> source;
+    private final List<RangeTombstone> tombstones;
+    private Entry next;
+
+    /**
+     * @param tombstones Range tombstones newer than the source, as returned by {@link RangeTombstone#union}.
+     */
+    RangeTombstoneFilter(Iterator<Entry> source, List<RangeTombstone> tombstones) {
+        this.source = source;
+        this.tombstones = tombstones;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null && source.hasNext()) {
+            Entry entry = source.next();
+            if (!RangeTombstone.covers(tombstones, entry.key)) {
+                next = entry;
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public Entry next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Entry entry = next;
+        next = null;
+        return entry;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (source instanceof Closeable closeable) {
+            closeable.close();
+        }
+    }
+}
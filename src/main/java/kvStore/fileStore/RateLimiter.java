@@ -0,0 +1,195 @@
+package kvStore.fileStore;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Token bucket that caps the write rate of flushes, compactions and the WAL, so background I/O cannot
+ * saturate the disk and stall reads. One limiter is meant to be shared by all writers of a node.
+ *
+ * Tokens are bytes and refill continuously at the current rate; at most a tenth of a second's worth is
+ * saved up while idle. A request is granted once the bucket is not empty and may take it below zero, so
+ * a write larger than the bucket is not split but delays the requests after it. Requests of one priority
+ * are granted in arrival order, and background requests only when no foreground request is waiting.
+ *
+ * In auto-tune mode the rate follows the compaction debt reported by the {@link SSTableManager}: it
+ * grows linearly from the base rate with no debt up to the maximum rate at {@code debtForMaxRate} bytes,
+ * so compaction is held back while it keeps up and gets the budget to catch up once it falls behind.
+ */
+public class RateLimiter {
+    public enum Priority {
+        // Writes a client waits for: WAL appends and MemTable flushes.
+        FOREGROUND,
+        // Compaction.
+        BACKGROUND
+    }
+
+    private static final long REFILL_PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    // A throttled compaction writing block by block would otherwise wake up for every block, taking the CPU
+    // from readers each time; this way it wakes up to a batch of blocks.
+    private static final long MIN_BACKGROUND_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final long baseBytesPerSecond;
+    private final long maxBytesPerSecond;
+    private final long debtForMaxRate;  // 0 when not auto-tuned
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    // Per priority: the next ticket to hand out and the ticket being served, for arrival order.
+    private final long[] nextTicket = new long[Priority.values().length];
+    private final long[] servingTicket = new long[Priority.values().length];
+    private final long[] bytesGranted = new long[Priority.values().length];
+    private final long[] throttledNanos = new long[Priority.values().length];
+    private volatile long bytesPerSecond;
+    private volatile long compactionDebt;
+    private double available;
+    private long lastRefill = System.nanoTime();
+
+    /**
+     * @param bytesPerSecond Fixed rate shared by all priorities.
+     */
+    public RateLimiter(long bytesPerSecond) {
+        this(bytesPerSecond, bytesPerSecond, 0);
+    }
+
+    /**
+     * Creates an auto-tuned limiter.
+     * @param baseBytesPerSecond Rate without compaction debt.
+     * @param maxBytesPerSecond Rate once the debt reaches debtForMaxRate.
+     * @param debtForMaxRate Compaction debt in bytes at which the rate is at its maximum; 0 disables auto-tuning.
+     */
+    public RateLimiter(long baseBytesPerSecond, long maxBytesPerSecond, long debtForMaxRate) {
+        if (baseBytesPerSecond < 1 || maxBytesPerSecond < baseBytesPerSecond || debtForMaxRate < 0) {
+            throw new IllegalArgumentException("Invalid rate limit: " + baseBytesPerSecond + " to " + maxBytesPerSecond
+                    + " bytes per second at a debt of " + debtForMaxRate + " bytes");
+        }
+        this.baseBytesPerSecond = baseBytesPerSecond;
+        this.maxBytesPerSecond = maxBytesPerSecond;
+        this.debtForMaxRate = debtForMaxRate;
+        this.bytesPerSecond = baseBytesPerSecond;
+    }
+
+    /**
+     * Blocks until the bytes may be written. Interrupts do not end the wait, since the write has to happen
+     * anyway; the interrupt status is restored before returning.
+     */
+    public void request(long bytes, Priority priority) {
+        if (bytes <= 0) {
+            return;
+        }
+        int p = priority.ordinal();
+        long startTime = System.nanoTime();
+        boolean throttled = false;
+        boolean interrupted = false;
+        lock.lock();
+        try {
+            long ticket = nextTicket[p]++;
+            while (true) {
+                refill();
+                if (servingTicket[p] == ticket && !isBehindForeground(priority) && available > 0) {
+                    break;
+                }
+                throttled = true;
+                try {
+                    if (servingTicket[p] == ticket && !isBehindForeground(priority)) {
+                        // First in line: sleep until the bucket has refilled, or the rate changed.
+                        long refillNanos = (long) (-available * 1e9 / bytesPerSecond);
+                        changed.awaitNanos(Math.max(priority == Priority.FOREGROUND ? 1 : MIN_BACKGROUND_WAIT_NANOS,
+                                refillNanos));
+                    } else {
+                        changed.await();
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            available -= bytes;
+            servingTicket[p]++;
+            bytesGranted[p] += bytes;
+            if (throttled) {
+                throttledNanos[p] += System.nanoTime() - startTime;
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean isBehindForeground(Priority priority) {
+        int foreground = Priority.FOREGROUND.ordinal();
+        return priority != Priority.FOREGROUND && servingTicket[foreground] != nextTicket[foreground];
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        double burst = bytesPerSecond * (REFILL_PERIOD_NANOS / 1e9);
+        available = Math.min(burst, available + (now - lastRefill) * (bytesPerSecond / 1e9));
+        lastRefill = now;
+    }
+
+    /**
+     * Reports the bytes compaction has fallen behind by; in auto-tune mode this sets the rate.
+     * @see CompactionStrategy#estimatePendingCompactionBytes(java.util.List)
+     */
+    public void setCompactionDebt(long bytes) {
+        compactionDebt = bytes;
+        if (debtForMaxRate == 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            // Tokens saved at the old rate stay valid.
+            refill();
+            double share = Math.min(1, bytes / (double) debtForMaxRate);
+            bytesPerSecond = baseBytesPerSecond + (long) ((maxBytesPerSecond - baseBytesPerSecond) * share);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isAutoTuned() {
+        return debtForMaxRate > 0;
+    }
+
+    /**
+     * @return the current rate in bytes per second.
+     */
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * @return the compaction debt last reported, in bytes.
+     */
+    public long getCompactionDebt() {
+        return compactionDebt;
+    }
+
+    /**
+     * @return the bytes granted to requests of the priority so far.
+     */
+    public long getBytesGranted(Priority priority) {
+        lock.lock();
+        try {
+            return bytesGranted[priority.ordinal()];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the total time requests of the priority spent waiting, in nanoseconds.
+     */
+    public long getThrottledNanos(Priority priority) {
+        lock.lock();
+        try {
+            return throttledNanos[priority.ordinal()];
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -1,36 +1,144 @@
 package kvStore.fileStore;
 
-import kvStore.bloomFilter.BloomFilter;
+import kvStore.bloomFilter.KeyFilter;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 //sorted string table
 public class SSTable {
+    private static final AtomicLong NEXT_ID = new AtomicLong();
     final Path filePath;
-    private final BloomFilter<String> bloomFilter;  // Associated Bloom filter
+    // Identifies this table's blocks in the shared block cache.
+    final long id = NEXT_ID.incrementAndGet();
+    private volatile KeyFilter filter;  // Associated Bloom filter
+    private volatile KeyFilter prefixFilter;  // Filter of the key prefixes; null if the table has none
+    // Loads the filter and index kept next to the table on first use; null once loaded, or if they were passed in.
+    private volatile Supplier<Metadata> metadataLoader;
+    private final BlockCache blockCache;  // Shared with the other tables of the manager; may be null
+    private final TableHandleCache handleCache;  // Shared open files; may be null
+    private final boolean memoryMapped;
+    private volatile MappedTableFile mappedFile;  // Mapped on first read in memory-mapped mode
+    // Sparse index kept in memory; falls back to the full block index from the footer when absent.
+    private volatile List<IndexEntry> index;
+    // Loaded from the footer on first use when not passed in.
+    private volatile TableProperties properties;
+    private volatile long fileSize = -1;
+    // One reference held by the manager while the table is live, and one per open scan reading it;
+    // the files may only be deleted once the last one is dropped.
+    private final AtomicInteger references = new AtomicInteger(1);
 
-    public SSTable(String fileName, BloomFilter<String> bloomFilter) {
+    /**
+     * Key filter, prefix filter and sparse index of a table, any of which may be null.
+     */
+    public record Metadata(KeyFilter filter, KeyFilter prefixFilter, List<IndexEntry> index) {
+    }
+
+    /**
+     * @param options The table's metadata known up front and the caches it reads through.
+     */
+    public SSTable(String fileName, Options options) {
         this.filePath = Paths.get(fileName);
-        this.bloomFilter = bloomFilter;
+        this.filter = options.filter;
+        this.prefixFilter = options.prefixFilter;
+        this.index = options.index;
+        this.properties = options.properties;
+        this.blockCache = options.blockCache;
+        this.handleCache = options.handleCache;
+        this.memoryMapped = options.memoryMapped;
+    }
+
+    /**
+     * Opens a table without reading anything yet: the Bloom filter and the index are loaded on first use.
+     * @param metadataLoader Returns the table's metadata; a null index falls back to the block index from the footer.
+     * @param options Properties and caches of the table; its filters and index come from the loader.
+     */
+    public static SSTable openLazily(String fileName, Supplier<Metadata> metadataLoader, Options options) {
+        SSTable ssTable = new SSTable(fileName, options);
+        ssTable.metadataLoader = metadataLoader;
+        return ssTable;
+    }
+
+    /**
+     * Loads the Bloom filter and index now if they were to be loaded on first use.
+     */
+    public void loadMetadata() {
+        if (metadataLoader == null) {
+            return;
+        }
+        synchronized (this) {
+            Supplier<Metadata> loader = metadataLoader;
+            if (loader != null) {
+                Metadata metadata = loader.get();
+                filter = metadata.filter();
+                prefixFilter = metadata.prefixFilter();
+                if (metadata.index() != null) {
+                    index = metadata.index();
+                }
+                metadataLoader = null;
+            }
+        }
+    }
+
+    /**
+     * @return whether the Bloom filter and index are loaded, or were never to be loaded on first use.
+     */
+    public boolean isMetadataLoaded() {
+        return metadataLoader == null;
     }
 
     public void write(Map<String, String> data) throws IOException {
-        try (BufferedWriter writer = Files.newBufferedWriter(filePath)) {
-            for (var entry : data.entrySet()) {
-                writer.write(entry.getKey() + "," + entry.getValue());
-                writer.newLine();
+        List<Entry> entries = new ArrayList<>(data.size());
+        for (var entry : new TreeMap<>(data).entrySet()) {
+            entries.add(Entry.value(entry.getKey(), entry.getValue()));
+        }
+        write(entries);
+    }
+
+    /**
+     * Writes entries that are already sorted by key (tombstones included) as this table's file,
+     * with a full block index and no compression. Use {@link SSTableWriter} directly for other settings.
+     */
+    public void write(Iterable<Entry> entries) throws IOException {
+        try (SSTableWriter writer = new SSTableWriter(filePath, new SSTableWriter.Options())) {
+            for (Entry entry : entries) {
+                writer.add(entry);
             }
+            index = writer.finish();
+            properties = writer.getProperties();
         }
     }
 
     public String read(String key) throws IOException {
-        try (BufferedReader reader = Files.newBufferedReader(filePath)) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",", 2);
-                if (parts[0].equals(key)) return parts[1];
+        Entry entry = get(key);
+        return entry == null || entry.isTombstone() ? null : entry.value;
+    }
+
+    /**
+     * Point lookup: one binary search over the in-memory index and a single read of the
+     * blocks that index entry covers.
+     * @return the stored entry (possibly a tombstone), or null if the table has no record for the key.
+     */
+    public Entry get(String key) throws IOException {
+        List<IndexEntry> index = index();
+        int position = IndexEntry.search(index, key);
+        if (position == index.size()) {
+            return null;
+        }
+        byte[] target = key.getBytes(StandardCharsets.UTF_8);
+        for (Block block : readBlocks(null, index.get(position), true)) {
+            Block.Cursor cursor = block.cursor();
+            cursor.seek(target);
+            if (cursor.hasNext()) {
+                // The first block that reaches past the key is the only one that may hold it.
+                return cursor.nextKeyEquals(target) ? cursor.next() : null;
             }
         }
         return null;
@@ -38,13 +146,318 @@ public class SSTable {
 
     public List<String> readAllKeys() throws IOException {
         List<String> keys = new ArrayList<>();
-        try (BufferedReader reader = Files.newBufferedReader(filePath)) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                keys.add(line.split(",", 2)[0]);
+        try (SSTableIterator iterator = iterator(null, false)) {
+            while (iterator.hasNext()) {
+                keys.add(iterator.next().key);
             }
         }
         return keys;
     }
-}
 
+    /**
+     * Opens an iterator positioned at the first entry whose key is greater than or equal to startKey.
+     * @param startKey The key to seek to, or null to start at the beginning of the table.
+     */
+    public SSTableIterator iterator(String startKey) throws IOException {
+        return iterator(startKey, true);
+    }
+
+    /**
+     * @param fillCache Whether blocks read from disk are added to the block cache. Bulk reads such as
+     *                  compaction pass false so they do not push hot blocks out.
+     */
+    public SSTableIterator iterator(String startKey, boolean fillCache) throws IOException {
+        return new SSTableIterator(this, startKey, fillCache);
+    }
+
+    /**
+     * Opens an iterator over the entries in descending key order, starting at the last entry whose key
+     * is less than or equal to startKey.
+     * @param startKey The key to seek to, or null to start at the end of the table.
+     */
+    public SSTableReverseIterator reverseIterator(String startKey) throws IOException {
+        return new SSTableReverseIterator(this, startKey, true);
+    }
+
+    public boolean mightContain(String key) {
+        loadMetadata();
+        KeyFilter filter = this.filter;
+        return filter == null || filter.containsHash(KeyFilter.hash(key));
+    }
+
+    /**
+     * Same as {@link #mightContain}, for a key hashed with {@link KeyFilter#hash} already.
+     */
+    public boolean mightContainHash(long hash) {
+        loadMetadata();
+        KeyFilter filter = this.filter;
+        return filter == null || filter.containsHash(hash);
+    }
+
+    /**
+     * @param prefixHash {@link KeyFilter#hash} of a key prefix.
+     * @return false if no key of the table has the prefix.
+     */
+    public boolean mightContainPrefixHash(long prefixHash) {
+        loadMetadata();
+        KeyFilter prefixFilter = this.prefixFilter;
+        return prefixFilter == null || prefixFilter.containsHash(prefixHash);
+    }
+
+    public KeyFilter getFilter() {
+        loadMetadata();
+        return filter;
+    }
+
+    public KeyFilter getPrefixFilter() {
+        loadMetadata();
+        return prefixFilter;
+    }
+
+    public File getFile() {
+        return filePath.toFile();
+    }
+
+    /**
+     * @return the size of the table file in bytes.
+     */
+    public long fileSize() {
+        long size = fileSize;
+        if (size < 0) {
+            size = filePath.toFile().length();
+            fileSize = size;
+        }
+        return size;
+    }
+
+    /**
+     * @return the in-memory index; may be sparser than the block index stored in the file.
+     */
+    public List<IndexEntry> index() throws IOException {
+        loadMetadata();
+        if (index == null) {
+            loadFooter();
+        }
+        return index;
+    }
+
+    /**
+     * @return the key range and counts of the table.
+     */
+    public TableProperties properties() throws IOException {
+        if (properties == null) {
+            loadFooter();
+        }
+        return properties;
+    }
+
+    /**
+     * Reads every framed block in the range an index entry points at. Blocks are served from the
+     * block cache where possible; the first miss reads the rest of the range with one disk read.
+     * @param channel An open channel on this table's file, or null to acquire one only if needed.
+     *                Unused in memory-mapped mode.
+     */
+    List<Block> readBlocks(FileChannel channel, IndexEntry handle, boolean fillCache) throws IOException {
+        List<Block> blocks = new ArrayList<>();
+        long offset = handle.offset;
+        long end = handle.offset + handle.length;
+        if (blockCache != null) {
+            Block cached;
+            while (offset < end && (cached = blockCache.get(id, offset)) != null) {
+                blocks.add(cached);
+                offset += cached.framedLength();
+            }
+        }
+        if (offset == end) {
+            return blocks;
+        }
+        ByteBuffer range;
+        if (memoryMapped) {
+            range = mappedFile().slice(offset, (int) (end - offset));
+        } else if (channel != null) {
+            range = readFully(channel, offset, (int) (end - offset));
+        } else {
+            try (TableHandleCache.Handle file = openHandle()) {
+                range = readFully(file.channel(), offset, (int) (end - offset));
+            }
+        }
+        while (range.hasRemaining()) {
+            long blockOffset = offset + range.position();
+            Block block = BlockFrame.decode(range, blockOffset);
+            // Views of a mapping are left to the page cache; they must not outlive the mapping either.
+            if (blockCache != null && fillCache && !block.isDirect()) {
+                blockCache.put(id, blockOffset, block);
+            }
+            blocks.add(block);
+        }
+        return blocks;
+    }
+
+    /**
+     * @return a handle on this table's file, pooled if the table has a handle cache. Close it when done.
+     */
+    TableHandleCache.Handle openHandle() throws IOException {
+        return handleCache != null ? handleCache.acquire(filePath) : TableHandleCache.Handle.open(filePath);
+    }
+
+    boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    // Adds a reference for a reader that keeps using the table after letting go of the manager's table lock.
+    // Only taken while the table is live, i.e. while the manager still holds its own reference.
+    void retain() {
+        references.incrementAndGet();
+    }
+
+    // Drops a reference; returns whether it was the last one, so the table can be released and its files deleted.
+    boolean unref() {
+        return references.decrementAndGet() == 0;
+    }
+
+    // Drops the cached blocks, closes the pooled file handle and unmaps the file, e.g. before the file is deleted.
+    // No reader may use the table afterwards.
+    void release() {
+        if (blockCache != null) {
+            blockCache.invalidate(id);
+        }
+        if (handleCache != null) {
+            handleCache.evict(filePath);
+        }
+        MappedTableFile mapped = mappedFile;
+        mappedFile = null;
+        if (mapped != null) {
+            mapped.close();
+        }
+    }
+
+    private MappedTableFile mappedFile() throws IOException {
+        MappedTableFile mapped = mappedFile;
+        if (mapped == null) {
+            synchronized (this) {
+                mapped = mappedFile;
+                if (mapped == null) {
+                    mapped = MappedTableFile.map(filePath);
+                    mappedFile = mapped;
+                }
+            }
+        }
+        return mapped;
+    }
+
+    // Fills in whichever of the index and the properties was not passed in.
+    private synchronized void loadFooter() throws IOException {
+        if (index != null && properties != null) {
+            return;
+        }
+        try (TableHandleCache.Handle handle = openHandle()) {
+            FileChannel channel = handle.channel();
+            long size = channel.size();
+            if (size < SSTableWriter.FOOTER_SIZE) {
+                throw new IOException("Not an SSTable (file too short): " + filePath);
+            }
+            ByteBuffer footer = readFully(channel, size - SSTableWriter.FOOTER_SIZE, SSTableWriter.FOOTER_SIZE);
+            long indexOffset = footer.getLong();
+            int indexLength = footer.getInt();
+            long propertiesOffset = footer.getLong();
+            int propertiesLength = footer.getInt();
+            int version = footer.getInt();
+            long magic = footer.getLong();
+            if (magic != SSTableWriter.MAGIC) {
+                throw new IOException("Not an SSTable (bad magic): " + filePath);
+            }
+            if (version != SSTableWriter.FORMAT_VERSION) {
+                throw new IOException("Unsupported SSTable format version " + version + ": " + filePath);
+            }
+            if (index == null) {
+                index = Collections.unmodifiableList(IndexEntry.decode(readFully(channel, indexOffset, indexLength)));
+            }
+            if (properties == null) {
+                properties = TableProperties.decode(readFully(channel, propertiesOffset, propertiesLength));
+            }
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of SSTable at offset " + (position + buffer.position()));
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * What is known about a table when it is opened, and how it is read. Everything is optional.
+     */
+    public static class Options {
+        private KeyFilter filter;
+        private KeyFilter prefixFilter;
+        private List<IndexEntry> index;
+        private TableProperties properties;
+        private BlockCache blockCache;
+        private TableHandleCache handleCache;
+        private boolean memoryMapped;
+
+        /**
+         * @param filter Filter of the table's keys, or null to probe every lookup.
+         */
+        public Options setFilter(KeyFilter filter) {
+            this.filter = filter;
+            return this;
+        }
+
+        /**
+         * @param prefixFilter Filter of the prefixes of the table's keys, see {@link PrefixExtractor}, or null if
+         *                     it has none.
+         */
+        public Options setPrefixFilter(KeyFilter prefixFilter) {
+            this.prefixFilter = prefixFilter;
+            return this;
+        }
+
+        /**
+         * @param index Sparse index returned by {@link SSTableWriter#finish()}, or null to load the full block
+         *              index on first use.
+         */
+        public Options setIndex(List<IndexEntry> index) {
+            this.index = index;
+            return this;
+        }
+
+        /**
+         * @param properties Properties returned by {@link SSTableWriter#getProperties()}, or null to read them
+         *                   from the file on first use.
+         */
+        public Options setProperties(TableProperties properties) {
+            this.properties = properties;
+            return this;
+        }
+
+        /**
+         * @param blockCache Cache for blocks read by lookups and scans, or null to always read from disk.
+         */
+        public Options setBlockCache(BlockCache blockCache) {
+            this.blockCache = blockCache;
+            return this;
+        }
+
+        /**
+         * @param handleCache Pool of open files to read through, or null to open the file for every read.
+         */
+        public Options setHandleCache(TableHandleCache handleCache) {
+            this.handleCache = handleCache;
+            return this;
+        }
+
+        /**
+         * @param memoryMapped Whether to map the file into memory and read blocks in place instead of through
+         *                     file reads. Uncompressed blocks are then never copied and not added to the block cache.
+         */
+        public Options setMemoryMapped(boolean memoryMapped) {
+            this.memoryMapped = memoryMapped;
+            return this;
+        }
+    }
+}
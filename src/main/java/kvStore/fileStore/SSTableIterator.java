@@ -0,0 +1,93 @@
+package kvStore.fileStore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates the entries of one SSTable in key order, reading one index range of blocks at a time.
+ * Holds a handle on the file until closed.
+ */
+public class SSTableIterator implements Iterator<Entry>, Closeable {
+    private final SSTable table;
+    private final boolean fillCache;
+    private final List<IndexEntry> index;
+    private TableHandleCache.Handle handle;
+    private int indexPosition;
+    private List<Block> blocks;
+    private int blockPosition;
+    private Block.Cursor cursor;
+
+    SSTableIterator(SSTable table, String startKey, boolean fillCache) throws IOException {
+        this.table = table;
+        this.fillCache = fillCache;
+        this.index = table.index();
+        this.indexPosition = startKey == null ? 0 : IndexEntry.search(index, startKey);
+        if (indexPosition < index.size()) {
+            blocks = readBlocks(index.get(indexPosition));
+            cursor = blocks.get(0).cursor();
+            if (startKey != null) {
+                byte[] target = startKey.getBytes(StandardCharsets.UTF_8);
+                cursor.seek(target);
+                // Skip the blocks of the run that end before the start key.
+                while (!cursor.hasNext() && blockPosition + 1 < blocks.size()) {
+                    cursor = blocks.get(++blockPosition).cursor();
+                    cursor.seek(target);
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (cursor != null && !cursor.hasNext()) {
+            if (++blockPosition < blocks.size()) {
+                cursor = blocks.get(blockPosition).cursor();
+                continue;
+            }
+            if (++indexPosition >= index.size()) {
+                cursor = null;
+                break;
+            }
+            try {
+                blocks = readBlocks(index.get(indexPosition));
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading SSTable block", e);
+            }
+            blockPosition = 0;
+            cursor = blocks.get(0).cursor();
+        }
+        return cursor != null;
+    }
+
+    @Override
+    public Entry next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return cursor.next();
+    }
+
+    private List<Block> readBlocks(IndexEntry indexEntry) throws IOException {
+        if (table.isMemoryMapped()) {
+            return table.readBlocks(null, indexEntry, fillCache);
+        }
+        if (handle == null) {
+            handle = table.openHandle();
+        }
+        return table.readBlocks(handle.channel(), indexEntry, fillCache);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (handle != null) {
+            // Closing twice must not release the pooled handle twice.
+            TableHandleCache.Handle closed = handle;
+            handle = null;
+            closed.close();
+        }
+    }
+}
@@ -1,20 +1,91 @@
 package kvStore.fileStore;
 
-import kvStore.bloomFilter.BloomFilter;
+import kvStore.bloomFilter.FilterPolicy;
+import kvStore.bloomFilter.KeyFilter;
+import kvStore.fileStore.compression.CompressionCodec;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class SSTableManager {
     private final String directory;
-    private final List<File> sstables = new ArrayList<>();
-    private final Map<String, BloomFilter<String>> bloomFilterForFile = new HashMap<>();
+    private final int indexInterval;
+    private final Options options;
+    private final BlockCache blockCache;
+    private final TableHandleCache handleCache;
+    // Level 0 holds flushed tables from oldest to newest; deeper levels hold tables with disjoint
+    // key ranges, sorted by key. Readers hold the read lock while they probe the tables,
+    // so tables are only added or removed under the write lock. Scans only hold it while they pin
+    // the tables they read, whose files are deleted once the last scan reading them is closed.
+    private final List<List<SSTable>> levels = new ArrayList<>(List.of(new ArrayList<>()));
+    private final CompactionStrategy compactionStrategy;
+    private final ReadWriteLock tablesLock = new ReentrantReadWriteLock();
+    // Flushes are serialized by the manager's monitor, so level 0 gets its tables in the order of their
+    // file numbers. Compactions are serialized by this lock instead, so a flush never waits for a compaction
+    // the rate limiter slows down. Flushes only add tables to level 0, and only compactions remove tables or
+    // add levels, so a compaction reads the deeper levels without the table lock, but not level 0.
+    private final Object compactionLock = new Object();
+    private final List<TableChangeListener> listeners = new CopyOnWriteArrayList<>();
+    // Tables still live when the manager was closed, but pinned by scans: the last scan releases them and
+    // keeps their files, unlike those of replaced tables.
+    private final Set<SSTable> closedTables = ConcurrentHashMap.newKeySet();
+    // Numbers the table files in the order they are written; sub-compactions name their outputs concurrently.
+    private final AtomicLong nextFileNumber = new AtomicLong(1);
+    private Manifest manifest;
+    private final ExecutorService compactionPool;  // null when compactions run on the calling thread
+    private volatile long compactionBytesWritten;
     private static final String TOMBSTONE_MARKER = "__TOMBSTONE__";
+    private static final String SSTABLE_SUFFIX = ".sst";
+    private static final String LEGACY_SSTABLE_SUFFIX = ".txt";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final String BLOOM_FILTER_SUFFIX = ".bf";
+    private static final String PREFIX_FILTER_SUFFIX = ".pf";
+    private static final int INDEX_FILE_VERSION = 3;
+    public static final int DEFAULT_INDEX_INTERVAL = 16;
+    public static final long DEFAULT_BLOCK_CACHE_CAPACITY = 32L * 1024 * 1024;
+    public static final int DEFAULT_MAX_OPEN_FILES = 512;
+    public static final long DEFAULT_TARGET_FILE_SIZE = 64L * 1024 * 1024;
+    public static final FilterPolicy DEFAULT_FILTER_POLICY = FilterPolicy.bloom(0.01);
+    public static final int DEFAULT_METADATA_LOAD_THREADS = Runtime.getRuntime().availableProcessors();
+    // Level of tables written by MemTable flushes.
+    public static final int FLUSH_LEVEL = 0;
+    // First level written by compaction.
+    public static final int COMPACTION_OUTPUT_LEVEL = 1;
 
     // Constructor now accepts a directory path
     public SSTableManager(String directory) {
+        this(directory, new Options());
+    }
+
+    public SSTableManager(String directory, int indexInterval) {
+        this(directory, new Options().setIndexInterval(indexInterval));
+    }
+
+    public SSTableManager(String directory, Options options) {
         this.directory = directory;
+        this.indexInterval = options.indexInterval;
+        this.options = options;
+        this.blockCache = options.blockCacheCapacity > 0 ? new BlockCache(options.blockCacheCapacity) : null;
+        this.handleCache = options.maxOpenFiles > 0 ? new TableHandleCache(options.maxOpenFiles) : null;
+        this.compactionStrategy = options.compactionStrategy != null ? options.compactionStrategy : new LeveledCompactionStrategy();
+        this.compactionPool = options.maxSubcompactions <= 1 ? null : options.compactionExecutor != null
+                ? options.compactionExecutor : Executors.newFixedThreadPool(options.maxSubcompactions, runnable -> {
+                    Thread thread = new Thread(runnable, "sstable-compaction");
+                    thread.setDaemon(true);
+                    return thread;
+                });
         loadExistingSSTables();
+        reportCompactionDebt();
     }
 
     // Loads existing SSTable files from the specified directory
@@ -24,40 +95,335 @@ public class SSTableManager {
             //TODO - handle output
             dir.mkdirs();
         }
-        File[] files = dir.listFiles((d, name) -> name.startsWith("sstable_") && name.endsWith(".txt"));
+        try {
+            if (Manifest.exists(directory)) {
+                loadFromManifest(dir);
+            } else {
+                loadFromDirectory(dir);
+            }
+            manifest = Manifest.create(directory, nextFileNumber.get(), tableEntries());
+        } catch (IOException e) {
+            throw new RuntimeException("Error loading SSTables from " + directory, e);
+        }
+    }
+
+    // The manifest lists the live tables with their levels and properties, so none of them has to be found
+    // by listing the directory or opened to learn where it belongs.
+    private void loadFromManifest(File dir) throws IOException {
+        Manifest.State state = Manifest.replay(directory);
+        nextFileNumber.set(state.nextFileNumber());
+        Set<Long> liveFileNumbers = new HashSet<>(state.tables().keySet());
+        // Text tables predate the manifest, and hold older data than any table in it.
+        for (File file : upgradeLegacySSTables(dir, liveFileNumbers)) {
+            level(FLUSH_LEVEL).add(loadTable(file, null));
+            liveFileNumbers.add(fileNumber(file));
+        }
+        // Level 0 keeps the order of the file numbers, which is the order the tables were flushed in.
+        for (Manifest.TableEntry table : state.tables().values()) {
+            File file = new File(directory, baseName(table.fileNumber()) + SSTABLE_SUFFIX);
+            level(table.level()).add(loadTable(file, table.properties()));
+        }
+        for (int level = 1; level < levels.size(); level++) {
+            sortLevel(level);
+        }
+        deleteObsoleteFiles(dir, liveFileNumbers);
+        if (!options.lazyMetadata) {
+            loadMetadata(newestFirst());
+        }
+    }
+
+    // Loads the Bloom filters and indexes of the tables on a pool of options.metadataLoadThreads threads.
+    private void loadMetadata(List<SSTable> tables) {
+        long startTime = System.nanoTime();
+        int threads = Math.min(options.metadataLoadThreads, tables.size());
+        if (threads <= 1) {
+            for (SSTable ssTable : tables) {
+                ssTable.loadMetadata();
+            }
+        } else {
+            ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "sstable-metadata-loader");
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                List<Future<?>> jobs = new ArrayList<>();
+                for (SSTable ssTable : tables) {
+                    jobs.add(pool.submit(ssTable::loadMetadata));
+                }
+                for (Future<?> job : jobs) {
+                    job.get();
+                }
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Error loading SSTable metadata", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while loading SSTable metadata", e);
+            } finally {
+                pool.shutdown();
+            }
+        }
+        if (!tables.isEmpty()) {
+            System.out.printf("Loaded the metadata of %d SSTables on %d threads in %.0f ms%n", tables.size(),
+                    Math.max(threads, 1), (System.nanoTime() - startTime) / 1e6);
+        }
+    }
+
+    // Directories written before the manifest existed: the tables are found by listing the directory, ordered
+    // by the number in their names, and put on the level recorded in their index files.
+    private void loadFromDirectory(File dir) {
+        upgradeLegacySSTables(dir, Set.of());
+        File[] files = dir.listFiles((d, name) -> name.startsWith("sstable_") && name.endsWith(SSTABLE_SUFFIX));
         if (files != null) {
-            // Sort files by timestamp (extracted from filename) in ascending order.
-            Arrays.sort(files, Comparator.comparingLong(this::extractTimestamp));
-            // Now add them so that the list order is from oldest to newest.
-            sstables.addAll(Arrays.asList(files));
-            // For each SSTable file, attempt to load the corresponding Bloom filter metadata.
-            for (File file : sstables) {
-                BloomFilter<String> bloom = loadBloomFilterForFile(file);
-                if (bloom != null) {
-                    bloomFilterForFile.put(file.getName(), bloom);
+            Arrays.sort(files, Comparator.comparingLong(SSTableManager::fileNumber));
+            for (File file : files) {
+                TableMetadata metadata = loadMetadataForFile(file);
+                SSTable ssTable = new SSTable(file.getPath(), tableOptions()
+                        .setFilter(loadBloomFilterForFile(file))
+                        .setPrefixFilter(loadPrefixFilterForFile(file))
+                        .setIndex(metadata == null ? null : metadata.index())
+                        .setProperties(metadata == null ? null : metadata.properties()));
+                level(metadata == null ? FLUSH_LEVEL : metadata.level()).add(ssTable);
+                nextFileNumber.accumulateAndGet(fileNumber(file) + 1, Math::max);
+            }
+        }
+        for (int level = 1; level < levels.size(); level++) {
+            sortLevel(level);
+            demoteOverlappingTables(level);
+        }
+    }
+
+    // Opens the table without reading its files: the Bloom filter and sparse index are loaded on first use,
+    // or up front by loadMetadata. Without properties from the manifest, they are read from the footer.
+    private SSTable loadTable(File file, TableProperties properties) {
+        return SSTable.openLazily(file.getPath(), () -> {
+            TableMetadata metadata = loadMetadataForFile(file);
+            return new SSTable.Metadata(loadBloomFilterForFile(file), loadPrefixFilterForFile(file),
+                    metadata == null ? null : metadata.index());
+        }, tableOptions().setProperties(properties));
+    }
+
+    // Every table of the manager reads through its caches.
+    private SSTable.Options tableOptions() {
+        return new SSTable.Options()
+                .setBlockCache(blockCache)
+                .setHandleCache(handleCache)
+                .setMemoryMapped(options.memoryMapped);
+    }
+
+    // A crash after a change was recorded in the manifest but before the files it replaced were deleted, or
+    // while writing tables it did not get to record, leaves files behind that no live table uses.
+    private void deleteObsoleteFiles(File dir, Set<Long> liveFileNumbers) {
+        File[] files = dir.listFiles((d, name) -> name.startsWith("sstable_") && (name.endsWith(SSTABLE_SUFFIX)
+                || name.endsWith(INDEX_SUFFIX) || name.endsWith(BLOOM_FILTER_SUFFIX)
+                || name.endsWith(PREFIX_FILTER_SUFFIX)));
+        if (files == null) {
+            return;
+        }
+        int deleted = 0;
+        for (File file : files) {
+            if (!liveFileNumbers.contains(fileNumber(file)) && file.delete()) {
+                deleted++;
+            }
+        }
+        if (deleted > 0) {
+            System.out.println("Deleted " + deleted + " obsolete SSTable files");
+        }
+    }
+
+    private List<Manifest.TableEntry> tableEntries() {
+        List<Manifest.TableEntry> tables = new ArrayList<>();
+        for (int level = 0; level < levels.size(); level++) {
+            for (SSTable ssTable : levels.get(level)) {
+                tables.add(new Manifest.TableEntry(fileNumber(ssTable.getFile()), level, properties(ssTable)));
+            }
+        }
+        return tables;
+    }
+
+    // Records a change to the tables in the manifest; it must not take effect before this returns.
+    private void logEdit(Collection<SSTable> removed, Collection<SSTable> added, int level) {
+        List<Long> removedFileNumbers = new ArrayList<>();
+        for (SSTable ssTable : removed) {
+            removedFileNumbers.add(fileNumber(ssTable.getFile()));
+        }
+        List<Manifest.TableEntry> addedTables = new ArrayList<>();
+        for (SSTable ssTable : added) {
+            addedTables.add(new Manifest.TableEntry(fileNumber(ssTable.getFile()), level, properties(ssTable)));
+        }
+        try {
+            manifest.append(nextFileNumber.get(), removedFileNumbers, addedTables);
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing manifest", e);
+        }
+    }
+
+    // A crash between writing a compaction's outputs and deleting its inputs leaves both behind, overlapping
+    // each other within a level. Level 0 allows overlaps and reads its tables newest first, so move them there.
+    private void demoteOverlappingTables(int level) {
+        List<SSTable> tables = levels.get(level);
+        List<SSTable> overlapping = new ArrayList<>();
+        for (int i = 1; i < tables.size(); i++) {
+            if (properties(tables.get(i)).smallestKey.compareTo(properties(tables.get(i - 1)).largestKey) <= 0) {
+                overlapping.add(tables.get(i - 1));
+                overlapping.add(tables.get(i));
+            }
+        }
+        if (overlapping.isEmpty()) {
+            return;
+        }
+        tables.removeAll(overlapping);
+        List<SSTable> level0 = levels.get(FLUSH_LEVEL);
+        for (SSTable ssTable : new LinkedHashSet<>(overlapping)) {
+            level0.add(ssTable);
+        }
+        level0.sort(Comparator.comparingLong(ssTable -> fileNumber(ssTable.getFile())));
+    }
+
+    private List<SSTable> level(int level) {
+        while (levels.size() <= level) {
+            levels.add(new ArrayList<>());
+        }
+        return levels.get(level);
+    }
+
+    private void sortLevel(int level) {
+        levels.get(level).sort(Comparator.comparing(ssTable -> properties(ssTable).smallestKey));
+    }
+
+    private static TableProperties properties(SSTable ssTable) {
+        try {
+            return ssTable.properties();
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading SSTable properties", e);
+        }
+    }
+
+    // Rewrites SSTables left behind in the old line-based "key,value" text format into the block format,
+    // and returns the new table files, oldest first. Their Java-serialized Bloom filters cannot be read any
+    // more, so the filters are built again from the keys, in the binary format.
+    private List<File> upgradeLegacySSTables(File dir, Set<Long> liveFileNumbers) {
+        File[] legacyFiles = dir.listFiles((d, name) -> name.startsWith("sstable_") && name.endsWith(LEGACY_SSTABLE_SUFFIX));
+        List<File> upgraded = new ArrayList<>();
+        if (legacyFiles == null) {
+            return upgraded;
+        }
+        Arrays.sort(legacyFiles, Comparator.comparingLong(SSTableManager::fileNumber));
+        for (File legacyFile : legacyFiles) {
+            TreeMap<String, Entry> entries = new TreeMap<>();
+            try (BufferedReader reader = new BufferedReader(new FileReader(legacyFile))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] parts = line.split(",", 2);
+                    if (parts.length == 2) {
+                        entries.put(parts[0], parts[1].equals(TOMBSTONE_MARKER)
+                                ? Entry.tombstone(parts[0]) : Entry.value(parts[0], parts[1]));
+                    }
+                }
+                String baseName = baseName(legacyFile);
+                //TODO - handle output
+                new File(dir, baseName + BLOOM_FILTER_SUFFIX).delete();
+                if (liveFileNumbers.contains(fileNumber(legacyFile))) {
+                    // A live table took its number.
+                    baseName = nextBaseName();
                 }
+                TableMetadata metadata = writeTableFile(new File(dir, baseName + SSTABLE_SUFFIX), entries.values(), FLUSH_LEVEL);
+                writeMetadataFile(new File(dir, baseName + INDEX_SUFFIX), metadata);
+                KeyHashes keyHashes = new KeyHashes(options.prefixExtractor);
+                for (String key : entries.keySet()) {
+                    keyHashes.add(key);
+                }
+                writeKeyFilter(baseName, keyHashes, FLUSH_LEVEL);
+                writePrefixFilter(baseName, keyHashes);
+                upgraded.add(new File(dir, baseName + SSTABLE_SUFFIX));
+                nextFileNumber.accumulateAndGet(fileNumber(legacyFile) + 1, Math::max);
+            } catch (IOException e) {
+                throw new RuntimeException("Error upgrading legacy SSTable " + legacyFile.getName(), e);
             }
+            //TODO - handle output
+            legacyFile.delete();
         }
+        return upgraded;
     }
 
     // Helper method to load a Bloom filter from a metadata file.
-    private BloomFilter<String> loadBloomFilterForFile(File sstableFile) {
-        String metadataFilename = sstableFile.getName().replace(".txt", ".bf");
-        File metadataFile = new File(directory, metadataFilename);
+    private KeyFilter loadBloomFilterForFile(File sstableFile) {
+        File metadataFile = new File(directory, baseName(sstableFile) + BLOOM_FILTER_SUFFIX);
         if (!metadataFile.exists()) {
             return null;
         }
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(metadataFile))) {
-            return (BloomFilter<String>) ois.readObject();
-        } catch (IOException | ClassNotFoundException e) {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(metadataFile))) {
+            return KeyFilter.readFrom(in);
+        } catch (IOException e) {
+            // The table is read without a filter until compaction rewrites it.
             System.err.println("Failed to load Bloom filter for " + sstableFile.getName() + ": " + e.getMessage());
             return null;
         }
     }
 
-    // Helper method to extract timestamp from the filename
-    private long extractTimestamp(File file) {
-        // Assuming filename format: "sstable_<timestamp>.txt"
+    // The prefix filter is stored after the name of the extractor that built it, and only used if the store
+    // is opened with the same extractor: prefixes of other extractors would be missing from it.
+    private KeyFilter loadPrefixFilterForFile(File sstableFile) {
+        File prefixFilterFile = new File(directory, baseName(sstableFile) + PREFIX_FILTER_SUFFIX);
+        if (options.prefixExtractor == null || !prefixFilterFile.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(prefixFilterFile)))) {
+            return in.readUTF().equals(options.prefixExtractor.name()) ? KeyFilter.readFrom(in) : null;
+        } catch (IOException e) {
+            System.err.println("Failed to load prefix filter for " + sstableFile.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Sparse index, properties and level of a table, kept next to it in the ".idx" file so they are known
+    // at startup without opening the table. The level is the one the table was written to; the manifest
+    // records where it is now.
+    private record TableMetadata(List<IndexEntry> index, TableProperties properties, int level) {
+    }
+
+    // Helper method to load the sparse index and properties from a metadata file.
+    // Without it the table falls back to the full block index and properties stored in its footer.
+    private TableMetadata loadMetadataForFile(File sstableFile) {
+        File indexFile = new File(directory, baseName(sstableFile) + INDEX_SUFFIX);
+        if (!indexFile.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            int version = in.readInt();
+            if (version != INDEX_FILE_VERSION) {
+                throw new IOException("Unsupported index file version " + version);
+            }
+            in.readInt(); // interval the index was built with
+            int level = in.readInt();
+            byte[] properties = new byte[in.readInt()];
+            in.readFully(properties);
+            byte[] index = new byte[in.readInt()];
+            in.readFully(index);
+            return new TableMetadata(Collections.unmodifiableList(IndexEntry.decode(ByteBuffer.wrap(index))),
+                    TableProperties.decode(ByteBuffer.wrap(properties)), level);
+        } catch (IOException e) {
+            System.err.println("Failed to load index for " + sstableFile.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeMetadataFile(File indexFile, TableMetadata metadata) throws IOException {
+        byte[] properties = metadata.properties().encode();
+        byte[] index = IndexEntry.encode(metadata.index());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+            out.writeInt(INDEX_FILE_VERSION);
+            out.writeInt(indexInterval);
+            out.writeInt(metadata.level());
+            out.writeInt(properties.length);
+            out.write(properties);
+            out.writeInt(index.length);
+            out.write(index);
+        }
+    }
+
+    // "sstable_<number>.sst" -> number; tables written before the manifest existed are numbered by timestamp.
+    private static long fileNumber(File file) {
         String name = file.getName();
         try {
             int start = name.indexOf('_') + 1;
@@ -68,151 +434,1254 @@ public class SSTableManager {
         }
     }
 
+    // "sstable_<number>.sst" -> "sstable_<number>"
+    private static String baseName(File file) {
+        String name = file.getName();
+        return name.substring(0, name.lastIndexOf('.'));
+    }
+
+    private static String baseName(long fileNumber) {
+        return "sstable_" + fileNumber;
+    }
+
+    /**
+     * @return the cache shared by all tables, or null if block caching is disabled.
+     */
+    public BlockCache getBlockCache() {
+        return blockCache;
+    }
+
+    /**
+     * @return the pool of open table files, or null if files are opened per read.
+     */
+    public TableHandleCache getTableHandleCache() {
+        return handleCache;
+    }
+
+    /**
+     * @return the limiter shared by flushes and compactions, or null if writes are not limited.
+     */
+    public RateLimiter getRateLimiter() {
+        return options.rateLimiter;
+    }
+
+    /**
+     * Receives the keys whose value as read from the SSTables may have changed, once the change is visible to readers.
+     */
+    public interface TableChangeListener {
+        void onKeysChanged(Collection<String> keys);
+
+        /**
+         * Receives the ranges of a flushed table's range tombstones, whose keys may read differently too.
+         */
+        default void onRangesChanged(List<RangeTombstone> ranges) {
+        }
+    }
+
+    public void addTableChangeListener(TableChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    private void notifyKeysChanged(Collection<String> keys) {
+        for (TableChangeListener listener : listeners) {
+            listener.onKeysChanged(keys);
+        }
+    }
+
+    private void notifyRangesChanged(List<RangeTombstone> ranges) {
+        for (TableChangeListener listener : listeners) {
+            listener.onRangesChanged(ranges);
+        }
+    }
+
     public synchronized void writeToSSTable(Map<String, String> data) {
         writeToSSTable(data, Collections.emptyMap());
     }
 
     // New method that accepts tombstones as well.
     public synchronized void writeToSSTable(Map<String, String> data, Map<String, Boolean> tombstones) {
+        writeToSSTable(data, tombstones, List.of());
+    }
+
+    /**
+     * Writes a flushed MemTable as a new table on level 0.
+     * @param rangeTombstones Range deletes of the MemTable. They hide the data of older tables, not the data
+     *                        written with them, which the MemTable already dropped when the range was deleted.
+     */
+    public synchronized void writeToSSTable(Map<String, String> data, Map<String, Boolean> tombstones,
+                                            List<RangeTombstone> rangeTombstones) {
+        // Tombstones are stored inline with the live data, so the file is fully sorted.
+        TreeMap<String, Entry> entries = new TreeMap<>();
+        for (Map.Entry<String, String> entry : data.entrySet()) {
+            entries.put(entry.getKey(), Entry.value(entry.getKey(), entry.getValue()));
+        }
+        for (String key : tombstones.keySet()) {
+            entries.put(key, Entry.tombstone(key));
+        }
+        SSTable ssTable = writeEntries(entries.values(), rangeTombstones, FLUSH_LEVEL);
+        logEdit(List.of(), List.of(ssTable), FLUSH_LEVEL);
+        tablesLock.writeLock().lock();
         try {
-            String filename = "sstable_" + System.currentTimeMillis() + ".txt";
-            File file = new File(directory, filename);
+            levels.get(FLUSH_LEVEL).add(ssTable);
+        } finally {
+            tablesLock.writeLock().unlock();
+        }
+        reportCompactionDebt();
+        notifyKeysChanged(entries.keySet());
+        if (!rangeTombstones.isEmpty()) {
+            notifyRangesChanged(rangeTombstones);
+        }
+    }
+
+    // Writes sorted entries into a new SSTable with its Bloom filter and index metadata.
+    // The caller is responsible for registering the returned table.
+    private SSTable writeEntries(Collection<Entry> entries, Collection<RangeTombstone> rangeTombstones, int level) {
+        String baseName = nextBaseName();
+        KeyHashes keyHashes = new KeyHashes(options.prefixExtractor);
+        // Flushes hold up the writes that fill the MemTable, so they go before compaction at the rate limiter.
+        try (SSTableWriter writer = new SSTableWriter(new File(directory, baseName + SSTABLE_SUFFIX).toPath(),
+                writerOptions(level, RateLimiter.Priority.FOREGROUND))) {
+            for (Entry entry : entries) {
+                writer.add(entry);
+                keyHashes.add(entry.key);
+            }
+            for (RangeTombstone tombstone : rangeTombstones) {
+                writer.addRangeTombstone(tombstone);
+            }
+            return finishTable(baseName, writer, keyHashes, level);
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing SSTable", e);
+        }
+    }
 
-            // Create a Bloom filter sized for the number of keys in data.
-            BloomFilter<String> bloomFilter = new BloomFilter<>(data.size(), 0.01); // e.g., 1% false positive rate
-            String metadataFilename = filename.replace(".txt", ".bf");
-            File metadataFile = new File(directory, metadataFilename);
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
-                // Write live data
-                for (Map.Entry<String, String> entry : data.entrySet()) {
-                    writer.write(entry.getKey() + "," + entry.getValue());
-                    writer.newLine();
-                    bloomFilter.add(entry.getKey());
+    private String nextBaseName() {
+        return baseName(nextFileNumber.getAndIncrement());
+    }
+
+    // Finishes the table file and writes its index metadata and Bloom filter next to it.
+    private SSTable finishTable(String baseName, SSTableWriter writer, KeyHashes keyHashes, int level)
+            throws IOException {
+        File file = new File(directory, baseName + SSTABLE_SUFFIX);
+        List<IndexEntry> index = writer.finish();
+        TableMetadata metadata = new TableMetadata(index, writer.getProperties(), level);
+        writeMetadataFile(new File(directory, baseName + INDEX_SUFFIX), metadata);
+
+        KeyFilter filter = writeKeyFilter(baseName, keyHashes, level);
+        KeyFilter prefixFilter = writePrefixFilter(baseName, keyHashes);
+        return new SSTable(file.getPath(), tableOptions()
+                .setFilter(filter)
+                .setPrefixFilter(prefixFilter)
+                .setIndex(metadata.index())
+                .setProperties(metadata.properties()));
+    }
+
+    // Builds the Bloom filter of a table's keys and saves it to the metadata file; null if the level has none.
+    private KeyFilter writeKeyFilter(String baseName, KeyHashes keyHashes, int level) throws IOException {
+        FilterPolicy filterPolicy = keyFilterPolicy(level, keyHashes.size());
+        KeyFilter filter = filterPolicy == null ? null : keyHashes.toFilter(filterPolicy);
+        if (filter != null) {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(new File(directory, baseName + BLOOM_FILTER_SUFFIX)))) {
+                filter.writeTo(out);
+            }
+        }
+        return filter;
+    }
+
+    // Builds the prefix filter of a table's keys and saves it after the extractor's name; null without one.
+    private KeyFilter writePrefixFilter(String baseName, KeyHashes keyHashes) throws IOException {
+        KeyFilter prefixFilter = keyHashes.toPrefixFilter(options.filterPolicy);
+        if (prefixFilter != null) {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(new File(directory, baseName + PREFIX_FILTER_SUFFIX))))) {
+                out.writeUTF(options.prefixExtractor.name());
+                prefixFilter.writeTo(out);
+            }
+        }
+        return prefixFilter;
+    }
+
+    // Policy for the key filter of a table of keyCount keys written to the level, or null for none. With a
+    // filter memory budget the rate follows from the sizes of the runs when the table is written; tables
+    // keep it until compaction rewrites them.
+    private FilterPolicy keyFilterPolicy(int level, long keyCount) throws IOException {
+        if (options.filterMemoryBudget == 0 && !options.optimizeFiltersForHits) {
+            return options.filterPolicy;
+        }
+        tablesLock.readLock().lock();
+        try {
+            int lastLevel = Math.max(levels.size() - 1, level);
+            if (options.optimizeFiltersForHits && level > FLUSH_LEVEL && level == lastLevel) {
+                return null;
+            }
+            if (options.filterMemoryBudget == 0) {
+                return options.filterPolicy;
+            }
+            List<Long> runEntries = new ArrayList<>();
+            int run = -1;
+            for (SSTable ssTable : levels.get(FLUSH_LEVEL)) {
+                runEntries.add(ssTable.properties().entryCount);
+            }
+            if (level == FLUSH_LEVEL) {
+                run = runEntries.size();
+                runEntries.add(keyCount);
+            }
+            for (int deeperLevel = FLUSH_LEVEL + 1; deeperLevel <= lastLevel; deeperLevel++) {
+                long entries = 0;
+                if (deeperLevel < levels.size()) {
+                    for (SSTable ssTable : levels.get(deeperLevel)) {
+                        entries += ssTable.properties().entryCount;
+                    }
                 }
-                // Write tombstone entries
-                for (String key : tombstones.keySet()) {
-                    writer.write(key + "," + TOMBSTONE_MARKER);
-                    writer.newLine();
-                    bloomFilter.add(key);
+                if (deeperLevel == level) {
+                    run = runEntries.size();
+                    entries = Math.max(entries, keyCount);
                 }
+                // The filterless last level takes no share of the budget.
+                runEntries.add(options.optimizeFiltersForHits && deeperLevel == lastLevel ? 0 : entries);
             }
+            double rate = FilterBudget.falsePositiveRates(runEntries.stream().mapToLong(Long::longValue).toArray(),
+                    options.filterMemoryBudget * 8.0)[run];
+            return rate >= 1 ? null : options.filterPolicy.withFalsePositiveRate(rate);
+        } finally {
+            tablesLock.readLock().unlock();
+        }
+    }
 
-            // Serialize and save the Bloom filter to the metadata file.
-            try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(metadataFile))) {
-                oos.writeObject(bloomFilter);
+    // Writes the table file itself, compressed with the codec configured for its level.
+    private TableMetadata writeTableFile(File file, Iterable<Entry> entries, int level) throws IOException {
+        try (SSTableWriter writer = new SSTableWriter(file.toPath(),
+                writerOptions(level, RateLimiter.Priority.BACKGROUND))) {
+            for (Entry entry : entries) {
+                writer.add(entry);
             }
-
-            sstables.add(file);
-            bloomFilterForFile.put(file.getName(), bloomFilter);
-        } catch (IOException e) {
-            throw new RuntimeException("Error writing SSTable", e);
+            List<IndexEntry> index = writer.finish();
+            return new TableMetadata(index, writer.getProperties(), level);
         }
     }
 
     // Reads the value for a key from SSTables by scanning from newest to oldest
-    public synchronized String readFromSSTables(String key) {
-        for (int i = sstables.size() - 1; i >= 0; i--) {
-            File file = sstables.get(i);
-            BloomFilter<String> bloom = bloomFilterForFile.get(file.getName());  // Method to retrieve the Bloom filter for this file.
-            if (bloom != null && !bloom.contains(key)) {
-                // Key is definitely not in this file, skip it.
-                continue;
-            }
-            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    String[] parts = line.split(",", 2);
-                    if (parts.length == 2 && parts[0].equals(key)) {
-                        if (parts[1].equals(TOMBSTONE_MARKER)) {
-                            return null; // Key was deleted.
-                        }
-                        return parts[1];
-                    }
+    public String readFromSSTables(String key) {
+        tablesLock.readLock().lock();
+        try {
+            return readFromTables(key);
+        } finally {
+            tablesLock.readLock().unlock();
+        }
+    }
+
+    private String readFromTables(String key) {
+        try {
+            // Flushed tables may overlap each other, so they are all probed, from newest to oldest.
+            // A table's own entries are newer than its range tombstones, so they are checked first.
+            // The key is hashed once for the Bloom filters of all tables.
+            long hash = KeyFilter.hash(key);
+            List<SSTable> level0 = levels.get(FLUSH_LEVEL);
+            for (int i = level0.size() - 1; i >= 0; i--) {
+                Entry entry = probe(level0.get(i), key, hash);
+                if (entry != null) {
+                    // A tombstone means the key was deleted.
+                    return entry.isTombstone() ? null : entry.value;
+                }
+                if (level0.get(i).properties().isDeletedByRange(key)) {
+                    return null;
                 }
-            } catch (IOException e) {
-                throw new RuntimeException("Error reading SSTable", e);
             }
+            // Every level holds older data than the one above it, and only one of its tables can hold the key.
+            for (int level = 1; level < levels.size(); level++) {
+                SSTable ssTable = findTable(levels.get(level), key);
+                if (ssTable == null) {
+                    continue;
+                }
+                Entry entry = probe(ssTable, key, hash);
+                if (entry != null) {
+                    return entry.isTombstone() ? null : entry.value;
+                }
+                if (ssTable.properties().isDeletedByRange(key)) {
+                    return null;
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading SSTable", e);
         }
         return null;
     }
 
-    // Reads the range of values for provided keys from SSTables by scanning from newest to oldest
-    public synchronized Map<String, String> readKeyRange(String startKey, String endKey) {
+    private static Entry probe(SSTable ssTable, String key, long hash) throws IOException {
+        // Outside the file's key range, or definitely not in the file: skip it.
+        if (!ssTable.properties().mayContain(key) || !ssTable.mightContainHash(hash)) {
+            return null;
+        }
+        return ssTable.get(key);
+    }
+
+    // Binary search for the first table of a sorted level whose largest key is not below the key.
+    private static SSTable findTable(List<SSTable> tables, String key) throws IOException {
+        int low = 0;
+        int high = tables.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (tables.get(mid).properties().largestKey.compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low < tables.size() ? tables.get(low) : null;
+    }
+
+    // Reads the range of values for provided keys from SSTables by merging them from newest to oldest
+    public Map<String, String> readKeyRange(String startKey, String endKey) {
         Map<String, String> result = new TreeMap<>();
-        // Iterate from newest to oldest: keys found earlier override older values.
-        for (int i = sstables.size() - 1; i >= 0; i--) {
-            File file = sstables.get(i);
-            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    String[] parts = line.split(",", 2);
-                    if (parts.length == 2) {
-                        String key = parts[0];
-                        String value = parts[1];
-                        if (key.compareTo(startKey) >= 0 && key.compareTo(endKey) <= 0) {
-                            // If a tombstone is encountered, skip this key.
-                            if (value.equals(TOMBSTONE_MARKER)) continue;
-                            // Only add if not already present (newer values override older ones).
-                            result.putIfAbsent(key, value);
-                        }
-                    }
+        try (MergingIterator iterator = scan(startKey, endKey, false, null, List.of(), List.of())) {
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.key.compareTo(endKey) > 0) {
+                    break;
+                }
+                if (!entry.isTombstone()) {
+                    result.put(entry.key, entry.value);
                 }
-            } catch (IOException e) {
-                throw new RuntimeException("Error reading SSTable for range", e);
             }
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading SSTable for range", e);
         }
         return result;
     }
 
     /**
-     * Compacts all existing SSTables into a single SSTable.
-     * @param tombstones A set of keys that are marked as deleted.
+     * Opens a merged view of all tables from startKey on, in key order, or in descending key order when
+     * reverse is set: the scan then starts at the last key less than or equal to startKey and endKey is the
+     * smallest key to read. Tables with no key up to endKey are left out, but the iterator does not stop at
+     * endKey: the caller does. Only the newest entry of each key is returned, tombstones included, so the
+     * caller can skip deleted keys; keys deleted by range tombstones are left out.
+     * The iterator reads the tables live when it was opened. Compaction may replace them meanwhile, but
+     * their files are only deleted once the iterator is closed, so it must be closed when done.
+     * @param startKey The key to seek to, or null to start at the smallest key.
+     * @param endKey The last key the caller will read, or null to read to the end.
+     * @param prefix Prefix of every key the caller reads, or null if they may have any. Tables whose prefix
+     *               filter rules out every such key are not opened.
+     * @param newerSources Sorted sources newer than every table, newest first, e.g. the MemTable.
+     * @param newerRangeTombstones Range deletes of the newer sources, which hide the keys they cover in every table.
+     */
+    public MergingIterator scan(String startKey, String endKey, boolean reverse, String prefix,
+                                List<? extends Iterator<Entry>> newerSources, List<RangeTombstone> newerRangeTombstones) {
+        List<Iterator<Entry>> sources = new ArrayList<>(newerSources);
+        String filterPrefix = reverse ? filterPrefix(prefix, endKey, startKey) : filterPrefix(prefix, startKey, endKey);
+        long prefixHash = filterPrefix == null ? 0 : KeyFilter.hash(filterPrefix);
+        // Held only while the tables are pinned: a scan left open must not hold up flushes and compactions,
+        // nor the readers queued behind them.
+        List<SSTable> tables;
+        tablesLock.readLock().lock();
+        try {
+            tables = newestFirst();
+            for (SSTable ssTable : tables) {
+                ssTable.retain();
+            }
+        } finally {
+            tablesLock.readLock().unlock();
+        }
+        try {
+            // Range tombstones of the sources added so far, all newer than the next table.
+            List<RangeTombstone> newer = RangeTombstone.union(newerRangeTombstones);
+            for (SSTable ssTable : tables) {
+                TableProperties properties = ssTable.properties();
+                if (!(reverse ? properties.overlaps(endKey, startKey) : properties.overlaps(startKey, endKey))
+                        || RangeTombstone.coversRange(newer, properties.smallestKey, properties.largestKey)) {
+                    continue;
+                }
+                if (filterPrefix != null && !ssTable.mightContainPrefixHash(prefixHash)) {
+                    // None of its keys has the prefix, but its range tombstones still hide older keys that do.
+                    newer = withRangeTombstones(newer, properties);
+                    continue;
+                }
+                Iterator<Entry> source = reverse ? ssTable.reverseIterator(startKey) : ssTable.iterator(startKey);
+                sources.add(newer.isEmpty() ? source : new RangeTombstoneFilter(source, newer));
+                newer = withRangeTombstones(newer, properties);
+            }
+            return new MergingIterator(sources, reverse, () -> unrefTables(tables));
+        } catch (IOException | RuntimeException e) {
+            for (Iterator<Entry> source : sources) {
+                if (source instanceof Closeable opened) {
+                    try {
+                        opened.close();
+                    } catch (IOException suppressed) {
+                        e.addSuppressed(suppressed);
+                    }
+                }
+            }
+            unrefTables(tables);
+            if (e instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException("Error reading SSTable for range", e);
+        }
+    }
+
+    // Drops a reference to each table, deleting the files of those that were replaced and are no longer read.
+    private void unrefTables(Collection<SSTable> tables) {
+        for (SSTable ssTable : tables) {
+            if (ssTable.unref()) {
+                if (closedTables.remove(ssTable)) {
+                    ssTable.release();
+                } else {
+                    deleteTableFiles(ssTable);
+                }
+            }
+        }
+    }
+
+    // The extracted prefix shared by every key a scan reads, or null if there is none to probe the prefix
+    // filters with: all keys starting with the caller's prefix, or between two bounds starting with the
+    // same extracted prefix, have that prefix.
+    private String filterPrefix(String prefix, String lowerKey, String upperKey) {
+        PrefixExtractor extractor = options.prefixExtractor;
+        if (extractor == null) {
+            return null;
+        }
+        if (prefix != null) {
+            String extracted = extractor.extract(prefix);
+            if (extracted != null) {
+                return extracted;
+            }
+        }
+        if (lowerKey == null || upperKey == null) {
+            return null;
+        }
+        String extracted = extractor.extract(lowerKey);
+        return extracted != null && upperKey.startsWith(extracted) ? extracted : null;
+    }
+
+    private static List<RangeTombstone> withRangeTombstones(List<RangeTombstone> union, TableProperties properties) {
+        if (properties.rangeTombstones.isEmpty()) {
+            return union;
+        }
+        List<RangeTombstone> tombstones = new ArrayList<>(union);
+        tombstones.addAll(properties.rangeTombstones);
+        return RangeTombstone.union(tombstones);
+    }
+
+    // Same as newestFirst(), for callers that do not hold the table lock.
+    private List<SSTable> liveTablesNewestFirst() {
+        tablesLock.readLock().lock();
+        try {
+            return newestFirst();
+        } finally {
+            tablesLock.readLock().unlock();
+        }
+    }
+
+    // All tables in the order their data was written, newest first: level 0 from newest to oldest, then
+    // the deeper levels. Tables of the same deeper level do not overlap, so their relative order does not matter.
+    private List<SSTable> newestFirst() {
+        List<SSTable> tables = new ArrayList<>(levels.get(FLUSH_LEVEL));
+        Collections.reverse(tables);
+        for (int level = 1; level < levels.size(); level++) {
+            tables.addAll(levels.get(level));
+        }
+        return tables;
+    }
+
+    /**
+     * @return the number of tables on all levels.
+     */
+    public int getTableCount() {
+        tablesLock.readLock().lock();
+        try {
+            int count = 0;
+            for (List<SSTable> level : levels) {
+                count += level.size();
+            }
+            return count;
+        } finally {
+            tablesLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return a snapshot of the tables of each level, see {@link CompactionStrategy#pickCompaction(List)}.
+     */
+    public List<List<SSTable>> getLevels() {
+        return levelsSnapshot();
+    }
+
+    // Private, so the constructor can report the compaction debt through it.
+    private List<List<SSTable>> levelsSnapshot() {
+        tablesLock.readLock().lock();
+        try {
+            List<List<SSTable>> snapshot = new ArrayList<>();
+            for (List<SSTable> level : levels) {
+                snapshot.add(List.copyOf(level));
+            }
+            return Collections.unmodifiableList(snapshot);
+        } finally {
+            tablesLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the compaction strategy's estimate of the bytes compaction has fallen behind by.
+     * @see CompactionStrategy#estimatePendingCompactionBytes(List)
+     */
+    public long getPendingCompactionBytes() {
+        return compactionStrategy.estimatePendingCompactionBytes(levelsSnapshot());
+    }
+
+    // Lets an auto-tuned rate limiter follow the debt after every change of the levels.
+    private void reportCompactionDebt() {
+        if (options.rateLimiter != null) {
+            options.rateLimiter.setCompactionDebt(compactionStrategy.estimatePendingCompactionBytes(levelsSnapshot()));
+        }
+    }
+
+    /**
+     * @return the bytes written by all compactions since the manager was created; divided by the bytes
+     * flushed, this is the write amplification caused by compaction.
+     */
+    public long getCompactionBytesWritten() {
+        return compactionBytesWritten;
+    }
+
+    /**
+     * Compacts all existing SSTables into the deepest level, in as few SSTables as the target file size allows.
      * @return count of SsTables after compaction
      */
-    public synchronized int compact(Set<String> tombstones) {
-        // 1. Merge all key-value pairs from every SSTable into one map.
-        Map<String, String> mergedData = new TreeMap<>();
-        // Iterate from newest to oldest:
-        for (int i = sstables.size() - 1; i >= 0; i--) {
-            File file = sstables.get(i);
-            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    String[] parts = line.split(",", 2);
-                    if (parts.length == 2) {
-                        String key = parts[0];
-                        String value = parts[1];
-                        // Skip keys that are marked as deleted
-                        if (tombstones.contains(key)) continue;
-                        // Only add if this key has not been added yet.
-                        if (!mergedData.containsKey(key)) {
-                            // If the most recent record for the key is a tombstone, we mark delete it.
-                            if (value.equals(TOMBSTONE_MARKER)) {
-                                mergedData.remove(key);
-                            } else {
-                                mergedData.put(key, value);
-                            }
-                        }
+    public int compact() {
+        synchronized (compactionLock) {
+            List<SSTable> inputs = liveTablesNewestFirst();
+            if (!inputs.isEmpty()) {
+                compact(new Compaction(inputs, Math.max(COMPACTION_OUTPUT_LEVEL, levels.size() - 1)));
+            }
+            return getTableCount();
+        }
+    }
+
+    /**
+     * Runs the compactions the {@link CompactionStrategy} asks for until it is satisfied.
+     * @return the number of compactions run.
+     */
+    public int compactAsNeeded() {
+        synchronized (compactionLock) {
+            int count = 0;
+            dropCoveredTables();
+            try {
+                Compaction compaction;
+                while ((compaction = compactionStrategy.pickCompaction(getLevels())) != null) {
+                    compact(compaction);
+                    count++;
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Error picking compaction", e);
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Merges the input tables into new tables on the output level. The inputs are merged as sorted streams
+     * and written out as they are read, so memory use does not grow with the amount of data.
+     */
+    public void compact(Compaction compaction) {
+        synchronized (compactionLock) {
+            runCompaction(compaction);
+        }
+    }
+
+    // Called with the compaction lock held. Other compactions are excluded, and flushes only add newer tables
+    // to level 0, so the merge can run while readers keep using the old tables and flushes go on.
+    private void runCompaction(Compaction compaction) {
+        long startTime = System.nanoTime();
+        long inputBytes = 0;
+        int subcompactions = 1;
+        List<SSTable> inputs;
+        List<SSTable> outputs;
+        try {
+            boolean move;
+            tablesLock.readLock().lock();
+            try {
+                inputs = orderInputs(compaction);
+                move = canMove(inputs, compaction.outputLevel);
+            } finally {
+                tablesLock.readLock().unlock();
+            }
+            if (move) {
+                moveTables(inputs, compaction.outputLevel);
+                return;
+            }
+            boolean bottommost = true;
+            for (int level = compaction.outputLevel + 1; level < levels.size(); level++) {
+                bottommost &= Compaction.overlapping(levels.get(level), inputs).isEmpty();
+            }
+            for (SSTable ssTable : inputs) {
+                inputBytes += ssTable.fileSize();
+            }
+            List<String> boundaries = subcompactionBoundaries(inputs, inputBytes);
+            subcompactions = boundaries.size() + 1;
+            if (boundaries.isEmpty()) {
+                outputs = subcompact(inputs, null, null, bottommost, compaction.outputLevel);
+            } else {
+                outputs = runSubcompactions(inputs, boundaries, bottommost, compaction.outputLevel);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error during compaction", e);
+        }
+
+        // Swap the tables, then delete the old files unless an open scan still reads them.
+        logEdit(inputs, outputs, compaction.outputLevel);
+        tablesLock.writeLock().lock();
+        try {
+            for (List<SSTable> level : levels) {
+                level.removeAll(inputs);
+            }
+            level(compaction.outputLevel).addAll(outputs);
+            sortLevel(compaction.outputLevel);
+        } finally {
+            tablesLock.writeLock().unlock();
+        }
+        unrefTables(inputs);
+        reportCompactionDebt();
+
+        long outputBytes = 0;
+        for (SSTable ssTable : outputs) {
+            outputBytes += ssTable.fileSize();
+        }
+        compactionBytesWritten += outputBytes;
+        double seconds = Math.max(System.nanoTime() - startTime, 1) / 1e9;
+        System.out.printf("Compacted %d SSTables (%.1f MB) into %d (%.1f MB) on level %d%s in %.0f ms, %.1f MB/s%n",
+                inputs.size(), inputBytes / 1e6, outputs.size(), outputBytes / 1e6, compaction.outputLevel,
+                subcompactions > 1 ? " in " + subcompactions + " sub-compactions" : "",
+                seconds * 1000, inputBytes / 1e6 / seconds);
+    }
+
+    // Deletes the tables whose whole key range is covered by range tombstones of newer tables, without reading
+    // them. Their own range tombstones lie within that key range, so whatever they hide stays hidden.
+    private void dropCoveredTables() {
+        List<SSTable> covered = new ArrayList<>();
+        List<RangeTombstone> newer = List.of();
+        for (SSTable ssTable : liveTablesNewestFirst()) {
+            TableProperties properties = properties(ssTable);
+            if (properties.smallestKey != null
+                    && RangeTombstone.coversRange(newer, properties.smallestKey, properties.largestKey)) {
+                covered.add(ssTable);
+            } else {
+                newer = withRangeTombstones(newer, properties);
+            }
+        }
+        if (covered.isEmpty()) {
+            return;
+        }
+        logEdit(covered, List.of(), FLUSH_LEVEL);
+        tablesLock.writeLock().lock();
+        try {
+            for (List<SSTable> level : levels) {
+                level.removeAll(covered);
+            }
+        } finally {
+            tablesLock.writeLock().unlock();
+        }
+        unrefTables(covered);
+        reportCompactionDebt();
+        System.out.println("Dropped " + covered.size() + " SSTables deleted by range tombstones");
+    }
+
+    // Called with the read lock held.
+    // Returns the inputs newest first, after checking that the merged data can neither be shadowed by older data
+    // nor overlap the rest of the output level: every table of the output level and of the levels passed
+    // on the way down that overlaps the inputs has to take part, and so do flushed tables older than
+    // a flushed input that overlap it.
+    private List<SSTable> orderInputs(Compaction compaction) throws IOException {
+        List<SSTable> inputs = new ArrayList<>();
+        int shallowestLevel = -1;
+        for (SSTable ssTable : newestFirst()) {
+            if (compaction.inputs.contains(ssTable)) {
+                int level = levelOf(ssTable);
+                if (level > compaction.outputLevel) {
+                    throw new IllegalArgumentException("Compaction cannot move " + ssTable.getFile().getName()
+                            + " up from level " + level + " to level " + compaction.outputLevel);
+                }
+                shallowestLevel = shallowestLevel < 0 ? level : Math.min(shallowestLevel, level);
+                inputs.add(ssTable);
+            }
+        }
+        if (inputs.size() != compaction.inputs.size()) {
+            throw new IllegalArgumentException("Compaction inputs are not all live tables: " + compaction);
+        }
+        for (int level = shallowestLevel + 1; level <= compaction.outputLevel && level < levels.size(); level++) {
+            if (!compaction.inputs.containsAll(Compaction.overlapping(levels.get(level), inputs))) {
+                throw new IllegalArgumentException("Compaction must include every table on level " + level
+                        + " that overlaps its inputs: " + compaction);
+            }
+        }
+        if (shallowestLevel == FLUSH_LEVEL) {
+            List<SSTable> level0 = levels.get(FLUSH_LEVEL);
+            List<SSTable> flushedInputs = new ArrayList<>(level0);
+            flushedInputs.retainAll(compaction.inputs);
+            // Tables before the newest flushed input are older than it.
+            int newestInput = level0.indexOf(flushedInputs.get(flushedInputs.size() - 1));
+            List<SSTable> older = level0.subList(0, newestInput);
+            if (!compaction.inputs.containsAll(Compaction.overlapping(older, flushedInputs))) {
+                throw new IllegalArgumentException("Compaction must include every older flushed table "
+                        + "that overlaps its inputs: " + compaction);
+            }
+        }
+        return inputs;
+    }
+
+    private int levelOf(SSTable ssTable) {
+        for (int level = 0; level < levels.size(); level++) {
+            if (levels.get(level).contains(ssTable)) {
+                return level;
+            }
+        }
+        return -1;
+    }
+
+    // Tables that overlap neither each other nor anything on the output level need no merge: a single table,
+    // or any tables of one level below 0, whose key ranges are disjoint. The inputs were already checked
+    // against the output level. Called with the read lock held.
+    private boolean canMove(List<SSTable> inputs, int outputLevel) throws IOException {
+        int level = levelOf(inputs.get(0));
+        if (level >= outputLevel || (level == FLUSH_LEVEL && inputs.size() > 1)) {
+            return false;
+        }
+        for (SSTable ssTable : inputs) {
+            if (levelOf(ssTable) != level || ssTable.properties().smallestKey == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Moves tables to the output level by recording the new level in the manifest, without rewriting them.
+    private void moveTables(List<SSTable> inputs, int outputLevel) {
+        logEdit(inputs, inputs, outputLevel);
+        tablesLock.writeLock().lock();
+        try {
+            for (SSTable ssTable : inputs) {
+                levels.get(levelOf(ssTable)).remove(ssTable);
+                level(outputLevel).add(ssTable);
+            }
+            sortLevel(outputLevel);
+        } finally {
+            tablesLock.writeLock().unlock();
+        }
+        reportCompactionDebt();
+        System.out.println("Moved " + inputs.size() + " SSTables to level " + outputLevel);
+    }
+
+    // Splits the inputs' key range into ranges holding about the same number of bytes, one per sub-compaction,
+    // using the last keys of the inputs' index entries as candidate boundaries. A range gets at least a target
+    // file's worth of data, so splitting does not produce extra small tables.
+    private List<String> subcompactionBoundaries(List<SSTable> inputs, long inputBytes) throws IOException {
+        int count = (int) Math.min(options.maxSubcompactions, inputBytes / options.targetFileSize);
+        if (compactionPool == null || count <= 1) {
+            return List.of();
+        }
+        List<IndexEntry> entries = new ArrayList<>();
+        long indexedBytes = 0;
+        for (SSTable ssTable : inputs) {
+            for (IndexEntry entry : ssTable.index()) {
+                entries.add(entry);
+                indexedBytes += entry.length;
+            }
+        }
+        entries.sort(Comparator.comparing(entry -> entry.lastKey));
+        List<String> boundaries = new ArrayList<>();
+        long bytes = 0;
+        for (IndexEntry entry : entries) {
+            bytes += entry.length;
+            // Ranges run from after one boundary up to the next, inclusive.
+            if (bytes * count >= indexedBytes * (boundaries.size() + 1) && boundaries.size() < count - 1
+                    && (boundaries.isEmpty() || entry.lastKey.compareTo(boundaries.get(boundaries.size() - 1)) > 0)) {
+                boundaries.add(entry.lastKey);
+            }
+        }
+        return boundaries;
+    }
+
+    // Runs one sub-compaction per key range on the compaction pool. The outputs are only returned once all of
+    // them succeeded, so they are installed as one unit; if one fails, the outputs of all are deleted.
+    private List<SSTable> runSubcompactions(List<SSTable> inputs, List<String> boundaries, boolean dropTombstones,
+                                            int level) throws IOException {
+        List<Future<List<SSTable>>> jobs = new ArrayList<>();
+        for (int i = 0; i <= boundaries.size(); i++) {
+            String startKey = i == 0 ? null : RangeTombstone.successor(boundaries.get(i - 1));
+            String endKey = i == boundaries.size() ? null : boundaries.get(i);
+            jobs.add(compactionPool.submit(() -> subcompact(inputs, startKey, endKey, dropTombstones, level)));
+        }
+        List<SSTable> outputs = new ArrayList<>();
+        Throwable failure = null;
+        boolean interrupted = false;
+        for (Future<List<SSTable>> job : jobs) {
+            while (true) {
+                try {
+                    outputs.addAll(job.get());
+                    break;
+                } catch (ExecutionException e) {
+                    failure = e.getCause();
+                    break;
+                } catch (InterruptedException e) {
+                    // Keep waiting: the outputs of a job still running could not be cleaned up otherwise.
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            for (SSTable output : outputs) {
+                deleteTableFiles(output);
+            }
+            if (failure instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (failure instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException("Error during sub-compaction", failure);
+        }
+        return outputs;
+    }
+
+    // Merges the inputs' entries from startKey to endKey, both inclusive, into new tables; null bounds are open.
+    private List<SSTable> subcompact(List<SSTable> inputs, String startKey, String endKey, boolean dropTombstones,
+                                     int level) throws IOException {
+        // Newest first, so the merge keeps the newest record per key. Entries deleted by range tombstones of
+        // newer inputs are left out, and inputs they cover entirely are not read at all.
+        List<SSTableIterator> opened = new ArrayList<>();
+        List<Iterator<Entry>> sources = new ArrayList<>();
+        List<RangeTombstone> newer = List.of();
+        try {
+            for (SSTable ssTable : inputs) {
+                TableProperties properties = ssTable.properties();
+                if (properties.smallestKey != null
+                        && !RangeTombstone.coversRange(newer, properties.smallestKey, properties.largestKey)) {
+                    SSTableIterator source = ssTable.iterator(startKey, false);
+                    opened.add(source);
+                    sources.add(newer.isEmpty() ? source : new RangeTombstoneFilter(source, newer));
+                }
+                newer = withRangeTombstones(newer, properties);
+            }
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(opened);
+            throw e;
+        }
+        // On the bottommost level there is no older data left for range tombstones to hide either.
+        List<RangeTombstone> rangeTombstones = dropTombstones ? List.of() : RangeTombstone.clip(newer, startKey, endKey);
+        try (MergingIterator merged = new MergingIterator(sources)) {
+            return writeCompactionOutputs(merged, endKey, rangeTombstones, dropTombstones, level);
+        }
+    }
+
+    // Streams the merged entries up to endKey (inclusive, null for all) into new tables, starting the next table
+    // once one reaches the target file size. Tombstones are only dropped on the bottommost level, where there
+    // is no older data left for them to shadow. Range tombstones are split between the tables at their last
+    // keys, so the tables' key ranges stay disjoint, and get a table of their own if no entry is left.
+    private List<SSTable> writeCompactionOutputs(Iterator<Entry> entries, String endKey,
+                                                 List<RangeTombstone> rangeTombstones, boolean dropTombstones,
+                                                 int level) throws IOException {
+        List<RangeTombstone> pendingRangeTombstones = new ArrayList<>(rangeTombstones);
+        List<SSTable> outputs = new ArrayList<>();
+        SSTableWriter writer = null;
+        String baseName = null;
+        KeyHashes keyHashes = null;
+        try {
+            while (entries.hasNext()) {
+                Entry entry = entries.next();
+                if (endKey != null && entry.key.compareTo(endKey) > 0) {
+                    break;
+                }
+                if (dropTombstones && entry.isTombstone()) {
+                    continue;
+                }
+                if (writer == null) {
+                    baseName = nextBaseName();
+                    writer = newCompactionOutput(baseName, level);
+                    keyHashes = new KeyHashes(options.prefixExtractor);
+                }
+                writer.add(entry);
+                keyHashes.add(entry.key);
+                if (writer.getEstimatedFileSize() >= options.targetFileSize) {
+                    addRangeTombstones(writer, pendingRangeTombstones, entry.key);
+                    outputs.add(finishTable(baseName, writer, keyHashes, level));
+                    writer.close();
+                    writer = null;
+                }
+            }
+            if (writer == null && !pendingRangeTombstones.isEmpty()) {
+                baseName = nextBaseName();
+                writer = newCompactionOutput(baseName, level);
+                keyHashes = new KeyHashes(options.prefixExtractor);
+            }
+            if (writer != null) {
+                addRangeTombstones(writer, pendingRangeTombstones, null);
+                outputs.add(finishTable(baseName, writer, keyHashes, level));
+                writer.close();
+            }
+            return outputs;
+        } catch (IOException | RuntimeException e) {
+            // The inputs stay in place, so drop whatever was written of the outputs.
+            if (writer != null) {
+                writer.close();
+            }
+            for (SSTable output : outputs) {
+                deleteTableFiles(output);
+            }
+            throw e;
+        }
+    }
+
+    private SSTableWriter newCompactionOutput(String baseName, int level) throws IOException {
+        return new SSTableWriter(new File(directory, baseName + SSTABLE_SUFFIX).toPath(),
+                writerOptions(level, RateLimiter.Priority.BACKGROUND));
+    }
+
+    private SSTableWriter.Options writerOptions(int level, RateLimiter.Priority priority) {
+        return new SSTableWriter.Options()
+                .setIndexInterval(indexInterval)
+                .setCompressionCodec(options.getCompressionCodec(level))
+                .setRateLimiter(options.rateLimiter, priority);
+    }
+
+    // Moves the parts of the pending range tombstones up to lastKey, or all of them if null, into the writer;
+    // the parts after lastKey stay pending for the next table.
+    private static void addRangeTombstones(SSTableWriter writer, List<RangeTombstone> pending, String lastKey) {
+        List<RangeTombstone> rest = new ArrayList<>();
+        for (RangeTombstone tombstone : pending) {
+            if (lastKey == null || tombstone.endKey.compareTo(lastKey) <= 0) {
+                writer.addRangeTombstone(tombstone);
+            } else if (tombstone.startKey.compareTo(lastKey) > 0) {
+                rest.add(tombstone);
+            } else {
+                writer.addRangeTombstone(new RangeTombstone(tombstone.startKey, lastKey));
+                rest.add(new RangeTombstone(RangeTombstone.successor(lastKey), tombstone.endKey));
+            }
+        }
+        pending.clear();
+        pending.addAll(rest);
+    }
+
+    // Hashes of the keys written to a table, collected while it is written, so its Bloom filter is sized for the
+    // keys it ends up holding, tombstones included, rather than for an estimate made up front. With a prefix
+    // extractor the hashes of the distinct key prefixes are collected as well.
+    private static final class KeyHashes {
+        private final PrefixExtractor prefixExtractor;
+        private long[] hashes = new long[64];
+        private int size;
+        private long[] prefixHashes = new long[16];
+        private int prefixCount;
+        private String lastPrefix;
+
+        KeyHashes(PrefixExtractor prefixExtractor) {
+            this.prefixExtractor = prefixExtractor;
+        }
+
+        void add(String key) {
+            if (size == hashes.length) {
+                hashes = Arrays.copyOf(hashes, size * 2);
+            }
+            hashes[size++] = KeyFilter.hash(key);
+            String prefix = prefixExtractor == null ? null : prefixExtractor.extract(key);
+            // Keys arrive in order, so the keys sharing a prefix are next to each other.
+            if (prefix != null && !prefix.equals(lastPrefix)) {
+                if (prefixCount == prefixHashes.length) {
+                    prefixHashes = Arrays.copyOf(prefixHashes, prefixCount * 2);
+                }
+                prefixHashes[prefixCount++] = KeyFilter.hash(prefix);
+                lastPrefix = prefix;
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        KeyFilter toFilter(FilterPolicy policy) {
+            return policy.build(hashes, size);
+        }
+
+        // Null without a prefix extractor.
+        KeyFilter toPrefixFilter(FilterPolicy policy) {
+            return prefixExtractor == null ? null : policy.build(prefixHashes, prefixCount);
+        }
+    }
+
+    private void deleteTableFiles(SSTable ssTable) {
+        // Close the pooled handle and the mapping first, the file cannot be deleted while open on some platforms.
+        ssTable.release();
+        File file = ssTable.getFile();
+        //TODO - handle output
+        file.delete();
+        new File(directory, baseName(file) + BLOOM_FILTER_SUFFIX).delete();
+        new File(directory, baseName(file) + PREFIX_FILTER_SUFFIX).delete();
+        new File(directory, baseName(file) + INDEX_SUFFIX).delete();
+    }
+
+    /**
+     * Closes the manifest and every open or mapped table file, and stops the sub-compaction pool unless it
+     * was passed in with {@link Options#setCompactionExecutor}. The manager must not be used afterwards.
+     */
+    public synchronized void close() {
+        synchronized (compactionLock) {
+            closeTables();
+        }
+    }
+
+    // Called with the manager's monitor and the compaction lock held, so no flush or compaction is running.
+    // Tables pinned by open scans are released when the last of them is closed, not under its feet.
+    private void closeTables() {
+        if (compactionPool != null && compactionPool != options.compactionExecutor) {
+            compactionPool.shutdown();
+        }
+        tablesLock.writeLock().lock();
+        try {
+            for (List<SSTable> level : levels) {
+                for (SSTable ssTable : level) {
+                    // Marked first, so a scan that drops the last reference meanwhile keeps the files.
+                    closedTables.add(ssTable);
+                    if (ssTable.unref() && closedTables.remove(ssTable)) {
+                        ssTable.release();
                     }
                 }
+            }
+        } finally {
+            tablesLock.writeLock().unlock();
+        }
+        if (handleCache != null) {
+            handleCache.close();
+        }
+        try {
+            manifest.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Error closing manifest", e);
+        }
+    }
+
+    private static void closeQuietly(List<? extends Closeable> resources) {
+        for (Closeable resource : resources) {
+            try {
+                resource.close();
             } catch (IOException e) {
-                throw new RuntimeException("Error during compaction", e);
+                System.err.println("Failed to close SSTable file: " + e.getMessage());
             }
         }
+    }
 
-        // 2. Delete all old SSTable files.
-        for (File file : sstables) {
-            //TODO - handle output
-            file.delete();
+    /**
+     * Tuning knobs for an {@link SSTableManager}.
+     */
+    public static class Options {
+        private int indexInterval = DEFAULT_INDEX_INTERVAL;
+        private long blockCacheCapacity = DEFAULT_BLOCK_CACHE_CAPACITY;
+        private int maxOpenFiles = DEFAULT_MAX_OPEN_FILES;
+        private boolean memoryMapped;
+        private long targetFileSize = DEFAULT_TARGET_FILE_SIZE;
+        private CompactionStrategy compactionStrategy;
+        private int maxSubcompactions = 1;
+        private ExecutorService compactionExecutor;
+        private RateLimiter rateLimiter;
+        private int metadataLoadThreads = DEFAULT_METADATA_LOAD_THREADS;
+        private boolean lazyMetadata;
+        private FilterPolicy filterPolicy = DEFAULT_FILTER_POLICY;
+        private long filterMemoryBudget;
+        private boolean optimizeFiltersForHits;
+        private PrefixExtractor prefixExtractor;
+        private CompressionCodec compressionCodec = CompressionCodec.DEFLATE;
+        private final Map<Integer, CompressionCodec> compressionCodecPerLevel = new HashMap<>();
+
+        /**
+         * @param indexInterval Number of keys covered by one in-memory index entry of newly written tables.
+         *                      Larger values use less memory per table, at the cost of reading more bytes per lookup.
+         */
+        public Options setIndexInterval(int indexInterval) {
+            if (indexInterval < 1) {
+                throw new IllegalArgumentException("Index interval must be positive: " + indexInterval);
+            }
+            this.indexInterval = indexInterval;
+            return this;
         }
-        sstables.clear();
 
-        // 3. Write the merged data into a new SSTable.
-        writeToSSTable(mergedData);
+        /**
+         * @param blockCacheCapacity Size of the block cache shared by all tables in bytes; 0 disables caching.
+         */
+        public Options setBlockCacheCapacity(long blockCacheCapacity) {
+            if (blockCacheCapacity < 0) {
+                throw new IllegalArgumentException("Block cache capacity must not be negative: " + blockCacheCapacity);
+            }
+            this.blockCacheCapacity = blockCacheCapacity;
+            return this;
+        }
 
-        // 4. Reload the SSTables (should now contain only the new compacted file).
-        loadExistingSSTables();
+        /**
+         * @param maxOpenFiles Number of table files kept open between reads; 0 opens the file for every read.
+         */
+        public Options setMaxOpenFiles(int maxOpenFiles) {
+            if (maxOpenFiles < 0) {
+                throw new IllegalArgumentException("Maximum number of open files must not be negative: " + maxOpenFiles);
+            }
+            this.maxOpenFiles = maxOpenFiles;
+            return this;
+        }
+
+        /**
+         * @param memoryMapped Whether tables are memory-mapped and read in place. Suits read-heavy nodes whose
+         *                     working set fits in the OS page cache; combine it with uncompressed tables so
+         *                     blocks are never copied to the heap.
+         */
+        public Options setMemoryMapped(boolean memoryMapped) {
+            this.memoryMapped = memoryMapped;
+            return this;
+        }
 
-        return sstables.size();
+        /**
+         * @param targetFileSize Size in bytes at which compaction closes an output table and starts the next one.
+         *                       Tables end at a block boundary, so they may exceed it by up to one block.
+         */
+        public Options setTargetFileSize(long targetFileSize) {
+            if (targetFileSize < 1) {
+                throw new IllegalArgumentException("Target file size must be positive: " + targetFileSize);
+            }
+            this.targetFileSize = targetFileSize;
+            return this;
+        }
+
+        /**
+         * @param compactionStrategy Picks the tables {@link #compactAsNeeded} compacts; a new
+         *                           {@link LeveledCompactionStrategy} by default.
+         */
+        public Options setCompactionStrategy(CompactionStrategy compactionStrategy) {
+            this.compactionStrategy = compactionStrategy;
+            return this;
+        }
+
+        /**
+         * @param maxSubcompactions Number of disjoint key ranges a large compaction is split into, to be merged
+         *                          in parallel; each range holds at least one target file's worth of data.
+         *                          1 merges on the compacting thread only.
+         */
+        public Options setMaxSubcompactions(int maxSubcompactions) {
+            if (maxSubcompactions < 1) {
+                throw new IllegalArgumentException("Maximum number of sub-compactions must be positive: " + maxSubcompactions);
+            }
+            this.maxSubcompactions = maxSubcompactions;
+            return this;
+        }
+
+        /**
+         * @param compactionExecutor Pool that runs sub-compactions; by default the manager starts a pool of
+         *                           {@code maxSubcompactions} daemon threads.
+         */
+        public Options setCompactionExecutor(ExecutorService compactionExecutor) {
+            this.compactionExecutor = compactionExecutor;
+            return this;
+        }
+
+        /**
+         * @param rateLimiter Limiter shared with the WAL that table writes are requested from: flushes at
+         *                    foreground priority, compactions at background priority. Null, the default,
+         *                    writes at full speed.
+         */
+        public Options setRateLimiter(RateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+
+        /**
+         * @param metadataLoadThreads Number of threads that load the Bloom filters and indexes of the existing
+         *                            tables at startup; one core per thread by default.
+         */
+        public Options setMetadataLoadThreads(int metadataLoadThreads) {
+            if (metadataLoadThreads < 1) {
+                throw new IllegalArgumentException("Number of metadata load threads must be positive: " + metadataLoadThreads);
+            }
+            this.metadataLoadThreads = metadataLoadThreads;
+            return this;
+        }
+
+        /**
+         * @param lazyMetadata Whether to load the Bloom filter and index of an existing table the first time it
+         *                     is probed instead of at startup. Startup then only replays the manifest, at the
+         *                     cost of slower first reads. Tables in directories without a manifest are always
+         *                     loaded at startup, since their levels are only recorded next to them.
+         */
+        public Options setLazyMetadata(boolean lazyMetadata) {
+            this.lazyMetadata = lazyMetadata;
+            return this;
+        }
+
+        /**
+         * @param filterPolicy Policy building the key filters, and prefix filters, of new tables. Tables built
+         *                     by any policy can be read whatever the setting.
+         */
+        public Options setFilterPolicy(FilterPolicy filterPolicy) {
+            if (filterPolicy == null) {
+                throw new IllegalArgumentException("Filter policy must not be null");
+            }
+            this.filterPolicy = filterPolicy;
+            return this;
+        }
+
+        /**
+         * @param filterMemoryBudget Memory in bytes for the key filters of all tables, or 0 to give every table
+         *                           the false positive rate of the filter policy. With a budget, the rate of
+         *                           each new table is chosen so that lookups of absent keys read the fewest
+         *                           tables for that memory: lower for level 0 tables and small levels, higher
+         *                           for the large ones, which may get no filter at all. Policies with a fixed
+         *                           rate, like the xor filter, only follow the decision to leave a filter out.
+         *                           Prefix filters are not counted.
+         */
+        public Options setFilterMemoryBudget(long filterMemoryBudget) {
+            if (filterMemoryBudget < 0) {
+                throw new IllegalArgumentException("Filter memory budget must not be negative: " + filterMemoryBudget);
+            }
+            this.filterMemoryBudget = filterMemoryBudget;
+            return this;
+        }
+
+        /**
+         * @param optimizeFiltersForHits Whether tables written to the deepest level get no key filter. The
+         *                               deepest level holds most of the keys, and so most of the filter memory,
+         *                               but a lookup that reaches it and finds its key gains nothing from a
+         *                               filter. Suits workloads whose lookups mostly find their key.
+         */
+        public Options setOptimizeFiltersForHits(boolean optimizeFiltersForHits) {
+            this.optimizeFiltersForHits = optimizeFiltersForHits;
+            return this;
+        }
+
+        /**
+         * @param prefixExtractor Extractor of the key prefixes to build a prefix filter of for every new table,
+         *                        or null for none. Prefix scans, and range scans whose bounds share a prefix,
+         *                        skip the tables that hold no key with it.
+         */
+        public Options setPrefixExtractor(PrefixExtractor prefixExtractor) {
+            this.prefixExtractor = prefixExtractor;
+            return this;
+        }
+
+        /**
+         * @param codec Codec used to compress the data blocks of new tables on every level without an override.
+         */
+        public Options setCompressionCodec(CompressionCodec codec) {
+            CompressionCodec.register(codec);
+            this.compressionCodec = codec;
+            return this;
+        }
+
+        /**
+         * Overrides the codec for one level, e.g. a fast codec for short-lived flushed tables
+         * and a stronger one for compacted data.
+         * @see #FLUSH_LEVEL
+         * @see #COMPACTION_OUTPUT_LEVEL
+         */
+        public Options setCompressionCodec(int level, CompressionCodec codec) {
+            CompressionCodec.register(codec);
+            compressionCodecPerLevel.put(level, codec);
+            return this;
+        }
+
+        public CompressionCodec getCompressionCodec(int level) {
+            return compressionCodecPerLevel.getOrDefault(level, compressionCodec);
+        }
     }
 }
@@ -0,0 +1,105 @@
+package kvStore.fileStore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates the entries of one SSTable in descending key order. Records inside a block can only be
+ * decoded forwards, so each block is decoded as a whole and returned back to front.
+ * Holds a handle on the file until closed.
+ */
+public class SSTableReverseIterator implements Iterator<Entry>, Closeable {
+    private final SSTable table;
+    private final boolean fillCache;
+    private final List<IndexEntry> index;
+    private final String startKey;
+    private TableHandleCache.Handle handle;
+    private int indexPosition;
+    private List<Block> blocks;
+    private int blockPosition;
+    private final List<Entry> entries = new ArrayList<>();
+    private int entryPosition = -1;
+
+    SSTableReverseIterator(SSTable table, String startKey, boolean fillCache) throws IOException {
+        this.table = table;
+        this.fillCache = fillCache;
+        this.index = table.index();
+        this.startKey = startKey;
+        // The run that may hold the start key; past the end of the table, start at the last run.
+        this.indexPosition = startKey == null ? index.size() - 1
+                : Math.min(IndexEntry.search(index, startKey), index.size() - 1);
+        if (indexPosition >= 0) {
+            blocks = readBlocks(index.get(indexPosition));
+            blockPosition = blocks.size();
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (entryPosition < 0) {
+            if (blocks == null) {
+                return false;
+            }
+            if (--blockPosition < 0) {
+                if (--indexPosition < 0) {
+                    blocks = null;
+                    return false;
+                }
+                try {
+                    blocks = readBlocks(index.get(indexPosition));
+                } catch (IOException e) {
+                    throw new RuntimeException("Error reading SSTable block", e);
+                }
+                blockPosition = blocks.size() - 1;
+            }
+            decode(blocks.get(blockPosition));
+        }
+        return true;
+    }
+
+    @Override
+    public Entry next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return entries.get(entryPosition--);
+    }
+
+    // Decodes the block, leaving out the keys after the start key.
+    private void decode(Block block) {
+        entries.clear();
+        Block.Cursor cursor = block.cursor();
+        while (cursor.hasNext()) {
+            Entry entry = cursor.next();
+            if (startKey != null && entry.key.compareTo(startKey) > 0) {
+                break;
+            }
+            entries.add(entry);
+        }
+        entryPosition = entries.size() - 1;
+    }
+
+    private List<Block> readBlocks(IndexEntry indexEntry) throws IOException {
+        if (table.isMemoryMapped()) {
+            return table.readBlocks(null, indexEntry, fillCache);
+        }
+        if (handle == null) {
+            handle = table.openHandle();
+        }
+        return table.readBlocks(handle.channel(), indexEntry, fillCache);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (handle != null) {
+            // Closing twice must not release the pooled handle twice.
+            TableHandleCache.Handle closed = handle;
+            handle = null;
+            closed.close();
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package kvStore.fileStore;
+
+import kvStore.fileStore.compression.CompressionCodec;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Streams sorted entries into a new SSTable file.
+ *
+ * File layout:
+ * <pre>
+ * [data block 0] ... [data block n-1]   each compressed and checksummed, see {@link BlockFrame}
+ * [index block]  one {@link IndexEntry} per data block
+ * [properties]   key range, counts and range tombstones, see {@link TableProperties}
+ * [footer]       index offset (8) | index length (4) | properties offset (8) | properties length (4)
+ *                | format version (4) | magic (8)
+ * </pre>
+ * Besides the full block index stored in the file, the writer builds a sparse index that is
+ * kept in memory: one entry per run of consecutive blocks holding at least {@code indexInterval}
+ * keys. Since blocks are framed, a reader can walk all blocks of such a run with one read.
+ * The table is written to a temporary file and moved into place by {@link #finish()},
+ * so a crash never leaves a half-written table under its final name.
+ */
+public class SSTableWriter implements Closeable {
+    static final int BLOCK_SIZE = 4 * 1024;
+    static final int FOOTER_SIZE = 36;
+    static final int FORMAT_VERSION = 6;
+    static final long MAGIC = 0x6B7644425353544CL; // "kvDBSSTL"
+
+    private final Path path;
+    private final Path tempPath;
+    private final OutputStream out;
+    private final int indexInterval;
+    private final CompressionCodec codec;
+    private final RateLimiter rateLimiter;  // null when writes are not limited
+    private final RateLimiter.Priority priority;
+    private final BlockBuilder block;
+    private final List<IndexEntry> index = new ArrayList<>();
+    private final List<IndexEntry> sparseIndex = new ArrayList<>();
+    private long offset;
+    private long sparseRunOffset;
+    private int sparseRunKeys;
+    private int blockKeys;
+    private String firstKey;
+    private String lastKey;
+    private int entryCount;
+    private int tombstoneCount;
+    private final List<RangeTombstone> rangeTombstones = new ArrayList<>();
+    private TableProperties properties;
+    private boolean finished;
+
+    /**
+     * @param options Index, compression and rate limiting settings of the file.
+     */
+    public SSTableWriter(Path path, Options options) throws IOException {
+        this.path = path;
+        this.indexInterval = options.indexInterval;
+        this.codec = options.codec;
+        this.rateLimiter = options.rateLimiter;
+        this.priority = options.priority;
+        this.block = new BlockBuilder(options.restartInterval);
+        this.tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        this.out = new BufferedOutputStream(Files.newOutputStream(tempPath));
+    }
+
+    /**
+     * Appends an entry. Entries must arrive in strictly increasing key order.
+     */
+    public void add(Entry entry) throws IOException {
+        if (lastKey != null && entry.key.compareTo(lastKey) <= 0) {
+            throw new IllegalArgumentException("Keys must be added in strictly increasing order: '"
+                    + entry.key + "' after '" + lastKey + "'");
+        }
+        block.add(entry);
+        if (firstKey == null) {
+            firstKey = entry.key;
+        }
+        lastKey = entry.key;
+        entryCount++;
+        if (entry.isTombstone()) {
+            tombstoneCount++;
+        }
+        blockKeys++;
+        if (block.estimatedSize() >= BLOCK_SIZE) {
+            flushBlock();
+        }
+    }
+
+    /**
+     * Adds a range tombstone, which hides the keys it covers in older tables but not the entries of this one.
+     * Range tombstones may be added in any order and may overlap.
+     */
+    public void addRangeTombstone(RangeTombstone tombstone) {
+        rangeTombstones.add(tombstone);
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return the bytes written so far plus the size of the block being filled, before compression.
+     */
+    public long getEstimatedFileSize() {
+        return offset + block.estimatedSize();
+    }
+
+    /**
+     * @return the properties written by {@link #finish()}, or null before that.
+     */
+    public TableProperties getProperties() {
+        return properties;
+    }
+
+    /**
+     * Writes the index block and footer and moves the file to its final name.
+     * @return the sparse index of the finished table.
+     */
+    public List<IndexEntry> finish() throws IOException {
+        flushBlock();
+        if (sparseRunKeys > 0) {
+            closeSparseRun();
+        }
+        byte[] indexBlock = IndexEntry.encode(index);
+        long indexOffset = offset;
+        write(indexBlock);
+        // The key range covers the range tombstones, so reads and compactions cannot miss them.
+        List<RangeTombstone> union = RangeTombstone.union(rangeTombstones);
+        String smallestKey = firstKey;
+        String largestKey = lastKey;
+        if (!union.isEmpty()) {
+            String start = union.get(0).startKey;
+            String end = union.get(union.size() - 1).endKey;
+            smallestKey = smallestKey == null || start.compareTo(smallestKey) < 0 ? start : smallestKey;
+            largestKey = largestKey == null || end.compareTo(largestKey) > 0 ? end : largestKey;
+        }
+        properties = new TableProperties(smallestKey, largestKey, entryCount, tombstoneCount, union);
+        byte[] propertiesBlock = properties.encode();
+        write(propertiesBlock);
+        ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+        footer.putLong(indexOffset);
+        footer.putInt(indexBlock.length);
+        footer.putLong(indexOffset + indexBlock.length);
+        footer.putInt(propertiesBlock.length);
+        footer.putInt(FORMAT_VERSION);
+        footer.putLong(MAGIC);
+        write(footer.array());
+        out.close();
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        finished = true;
+        return Collections.unmodifiableList(sparseIndex);
+    }
+
+    private void flushBlock() throws IOException {
+        if (block.isEmpty()) {
+            return;
+        }
+        byte[] frame = BlockFrame.encode(block.finish(), codec);
+        write(frame);
+        index.add(new IndexEntry(block.lastKey(), offset, frame.length));
+        offset += frame.length;
+        sparseRunKeys += blockKeys;
+        blockKeys = 0;
+        block.reset();
+        if (sparseRunKeys >= indexInterval) {
+            closeSparseRun();
+        }
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        if (rateLimiter != null) {
+            rateLimiter.request(bytes.length, priority);
+        }
+        out.write(bytes);
+    }
+
+    private void closeSparseRun() {
+        IndexEntry last = index.get(index.size() - 1);
+        sparseIndex.add(new IndexEntry(last.lastKey, sparseRunOffset, (int) (offset - sparseRunOffset)));
+        sparseRunOffset = offset;
+        sparseRunKeys = 0;
+    }
+
+    /**
+     * Releases the file; an unfinished table is discarded.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!finished) {
+            out.close();
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    /**
+     * Settings of a table file. By default every block is indexed in memory, not compressed, and written
+     * without limit.
+     */
+    public static class Options {
+        private int indexInterval = 1;
+        private CompressionCodec codec = CompressionCodec.NONE;
+        private int restartInterval = BlockBuilder.DEFAULT_RESTART_INTERVAL;
+        private RateLimiter rateLimiter;
+        private RateLimiter.Priority priority = RateLimiter.Priority.BACKGROUND;
+
+        /**
+         * @param indexInterval Minimum number of keys covered by one sparse index entry.
+         */
+        public Options setIndexInterval(int indexInterval) {
+            if (indexInterval < 1) {
+                throw new IllegalArgumentException("Index interval must be positive: " + indexInterval);
+            }
+            this.indexInterval = indexInterval;
+            return this;
+        }
+
+        /**
+         * @param codec Codec used to compress the data blocks.
+         */
+        public Options setCompressionCodec(CompressionCodec codec) {
+            this.codec = codec;
+            return this;
+        }
+
+        /**
+         * @param restartInterval Number of prefix-compressed keys between two full keys in a block;
+         *                        1 stores every key in full.
+         */
+        public Options setRestartInterval(int restartInterval) {
+            this.restartInterval = restartInterval;
+            return this;
+        }
+
+        /**
+         * @param rateLimiter Limiter every write of the file is requested from, or null for none.
+         * @param priority Priority of the writes at the limiter.
+         */
+        public Options setRateLimiter(RateLimiter rateLimiter, RateLimiter.Priority priority) {
+            this.rateLimiter = rateLimiter;
+            this.priority = priority;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package kvStore.fileStore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merges sorted runs of similar size, as in RocksDB's universal compaction, for write-heavy workloads:
+ * data is rewritten far less often than with {@link LeveledCompactionStrategy}, at the cost of more runs
+ * for a read to probe and of space taken by overwritten data until the runs holding it are merged.
+ *
+ * Every flushed table in level 0 is a sorted run of its own, and every deeper level holds one run,
+ * newer on shallower levels. Once there are {@code minMergeWidth} runs, the newest window of consecutive
+ * runs in which every run is at most {@code sizeRatio} percent larger than the runs before it together
+ * is merged into the deepest level of the window. All runs are merged once the runs other than the oldest
+ * take more than {@code maxSpaceAmplificationPercent} percent of the oldest one.
+ *
+ * A window that reaches into level 0 takes all older flushed tables with it, since their order within
+ * level 0 is given by age alone. If such a window has no free level to go to, the runs below are first
+ * moved one level down, which only rewrites their metadata.
+ */
+public class SizeTieredCompactionStrategy implements CompactionStrategy {
+    public static final int DEFAULT_SIZE_RATIO = 1;
+    public static final int DEFAULT_MIN_MERGE_WIDTH = 4;
+    public static final int DEFAULT_MAX_SPACE_AMPLIFICATION_PERCENT = 200;
+
+    private final int sizeRatio;
+    private final int minMergeWidth;
+    private final int maxSpaceAmplificationPercent;
+
+    // A sorted run: one flushed table, or all tables of a deeper level.
+    private record Run(int level, List<SSTable> tables, long size) {
+    }
+
+    public SizeTieredCompactionStrategy() {
+        this(DEFAULT_SIZE_RATIO, DEFAULT_MIN_MERGE_WIDTH, DEFAULT_MAX_SPACE_AMPLIFICATION_PERCENT);
+    }
+
+    /**
+     * @param sizeRatio Percentage by which a run may be larger than the newer runs it is merged with.
+     * @param minMergeWidth Number of runs that triggers a compaction, and the fewest runs merged by one.
+     * @param maxSpaceAmplificationPercent Size of the newer runs, in percent of the oldest run, above which all
+     *                                     runs are merged to reclaim the space held by overwritten data.
+     */
+    public SizeTieredCompactionStrategy(int sizeRatio, int minMergeWidth, int maxSpaceAmplificationPercent) {
+        if (sizeRatio < 0 || minMergeWidth < 2 || maxSpaceAmplificationPercent < 0) {
+            throw new IllegalArgumentException("Invalid size-tiered compaction settings: size ratio " + sizeRatio
+                    + ", minimum merge width " + minMergeWidth + ", space amplification " + maxSpaceAmplificationPercent);
+        }
+        this.sizeRatio = sizeRatio;
+        this.minMergeWidth = minMergeWidth;
+        this.maxSpaceAmplificationPercent = maxSpaceAmplificationPercent;
+    }
+
+    @Override
+    public Compaction pickCompaction(List<List<SSTable>> levels) throws IOException {
+        List<Run> runs = runs(levels);
+        if (runs.size() < minMergeWidth) {
+            return null;
+        }
+        long newerSize = 0;
+        for (int i = 0; i < runs.size() - 1; i++) {
+            newerSize += runs.get(i).size;
+        }
+        if (newerSize * 100 > runs.get(runs.size() - 1).size * maxSpaceAmplificationPercent) {
+            return merge(runs, 0, runs.size(), levels);
+        }
+        for (int start = 0; start + minMergeWidth <= runs.size(); start++) {
+            long windowSize = runs.get(start).size;
+            int end = start + 1;
+            while (end < runs.size() && runs.get(end).size * 100 <= windowSize * (100 + sizeRatio)) {
+                windowSize += runs.get(end).size;
+                end++;
+            }
+            if (end - start >= minMergeWidth) {
+                return merge(runs, start, end, levels);
+            }
+        }
+        return null;
+    }
+
+    // Once enough runs pile up to merge, all but the oldest: what a merge of every run would rewrite on top of it.
+    @Override
+    public long estimatePendingCompactionBytes(List<List<SSTable>> levels) {
+        List<Run> runs = runs(levels);
+        if (runs.size() < minMergeWidth) {
+            return 0;
+        }
+        long pending = 0;
+        for (int i = 0; i < runs.size() - 1; i++) {
+            pending += runs.get(i).size;
+        }
+        return pending;
+    }
+
+    // Runs from newest to oldest.
+    private static List<Run> runs(List<List<SSTable>> levels) {
+        List<Run> runs = new ArrayList<>();
+        List<SSTable> level0 = levels.get(SSTableManager.FLUSH_LEVEL);
+        for (int i = level0.size() - 1; i >= 0; i--) {
+            runs.add(new Run(SSTableManager.FLUSH_LEVEL, List.of(level0.get(i)), level0.get(i).fileSize()));
+        }
+        for (int level = 1; level < levels.size(); level++) {
+            List<SSTable> tables = levels.get(level);
+            if (!tables.isEmpty()) {
+                long size = 0;
+                for (SSTable table : tables) {
+                    size += table.fileSize();
+                }
+                runs.add(new Run(level, tables, size));
+            }
+        }
+        return runs;
+    }
+
+    // Merges runs [start, end) into the deepest level among them, or into the free level above the next older run.
+    private static Compaction merge(List<Run> runs, int start, int end, List<List<SSTable>> levels) {
+        while (end < runs.size() && runs.get(end).level == SSTableManager.FLUSH_LEVEL) {
+            end++;
+        }
+        List<SSTable> inputs = new ArrayList<>();
+        for (int i = start; i < end; i++) {
+            inputs.addAll(runs.get(i).tables);
+        }
+        int deepestLevel = runs.get(end - 1).level;
+        if (deepestLevel > SSTableManager.FLUSH_LEVEL) {
+            return new Compaction(inputs, deepestLevel);
+        }
+        // Without an older run any level below the existing ones is free.
+        int olderLevel = end < runs.size() ? runs.get(end).level : Math.max(levels.size(), 2);
+        if (olderLevel > 1) {
+            return new Compaction(inputs, olderLevel - 1);
+        }
+        // Level 1 is taken: move the runs on the levels right below level 0 one level down, deepest first.
+        int level = 1;
+        while (level + 1 < levels.size() && !levels.get(level + 1).isEmpty()) {
+            level++;
+        }
+        return new Compaction(levels.get(level), level + 1);
+    }
+
+    public int getSizeRatio() {
+        return sizeRatio;
+    }
+
+    public int getMinMergeWidth() {
+        return minMergeWidth;
+    }
+
+    public int getMaxSpaceAmplificationPercent() {
+        return maxSpaceAmplificationPercent;
+    }
+}
@@ -0,0 +1,190 @@
+package kvStore.fileStore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps SSTable files open as {@link FileChannel}s so lookups and scans do not pay for an open per call.
+ * Reads use positional {@code read(ByteBuffer, position)}, so one channel serves any number of threads at once.
+ *
+ * The number of open handles is bounded; the least recently used one is closed when a new file is opened.
+ * A handle is reference counted, so a channel that is evicted while a reader still holds it is only closed
+ * once that reader releases it.
+ */
+public class TableHandleCache {
+    private final int maxOpenHandles;
+    // Access order, eldest first.
+    private final LinkedHashMap<Path, Handle> handles = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxOpenHandles Maximum number of files kept open when idle.
+     */
+    public TableHandleCache(int maxOpenHandles) {
+        if (maxOpenHandles <= 0) {
+            throw new IllegalArgumentException("Maximum number of open handles must be positive: " + maxOpenHandles);
+        }
+        this.maxOpenHandles = maxOpenHandles;
+    }
+
+    /**
+     * Returns an open handle on the file, opening it if needed. The caller must close the handle when done,
+     * which releases it back to the cache.
+     */
+    Handle acquire(Path path) throws IOException {
+        synchronized (this) {
+            Handle handle = handles.get(path);
+            if (handle != null) {
+                if (handle.channel.isOpen()) {
+                    handle.references++;
+                    hits.increment();
+                    return handle;
+                }
+                // Closed underneath us, e.g. by an interrupted read: replace it.
+                handles.remove(path);
+                retire(handle);
+            }
+        }
+        misses.increment();
+        // Opened outside the lock so a slow open does not stall readers of other files.
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        synchronized (this) {
+            Handle existing = handles.get(path);
+            if (existing != null && existing.channel.isOpen()) {
+                // Another thread opened the file first.
+                closeQuietly(channel);
+                existing.references++;
+                return existing;
+            }
+            Handle handle = new Handle(this, channel);
+            handle.references = 1;
+            handles.put(path, handle);
+            if (existing != null) {
+                retire(existing);
+            }
+            evictOverflow();
+            return handle;
+        }
+    }
+
+    /**
+     * Closes the handle of a file, e.g. once compaction has deleted it. Readers still holding it may finish.
+     */
+    synchronized void evict(Path path) {
+        Handle handle = handles.remove(path);
+        if (handle != null) {
+            retire(handle);
+        }
+    }
+
+    /**
+     * Closes every pooled file, e.g. when the store shuts down. Readers still holding a handle may finish.
+     */
+    public synchronized void close() {
+        for (Handle handle : handles.values()) {
+            retire(handle);
+        }
+        handles.clear();
+    }
+
+    public int getMaxOpenHandles() {
+        return maxOpenHandles;
+    }
+
+    public synchronized int getOpenCount() {
+        return handles.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "TableHandleCache{" +
+                "maxOpenHandles=" + maxOpenHandles +
+                ", open=" + getOpenCount() +
+                ", hits=" + getHitCount() +
+                ", misses=" + getMissCount() +
+                '}';
+    }
+
+    private synchronized void release(Handle handle) {
+        if (--handle.references == 0 && handle.retired) {
+            closeQuietly(handle.channel);
+        }
+    }
+
+    private void evictOverflow() {
+        Iterator<Map.Entry<Path, Handle>> iterator = handles.entrySet().iterator();
+        while (handles.size() > maxOpenHandles) {
+            Handle eldest = iterator.next().getValue();
+            iterator.remove();
+            retire(eldest);
+        }
+    }
+
+    // Closes the channel now if nobody holds it, otherwise when the last holder releases it.
+    private static void retire(Handle handle) {
+        handle.retired = true;
+        if (handle.references == 0) {
+            closeQuietly(handle.channel);
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close SSTable file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * An open file. Closing the handle releases it; the channel itself is owned by the cache.
+     */
+    static final class Handle implements Closeable {
+        private final TableHandleCache owner; // null for a handle that is not pooled
+        private final FileChannel channel;
+        // Both guarded by the owner's monitor.
+        private int references;
+        private boolean retired;
+
+        private Handle(TableHandleCache owner, FileChannel channel) {
+            this.owner = owner;
+            this.channel = channel;
+        }
+
+        /**
+         * Opens a handle outside of any cache; closing it closes the file.
+         */
+        static Handle open(Path path) throws IOException {
+            return new Handle(null, FileChannel.open(path, StandardOpenOption.READ));
+        }
+
+        FileChannel channel() {
+            return channel;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (owner == null) {
+                channel.close();
+            } else {
+                owner.release(this);
+            }
+        }
+    }
+}
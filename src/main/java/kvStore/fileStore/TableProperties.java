@@ -0,0 +1,110 @@
+package kvStore.fileStore;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Summary of an SSTable's contents, recorded when the table is written. The key range lets
+ * point and range reads skip tables that cannot hold the keys they look for, without touching
+ * the table's Bloom filter or file. The table's range tombstones are kept here too, so they are
+ * in memory for every read; the key range covers them.
+ */
+public final class TableProperties {
+    public final String smallestKey; // null for an empty table
+    public final String largestKey; // null for an empty table
+    public final long entryCount; // tombstones included
+    public final long tombstoneCount;
+    public final List<RangeTombstone> rangeTombstones; // disjoint and sorted, see RangeTombstone.union
+
+    public TableProperties(String smallestKey, String largestKey, long entryCount, long tombstoneCount) {
+        this(smallestKey, largestKey, entryCount, tombstoneCount, List.of());
+    }
+
+    public TableProperties(String smallestKey, String largestKey, long entryCount, long tombstoneCount,
+                           List<RangeTombstone> rangeTombstones) {
+        this.smallestKey = smallestKey;
+        this.largestKey = largestKey;
+        this.entryCount = entryCount;
+        this.tombstoneCount = tombstoneCount;
+        this.rangeTombstones = List.copyOf(rangeTombstones);
+    }
+
+    /**
+     * @return false if the key is outside the table's key range.
+     */
+    public boolean mayContain(String key) {
+        return smallestKey != null && key.compareTo(smallestKey) >= 0 && key.compareTo(largestKey) <= 0;
+    }
+
+    /**
+     * @return whether one of the table's range tombstones deletes the key from older tables.
+     */
+    public boolean isDeletedByRange(String key) {
+        return RangeTombstone.covers(rangeTombstones, key);
+    }
+
+    /**
+     * @param startKey Inclusive lower bound, or null for none.
+     * @param endKey Inclusive upper bound, or null for none.
+     * @return false if no key of the table is within the range.
+     */
+    public boolean overlaps(String startKey, String endKey) {
+        return smallestKey != null
+                && (startKey == null || largestKey.compareTo(startKey) >= 0)
+                && (endKey == null || smallestKey.compareTo(endKey) <= 0);
+    }
+
+    // Layout: entry count | tombstone count | (keyLength | smallest key | keyLength | largest key) if not empty
+    // | range tombstones if any, see RangeTombstone.encode; all integers as varints.
+    // Without range tombstones the properties simply end after the key range.
+    byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Coding.putVarLong(out, entryCount);
+        Coding.putVarLong(out, tombstoneCount);
+        if (smallestKey != null) {
+            putKey(out, smallestKey);
+            putKey(out, largestKey);
+        }
+        if (!rangeTombstones.isEmpty()) {
+            RangeTombstone.encode(out, rangeTombstones);
+        }
+        return out.toByteArray();
+    }
+
+    static TableProperties decode(ByteBuffer in) {
+        long entryCount = Coding.getVarLong(in);
+        long tombstoneCount = Coding.getVarLong(in);
+        if (!in.hasRemaining()) {
+            return new TableProperties(null, null, 0, 0);
+        }
+        String smallestKey = getKey(in);
+        String largestKey = getKey(in);
+        List<RangeTombstone> rangeTombstones = in.hasRemaining() ? RangeTombstone.decode(in) : List.of();
+        return new TableProperties(smallestKey, largestKey, entryCount, tombstoneCount, rangeTombstones);
+    }
+
+    static void putKey(ByteArrayOutputStream out, String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        Coding.putVarInt(out, bytes.length);
+        Coding.putBytes(out, bytes);
+    }
+
+    static String getKey(ByteBuffer in) {
+        byte[] bytes = new byte[Coding.getVarInt(in)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return "TableProperties{" +
+                "smallestKey='" + smallestKey + '\'' +
+                ", largestKey='" + largestKey + '\'' +
+                ", entryCount=" + entryCount +
+                ", tombstoneCount=" + tombstoneCount +
+                ", rangeTombstones=" + rangeTombstones.size() +
+                '}';
+    }
+}
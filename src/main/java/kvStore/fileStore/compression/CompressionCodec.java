@@ -0,0 +1,56 @@
+package kvStore.fileStore.compression;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compresses SSTable data blocks. The codec id is stored with every block, so tables (and blocks)
+ * written with different codecs can be read side by side.
+ *
+ * Additional codecs, e.g. backed by an LZ4 or Zstandard library, are made readable by passing them
+ * to {@link #register} before any table that uses them is opened.
+ */
+public interface CompressionCodec {
+    CompressionCodec NONE = NoCompression.INSTANCE;
+    CompressionCodec DEFLATE = new DeflateCodec();
+
+    /**
+     * @return the id persisted with each block; must be unique among registered codecs.
+     */
+    byte id();
+
+    String name();
+
+    byte[] compress(byte[] data);
+
+    /**
+     * @param uncompressedLength Length of the original data, as stored alongside the block.
+     */
+    byte[] decompress(byte[] data, int uncompressedLength) throws IOException;
+
+    static void register(CompressionCodec codec) {
+        CompressionCodec existing = Registry.CODECS.putIfAbsent(codec.id(), codec);
+        // Instances of the same codec may differ in write settings such as the compression level.
+        if (existing != null && existing.getClass() != codec.getClass()) {
+            throw new IllegalArgumentException("Codec id " + codec.id() + " already used by " + existing.name());
+        }
+    }
+
+    static CompressionCodec forId(byte id) throws IOException {
+        CompressionCodec codec = Registry.CODECS.get(id);
+        if (codec == null) {
+            throw new IOException("Unknown compression codec id: " + id);
+        }
+        return codec;
+    }
+
+    final class Registry {
+        private static final Map<Byte, CompressionCodec> CODECS = new ConcurrentHashMap<>(Map.of(
+                NONE.id(), NONE,
+                DEFLATE.id(), DEFLATE));
+
+        private Registry() {
+        }
+    }
+}
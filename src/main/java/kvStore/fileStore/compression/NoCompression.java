@@ -0,0 +1,31 @@
+package kvStore.fileStore.compression;
+
+/**
+ * Stores blocks as they are.
+ */
+final class NoCompression implements CompressionCodec {
+    static final NoCompression INSTANCE = new NoCompression();
+
+    private NoCompression() {
+    }
+
+    @Override
+    public byte id() {
+        return 0;
+    }
+
+    @Override
+    public String name() {
+        return "none";
+    }
+
+    @Override
+    public byte[] compress(byte[] data) {
+        return data;
+    }
+
+    @Override
+    public byte[] decompress(byte[] data, int uncompressedLength) {
+        return data;
+    }
+}
@@ -1,6 +1,9 @@
 package kvStore.log;
 
+import kvStore.fileStore.RateLimiter;
+
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -11,6 +14,7 @@ public class WriteAheadLog implements Serializable {
     private File logFile;
     private BufferedWriter writer;
     private final String directory;
+    private transient final RateLimiter rateLimiter;  // null when appends are not limited
 
     public File getLogFile() {
         return logFile;
@@ -20,7 +24,16 @@ public class WriteAheadLog implements Serializable {
         this(directory, false);
     }
     public WriteAheadLog(String directory, boolean forceNewFile) {
+        this(directory, forceNewFile, null);
+    }
+
+    /**
+     * @param rateLimiter Limiter shared with the SSTable writes that appends are requested from at foreground
+     *                    priority, or null for none.
+     */
+    public WriteAheadLog(String directory, boolean forceNewFile, RateLimiter rateLimiter) {
         this.directory = directory;
+        this.rateLimiter = rateLimiter;
         // Try to find the most recent WAL file.
         File latestWal = getLatestWalFile();
         if (latestWal != null && !forceNewFile) {
@@ -28,11 +41,11 @@ public class WriteAheadLog implements Serializable {
             this.logFile = latestWal;
         } else {
             // No existing WAL found; create a new one.
-            this.logFile = new File(directory, "wal_" + System.currentTimeMillis() + ".log");
+            this.logFile = newLogFile(latestWal);
         }
         try {
             // Open the file in append mode.
-            writer = new BufferedWriter(new FileWriter(logFile, true));
+            writer = new BufferedWriter(new FileWriter(logFile, StandardCharsets.UTF_8, true));
         } catch (IOException e) {
             throw new RuntimeException("Error initializing WAL", e);
         }
@@ -40,14 +53,36 @@ public class WriteAheadLog implements Serializable {
 
     // Scans the directory for existing WAL files and returns the one with the highest timestamp.
     private File getLatestWalFile() {
+        List<File> files = listLogFiles();
+        return files.isEmpty() ? null : files.get(files.size() - 1);
+    }
+
+    /**
+     * @return every WAL file in the directory, oldest first.
+     */
+    public List<File> getLogFiles() {
+        return listLogFiles();
+    }
+
+    // Private, so the constructor can find the latest file through it.
+    private List<File> listLogFiles() {
         File dir = new File(directory);
         File[] files = dir.listFiles((d, name) -> name.startsWith("wal_") && name.endsWith(".log"));
-        if (files != null && files.length > 0) {
-            // Sort files by timestamp in descending order.
-            Arrays.sort(files, (f1, f2) -> Long.compare(extractTimestamp(f2.getName()), extractTimestamp(f1.getName())));
-            return files[0]; // The most recent WAL file.
+        if (files == null) {
+            return List.of();
         }
-        return null;
+        Arrays.sort(files, (f1, f2) -> Long.compare(extractTimestamp(f1.getName()), extractTimestamp(f2.getName())));
+        return Arrays.asList(files);
+    }
+
+    // A file named after the current time, or after the latest file if that is not older: files rotated
+    // within the same millisecond must not share a name, since recovery orders them by it.
+    private File newLogFile(File latest) {
+        long timestamp = System.currentTimeMillis();
+        if (latest != null) {
+            timestamp = Math.max(timestamp, extractTimestamp(latest.getName()) + 1);
+        }
+        return new File(directory, "wal_" + timestamp + ".log");
     }
 
     // Helper method to extract timestamp from a WAL filename.
@@ -63,8 +98,7 @@ public class WriteAheadLog implements Serializable {
 
     public synchronized void appendPut(String key, String value) {
         try {
-            writer.write("PUT," + escape(key) + "," + escape(value));
-            writer.newLine();
+            append("PUT," + escape(key) + "," + escape(value));
             // Optionally, flush periodically or after a batch.
             writer.flush();
         } catch (IOException e) {
@@ -74,14 +108,31 @@ public class WriteAheadLog implements Serializable {
 
     public synchronized void appendDelete(String key) {
         try {
-            writer.write("DELETE," + escape(key));
-            writer.newLine();
+            append("DELETE," + escape(key));
             writer.flush();
         } catch (IOException e) {
             throw new RuntimeException("Error writing DELETE to WAL", e);
         }
     }
 
+    private void append(String line) throws IOException {
+        if (rateLimiter != null) {
+            // The file is written in UTF-8, so keys and values outside ASCII take more bytes than characters.
+            rateLimiter.request(line.getBytes(StandardCharsets.UTF_8).length + 1, RateLimiter.Priority.FOREGROUND);
+        }
+        writer.write(line);
+        writer.newLine();
+    }
+
+    public synchronized void appendDeleteRange(String startKey, String endKey) {
+        try {
+            append("DELETE_RANGE," + escape(startKey) + "," + escape(endKey));
+            writer.flush();
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing DELETE_RANGE to WAL", e);
+        }
+    }
+
     private String escape(String s) {
         return s.replace(",", "\\,");
     }
@@ -96,6 +147,18 @@ public class WriteAheadLog implements Serializable {
         return entries;
     }
 
+    /**
+     * Reads the entries of every WAL file in the directory, oldest first. Besides the current file, these are
+     * the files of frozen MemTables whose flush had not finished.
+     */
+    public synchronized List<LogEntry> recoverAll() {
+        List<LogEntry> entries = new ArrayList<>();
+        for (File file : getLogFiles()) {
+            entries.addAll(readWalFile(file));
+        }
+        return entries;
+    }
+
     public synchronized List<LogEntry> recoverFile(String fileName){
         File file = new File(directory, fileName);
         if (!file.exists()) return List.of();
@@ -105,7 +168,7 @@ public class WriteAheadLog implements Serializable {
 
     private List<LogEntry> readWalFile(File file) {
         List<LogEntry> entries = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+        try (BufferedReader reader = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
             String line;
             while ((line = reader.readLine()) != null) {
                 // Split on commas not preceded by a backslash.
@@ -118,6 +181,8 @@ public class WriteAheadLog implements Serializable {
                         entries.add(new LogEntry(LogEntry.Operation.PUT, key, value));
                     } else if ("DELETE".equals(op)) {
                         entries.add(new LogEntry(LogEntry.Operation.DELETE, key, null));
+                    } else if ("DELETE_RANGE".equals(op) && parts.length == 3) {
+                        entries.add(new LogEntry(LogEntry.Operation.DELETE_RANGE, key, unescape(parts[2])));
                     }
                 }
             }
@@ -141,21 +206,20 @@ public class WriteAheadLog implements Serializable {
     public synchronized void rotate() {
         // Close the current writer.
         close();
-        // Optionally archive or delete the old WAL file here.
         // Create a new WAL file.
-        this.logFile = new File(directory, "wal_" + System.currentTimeMillis() + ".log");
+        this.logFile = newLogFile(logFile);
         try {
-            writer = new BufferedWriter(new FileWriter(logFile, true));
+            writer = new BufferedWriter(new FileWriter(logFile, StandardCharsets.UTF_8, true));
         } catch (IOException e) {
             throw new RuntimeException("Error rotating WAL", e);
         }
     }
 
     public static class LogEntry {
-        public enum Operation { PUT, DELETE }
+        public enum Operation { PUT, DELETE, DELETE_RANGE }
         public Operation op;
-        public String key;
-        public String value; // Only used for PUT
+        public String key; // Start key for DELETE_RANGE
+        public String value; // Only used for PUT, and as the inclusive end key for DELETE_RANGE
 
         public LogEntry(Operation op, String key, String value) {
             this.op = op;
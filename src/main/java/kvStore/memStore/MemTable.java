@@ -1,36 +1,162 @@
 package kvStore.memStore;
 
+import kvStore.fileStore.Entry;
+import kvStore.fileStore.MergingIterator;
+import kvStore.fileStore.RangeTombstone;
 import kvStore.fileStore.SSTableManager;
 import kvStore.log.WriteAheadLog;
 
-import java.util.HashMap;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
-import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/**
+ * Buffers the latest changes in memory until they are flushed into an SSTable.
+ *
+ * Writes go to the active buffer. Once it is full it is swapped for an empty one and frozen: it stays
+ * readable, newest first after the active buffer, while a background thread writes it out, and is dropped
+ * only once its SSTable is installed. A write that fills the buffer therefore only pays for the swap.
+ * Every buffer has a WAL file of its own, deleted with the buffer after the flush.
+ */
 public class MemTable implements KeyValueStore {
     private static final int FLUSH_THRESHOLD = 1000;
-    // Use ConcurrentSkipListMap for a thread-safe, sorted map.
-    private final ConcurrentSkipListMap<String, String> store = new ConcurrentSkipListMap<>();
-    // Use ConcurrentHashMap for tombstones.
-    private final ConcurrentHashMap<String, Boolean> tombstones = new ConcurrentHashMap<>();
+    // Writes stall while this many frozen buffers wait for their flush, until the oldest is flushed. Flushes do
+    // not wait for compactions, so the stall lasts as long as writing a buffer out.
+    private static final int MAX_FROZEN_BUFFERS = 4;
+    // A failed flush is retried with a doubling delay before the flush thread gives up on it.
+    private static final int FLUSH_ATTEMPTS = 4;
+    private static final long FLUSH_RETRY_DELAY_MS = 50;
     private final SSTableManager ssTableManager;
     private final WriteAheadLog wal;  // WAL instance
+    // Writers hold the read lock while they log a change and apply it, the swap holds the write lock, so
+    // every change lands in the buffer whose WAL file holds it.
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private final Object flushedSignal = new Object();
+    // Flushes handed to the flush thread, which runs them in this order, the last of them that gave up on a
+    // buffer, and why; guarded by flushedSignal.
+    private long scheduledFlushes;
+    private long failedFlush;
+    private RuntimeException flushFailure;
+    private volatile WriteBuffer active;
+    // Frozen buffers not yet installed as SSTables, newest first; replaced as a whole so reads need no lock.
+    private volatile List<WriteBuffer> frozen = List.of();
+    private final ExecutorService flushExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "memtable-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public MemTable(SSTableManager ssTableManager, WriteAheadLog wal) {
         this.ssTableManager = ssTableManager;
         this.wal = wal;
+        this.active = new WriteBuffer(List.of(wal.getLogFile()));
+    }
+
+    // Changes logged to the same WAL files, and the WAL files themselves.
+    private static final class WriteBuffer {
+        // Use ConcurrentSkipListMap for a thread-safe, sorted map.
+        final ConcurrentSkipListMap<String, String> store = new ConcurrentSkipListMap<>();
+        // Tombstones are sorted too, so range reads can merge them with the live data.
+        final ConcurrentSkipListMap<String, Boolean> tombstones = new ConcurrentSkipListMap<>();
+        // Range deletes, oldest first; guarded by the buffer.
+        final List<RangeTombstone> rangeDeletes = new ArrayList<>();
+        // Union of rangeDeletes, replaced as a whole so reads need no lock.
+        volatile List<RangeTombstone> rangeTombstones = List.of();
+        final List<File> logFiles;
+        // Keys inserted into the store, checked after every put instead of the skip list's size(), which walks
+        // every entry. Keys deleted since stay counted, so a buffer is swapped no later than by its size.
+        final AtomicInteger insertedKeys = new AtomicInteger();
+
+        WriteBuffer(List<File> logFiles) {
+            this.logFiles = logFiles;
+        }
+
+        void put(String key, String value) {
+            if (store.put(key, value) == null) {
+                insertedKeys.incrementAndGet();
+            }
+            tombstones.remove(key); // Remove any previous deletion marker.
+        }
+
+        void delete(String key) {
+            store.remove(key);
+            tombstones.put(key, true); // Mark key as deleted.
+        }
+
+        // The tombstone hides the older data, while the data in the range here is dropped: every entry left in
+        // the buffer is then newer than its range tombstones, and wins over them.
+        void deleteRange(RangeTombstone tombstone) {
+            synchronized (this) {
+                rangeDeletes.add(tombstone);
+                rangeTombstones = RangeTombstone.union(rangeDeletes);
+            }
+            store.subMap(tombstone.startKey, true, tombstone.endKey, true).clear();
+            tombstones.subMap(tombstone.startKey, true, tombstone.endKey, true).clear();
+        }
+
+        // Entries from startKey on, in key order, or descending from it; those covered by the range
+        // tombstones of newer buffers are left out.
+        Iterator<Entry> iterator(String startKey, boolean reverse, List<RangeTombstone> newerRangeTombstones) {
+            NavigableMap<String, String> values = startKey == null ? store
+                    : reverse ? store.headMap(startKey, true) : store.tailMap(startKey, true);
+            NavigableMap<String, Boolean> deleted = startKey == null ? tombstones
+                    : reverse ? tombstones.headMap(startKey, true) : tombstones.tailMap(startKey, true);
+            if (reverse) {
+                values = values.descendingMap();
+                deleted = deleted.descendingMap();
+            }
+            // A key is never live and deleted at once, except while a put or delete is in progress;
+            // then the tombstone, which those check first in get(), wins here too.
+            return new MergingIterator(List.of(
+                    deleted.keySet().stream()
+                            .filter(key -> !RangeTombstone.covers(newerRangeTombstones, key))
+                            .map(Entry::tombstone).iterator(),
+                    values.entrySet().stream()
+                            .filter(entry -> !RangeTombstone.covers(newerRangeTombstones, entry.getKey()))
+                            .map(entry -> Entry.value(entry.getKey(), entry.getValue())).iterator()), reverse);
+        }
+    }
+
+    // The active buffer and the frozen ones, newest first. The swap publishes the frozen buffer before the
+    // new active one, so reading them in this order never misses a buffer.
+    private List<WriteBuffer> buffers() {
+        WriteBuffer current = active;
+        List<WriteBuffer> frozenBuffers = frozen;
+        List<WriteBuffer> buffers = new ArrayList<>(frozenBuffers.size() + 1);
+        buffers.add(current);
+        for (WriteBuffer buffer : frozenBuffers) {
+            if (buffer != current) {
+                buffers.add(buffer);
+            }
+        }
+        return buffers;
     }
 
     public void put(String key, String value) {
-        // First, write to the WAL for durability.
-        wal.appendPut(key, value);
-        store.put(key, value);
-        tombstones.remove(key); // Remove any previous deletion marker.
-        if (store.size() >= FLUSH_THRESHOLD) {
-            flush();
+        WriteBuffer buffer;
+        swapLock.readLock().lock();
+        try {
+            // First, write to the WAL for durability.
+            wal.appendPut(key, value);
+            buffer = active;
+            buffer.put(key, value);
+        } finally {
+            swapLock.readLock().unlock();
+        }
+        if (buffer.insertedKeys.get() >= FLUSH_THRESHOLD) {
+            swap(buffer);
         }
     }
 
@@ -42,76 +168,332 @@ public class MemTable implements KeyValueStore {
     }
 
     public String get(String key) {
-        // First, check tombstones.
-        if (tombstones.containsKey(key)) {
-            return null;
+        for (WriteBuffer buffer : buffers()) {
+            // First, check tombstones.
+            if (buffer.tombstones.containsKey(key)) {
+                return null;
+            }
+            String value = buffer.store.get(key);
+            if (value != null) {
+                return value;
+            }
+            if (RangeTombstone.covers(buffer.rangeTombstones, key)) {
+                return null;
+            }
         }
-        return store.get(key);
+        return null;
     }
 
     public NavigableMap<String, String> readRange(String startKey, String endKey) {
-        // Get a view of the range from the concurrent sorted map.
-        NavigableMap<String, String> subMap = store.subMap(startKey, true, endKey, true);
         // Remove keys that have been marked as deleted.
         NavigableMap<String, String> result = new ConcurrentSkipListMap<>();
-        for (Map.Entry<String, String> entry : subMap.entrySet()) {
-            if (!tombstones.containsKey(entry.getKey())) {
-                result.put(entry.getKey(), entry.getValue());
+        Iterator<Entry> entries = iterator(startKey);
+        while (entries.hasNext()) {
+            Entry entry = entries.next();
+            if (entry.key.compareTo(endKey) > 0) {
+                break;
+            }
+            if (!entry.isTombstone()) {
+                result.put(entry.key, entry.value);
             }
         }
         return result;
     }
 
+    /**
+     * Iterates the live entries and tombstones from startKey on, in key order, without copying them.
+     * @param startKey The key to start at, or null to start at the smallest key.
+     */
+    public Iterator<Entry> iterator(String startKey) {
+        return iterator(startKey, false);
+    }
+
+    /**
+     * Iterates the live entries and tombstones from startKey down, in descending key order.
+     * @param startKey The key to start at, or null to start at the largest key.
+     */
+    public Iterator<Entry> reverseIterator(String startKey) {
+        return iterator(startKey, true);
+    }
+
+    // Merges the buffers newest first, so the newest entry of a key wins.
+    private Iterator<Entry> iterator(String startKey, boolean reverse) {
+        List<WriteBuffer> buffers = buffers();
+        if (buffers.size() == 1) {
+            return buffers.get(0).iterator(startKey, reverse, List.of());
+        }
+        List<Iterator<Entry>> sources = new ArrayList<>(buffers.size());
+        List<RangeTombstone> newer = List.of();
+        for (WriteBuffer buffer : buffers) {
+            sources.add(buffer.iterator(startKey, reverse, newer));
+            newer = union(newer, buffer.rangeTombstones);
+        }
+        return new MergingIterator(sources, reverse);
+    }
+
     public void delete(String key) {
-        wal.appendDelete(key);
-        store.remove(key);
-        tombstones.put(key, true); // Mark key as deleted.
+        swapLock.readLock().lock();
+        try {
+            wal.appendDelete(key);
+            active.delete(key);
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes every key from startKey to endKey, both inclusive, with a single range tombstone,
+     * however many keys the range holds.
+     */
+    public void deleteRange(String startKey, String endKey) {
+        RangeTombstone tombstone = new RangeTombstone(startKey, endKey);
+        swapLock.readLock().lock();
+        try {
+            wal.appendDeleteRange(startKey, endKey);
+            active.deleteRange(tombstone);
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return whether a range delete hides the key in the SSTables; a value for the key in the MemTable is newer.
+     */
+    public boolean isDeletedByRange(String key) {
+        for (WriteBuffer buffer : buffers()) {
+            if (buffer.tombstones.containsKey(key) || buffer.store.containsKey(key)) {
+                return false;
+            }
+            if (RangeTombstone.covers(buffer.rangeTombstones, key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the range deletes not yet flushed, as a sorted union of disjoint ranges.
+     */
+    public List<RangeTombstone> getRangeTombstones() {
+        List<RangeTombstone> union = List.of();
+        for (WriteBuffer buffer : buffers()) {
+            union = union(union, buffer.rangeTombstones);
+        }
+        return union;
+    }
+
+    private static List<RangeTombstone> union(List<RangeTombstone> union, List<RangeTombstone> tombstones) {
+        if (tombstones.isEmpty()) {
+            return union;
+        }
+        if (union.isEmpty()) {
+            return tombstones;
+        }
+        List<RangeTombstone> all = new ArrayList<>(union);
+        all.addAll(tombstones);
+        return RangeTombstone.union(all);
     }
 
     /**
-     * Flushes the current snapshot of the store to disk.
-     * Note: This snapshot mechanism is not strictly atomic,
-     * so further refinement might be necessary in production.
+     * Swaps the active buffer for an empty one, whatever it holds, and waits until it is flushed.
      */
-    synchronized void flush() {
-        System.out.println("Flushing mem table into file - contains " + store.size() + " data points and " + tombstones.size() + " tombstones");
+    void flush() {
+        swap(active);
+        awaitFlush();
+    }
+
+    // Freezes the buffer, unless another writer did already, and hands it to the flush thread.
+    private void swap(WriteBuffer full) {
+        swapLock.writeLock().lock();
+        try {
+            if (active != full) {
+                return;
+            }
+            freeze(full);
+            // The closed WAL file holds the changes of the frozen buffer, the new one those of the new buffer.
+            wal.rotate();
+            active = new WriteBuffer(List.of(wal.getLogFile()));
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+        scheduleFlush();
+    }
+
+    // Hands a flush of every frozen buffer to the flush thread, numbered so stalled writers can tell whether it
+    // gave up.
+    private Future<?> scheduleFlush() {
+        synchronized (flushedSignal) {
+            long flush = ++scheduledFlushes;
+            return flushExecutor.submit(() -> {
+                try {
+                    flushFrozenBuffers();
+                } catch (RuntimeException e) {
+                    // The buffer stays frozen and readable, and the next swap, or a writer stalled on it, tries again.
+                    System.err.println("Gave up flushing mem table: " + e);
+                    synchronized (flushedSignal) {
+                        failedFlush = flush;
+                        flushFailure = e;
+                        flushedSignal.notifyAll();
+                    }
+                    throw e;
+                }
+            });
+        }
+    }
+
+    // Adds the buffer to the frozen ones. Called with the write lock held, so if too many buffers wait for
+    // their flush, all writes stall until the flush thread catches up. The frozen list is only replaced while
+    // holding flushedSignal, by this and the flush thread.
+    private void freeze(WriteBuffer full) {
+        synchronized (flushedSignal) {
+            if (frozen.size() >= MAX_FROZEN_BUFFERS) {
+                // A flush that gave up leaves its buffers frozen, and only a swap would start another, so the
+                // stalled writer starts one itself.
+                long flush = scheduledFlushes + 1;
+                scheduleFlush();
+                while (frozen.size() >= MAX_FROZEN_BUFFERS) {
+                    if (failedFlush >= flush) {
+                        // The buffers cannot be flushed: fail the write instead of stalling every writer for good.
+                        // The change itself is already logged and applied.
+                        throw new RuntimeException("Error flushing mem table", flushFailure);
+                    }
+                    try {
+                        flushedSignal.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException("Interrupted while waiting for a mem table flush", e);
+                    }
+                }
+            }
+            List<WriteBuffer> frozenBuffers = new ArrayList<>(frozen.size() + 1);
+            frozenBuffers.add(full);
+            frozenBuffers.addAll(frozen);
+            frozen = List.copyOf(frozenBuffers);
+        }
+    }
 
-        // Create snapshots of live data and tombstones
-        NavigableMap<String, String> dataSnapshot = new TreeMap<>(store);
-        Map<String, Boolean> tombstoneSnapshot = new HashMap<>(tombstones);
+    // Runs on the flush thread only. Buffers are flushed oldest first, so their SSTables are ordered like the
+    // changes they hold, and a buffer is dropped only once its SSTable is installed.
+    private void flushFrozenBuffers() {
+        List<WriteBuffer> frozenBuffers;
+        while (!(frozenBuffers = frozen).isEmpty()) {
+            WriteBuffer buffer = frozenBuffers.get(frozenBuffers.size() - 1);
+            System.out.println("Flushing mem table into file - contains " + buffer.store.size() + " data points, "
+                    + buffer.tombstones.size() + " tombstones and " + buffer.rangeDeletes.size() + " range tombstones");
+            writeToSSTable(buffer);
+            synchronized (flushedSignal) {
+                frozen = List.copyOf(frozen.subList(0, frozen.size() - 1));
+                flushedSignal.notifyAll();
+            }
+            // The SSTable holds the changes now, so the WAL files need not be replayed.
+            for (File logFile : buffer.logFiles) {
+                //TODO - handle output
+                logFile.delete();
+            }
+        }
+    }
 
-        // Clear the in-memory store (live data only)
-        store.clear();
+    // Writes the buffer, which no longer changes, as it is. A failed write is retried a few times before the
+    // flush gives up.
+    private void writeToSSTable(WriteBuffer buffer) {
+        long delay = FLUSH_RETRY_DELAY_MS;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                ssTableManager.writeToSSTable(buffer.store, buffer.tombstones, buffer.rangeTombstones);
+                return;
+            } catch (RuntimeException e) {
+                System.err.println("Error flushing mem table, attempt " + attempt + " of " + FLUSH_ATTEMPTS + ":");
+                e.printStackTrace();
+                if (attempt == FLUSH_ATTEMPTS) {
+                    throw e;
+                }
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while retrying a mem table flush", e);
+            }
+            delay *= 2;
+        }
+    }
 
-        // Persist both data and tombstones
-        ssTableManager.writeToSSTable(dataSnapshot, tombstoneSnapshot);
-        // Tombstones are not cleared here so that the StorageEngine can
-        // use them to filter out deleted keys.
+    /**
+     * Waits until every frozen buffer is flushed into an SSTable.
+     */
+    public void awaitFlush() {
+        try {
+            scheduleFlush().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a mem table flush", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error flushing mem table", e.getCause());
+        }
+    }
 
-        // After flush, rotate the WAL so that old entries are not replayed.
-        wal.rotate();
+    /**
+     * Flushes the frozen buffers, stops the flush thread and closes the WAL. The active buffer is left to the WAL,
+     * which replays it on the next start. The MemTable must not be used afterwards.
+     */
+    public void close() {
+        try {
+            awaitFlush();
+        } finally {
+            flushExecutor.shutdown();
+            wal.close();
+        }
     }
 
     public boolean hasTombstone(String key) {
-        return tombstones.containsKey(key);
+        for (WriteBuffer buffer : buffers()) {
+            if (buffer.tombstones.containsKey(key)) {
+                return true;
+            }
+            if (buffer.store.containsKey(key) || RangeTombstone.covers(buffer.rangeTombstones, key)) {
+                return false;
+            }
+        }
+        return false;
     }
 
+    /**
+     * @return the keys deleted by the buffers not yet flushed, and not put again since.
+     */
     public Map<String, Boolean> getTombstones() {
-        return new ConcurrentHashMap<>(tombstones);
+        Map<String, Boolean> tombstones = new ConcurrentHashMap<>();
+        List<WriteBuffer> buffers = buffers();
+        for (WriteBuffer buffer : buffers) {
+            for (String key : buffer.tombstones.keySet()) {
+                if (buffers.size() == 1 || hasTombstone(key)) {
+                    tombstones.put(key, true);
+                }
+            }
+        }
+        return tombstones;
     }
 
     /**
-     * Replays the WAL to restore unflushed operations.
+     * Replays the WAL files to restore unflushed operations, those of buffers that were frozen but not flushed
+     * included. The files are deleted once the active buffer is flushed.
      */
     public synchronized void recoverFromWAL() {
-        for (WriteAheadLog.LogEntry entry : wal.recover()) {
-            if (entry.op == WriteAheadLog.LogEntry.Operation.PUT) {
-                store.put(entry.key, entry.value);
-                tombstones.remove(entry.key);
-            } else if (entry.op == WriteAheadLog.LogEntry.Operation.DELETE) {
-                store.remove(entry.key);
-                tombstones.put(entry.key, true);
+        swapLock.writeLock().lock();
+        try {
+            List<File> logFiles = wal.getLogFiles();
+            WriteBuffer buffer = new WriteBuffer(logFiles.isEmpty() ? List.of(wal.getLogFile()) : logFiles);
+            for (WriteAheadLog.LogEntry entry : wal.recoverAll()) {
+                if (entry.op == WriteAheadLog.LogEntry.Operation.PUT) {
+                    buffer.put(entry.key, entry.value);
+                } else if (entry.op == WriteAheadLog.LogEntry.Operation.DELETE) {
+                    buffer.delete(entry.key);
+                } else if (entry.op == WriteAheadLog.LogEntry.Operation.DELETE_RANGE) {
+                    buffer.deleteRange(new RangeTombstone(entry.key, entry.value));
+                }
             }
+            active = buffer;
+        } finally {
+            swapLock.writeLock().unlock();
         }
     }
 }
@@ -0,0 +1,75 @@
+package kvStore;
+
+import kvStore.fileStore.SSTableManager;
+import kvStore.log.WriteAheadLog;
+import kvStore.memStore.MemTable;
+
+import java.io.File;
+import java.nio.file.*;
+import java.util.*;
+
+public class RowCachePerformanceTest {
+
+    public static void main(String[] args) throws Exception {
+        int numKeys = 100_000;
+        int numReads = 1_000_000;
+        // Zipfian key ranks: a handful of keys take most of the reads.
+        int[] ranks = zipfianRanks(numKeys, numReads, 0.99, new Random(42));
+
+        runReads("without row cache", numKeys, ranks, 0);
+        runReads("with 16 MB row cache", numKeys, ranks, 16L * 1024 * 1024);
+    }
+
+    private static void runReads(String label, int numKeys, int[] ranks, long rowCacheCapacity) throws Exception {
+        Path tempDir = Files.createTempDirectory("row_cache_perf_test");
+        SSTableManager ssTableManager = new SSTableManager(tempDir.toString());
+        WriteAheadLog writeAheadLog = new WriteAheadLog(tempDir.toString());
+        MemTable memTable = new MemTable(ssTableManager, writeAheadLog);
+        StorageEngine storageEngine = new StorageEngine(memTable, ssTableManager, rowCacheCapacity);
+        for (int i = 0; i < numKeys; i++) {
+            storageEngine.put("key" + i, "value" + i);
+        }
+
+        long startTime = System.nanoTime();
+        for (int rank : ranks) {
+            storageEngine.get("key" + rank);
+        }
+        double durationMs = (System.nanoTime() - startTime) / 1_000_000.0;
+        System.out.printf("Zipfian get throughput %s: %.2f ops/sec (%.2f ms total)%n",
+                label, ranks.length / (durationMs / 1000.0), durationMs);
+        if (storageEngine.getRowCache() != null) {
+            RowCache rowCache = storageEngine.getRowCache();
+            System.out.printf("Row cache hits: %d, misses: %d, usage: %d bytes%n",
+                    rowCache.getHitCount(), rowCache.getMissCount(), rowCache.getUsage());
+        }
+
+        writeAheadLog.close();
+        Files.walk(tempDir)
+                .sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(File::delete);
+    }
+
+    // Draws ranks from a Zipf distribution by inverting its cumulative distribution.
+    private static int[] zipfianRanks(int numKeys, int count, double skew, Random random) {
+        double[] cumulative = new double[numKeys];
+        double sum = 0;
+        for (int i = 0; i < numKeys; i++) {
+            sum += 1.0 / Math.pow(i + 1, skew);
+            cumulative[i] = sum;
+        }
+        int[] ranks = new int[count];
+        for (int i = 0; i < count; i++) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            ranks[i] = index >= 0 ? index : Math.min(-index - 1, numKeys - 1);
+        }
+        return ranks;
+    }
+
+    /*
+    Result with 100000 keys flushed to SSTables and 1000000 zipfian (s = 0.99) gets:
+Zipfian get throughput without row cache: 175496,82 ops/sec (5698,11 ms total)
+Zipfian get throughput with 16 MB row cache: 574686,95 ops/sec (1740,08 ms total)
+Row cache hits: 917830, misses: 82170, usage: 10802000 bytes
+     */
+}
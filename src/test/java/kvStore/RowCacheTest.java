@@ -0,0 +1,117 @@
+package kvStore;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RowCacheTest {
+
+    @Test
+    void testCachesValuesAndNotFoundResults() {
+        RowCache cache = new RowCache(1024 * 1024);
+        cache.put("present", "value", cache.generation("present"));
+        cache.put("absent", null, cache.generation("absent"));
+
+        assertEquals("value", cache.get("present").value);
+        assertNotNull(cache.get("absent"), "A not-found result should be cached");
+        assertNull(cache.get("absent").value);
+        assertNull(cache.get("unknown"));
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    void testInvalidation() {
+        RowCache cache = new RowCache(1024 * 1024);
+        cache.put("a", "1", cache.generation("a"));
+        cache.put("b", "2", cache.generation("b"));
+        cache.put("c", "3", cache.generation("c"));
+
+        cache.invalidate("a");
+        cache.invalidateAll(List.of("b"));
+
+        assertNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("3", cache.get("c").value);
+    }
+
+    @Test
+    void testLookupRacingWithInvalidationIsNotCached() {
+        RowCache cache = new RowCache(1024 * 1024);
+        long generation = cache.generation("key");
+        // A flush invalidates the key while the lookup is reading the SSTables.
+        cache.invalidate("key");
+        cache.put("key", "stale", generation);
+
+        assertNull(cache.get("key"));
+    }
+
+    @Test
+    void testUsageStaysWithinCapacity() {
+        long capacity = 16 * 1024;
+        RowCache cache = new RowCache(capacity);
+        for (int i = 0; i < 10_000; i++) {
+            cache.put("key" + i, "value" + i, cache.generation("key" + i));
+        }
+        assertTrue(cache.getUsage() <= capacity, "Usage " + cache.getUsage() + " exceeds capacity");
+        // The most recently inserted rows survive.
+        assertEquals("value9999", cache.get("key9999").value);
+    }
+
+    @Test
+    void testInvalidateRangeDropsOnlyTheRowsInRange() {
+        RowCache cache = new RowCache(1024 * 1024);
+        for (int i = 0; i < 100; i++) {
+            String key = String.format("key%03d", i);
+            cache.put(key, "value" + i, cache.generation(key));
+        }
+        long usage = cache.getUsage();
+        cache.invalidateRange("key010", "key019");
+
+        assertNull(cache.get("key010"));
+        assertNull(cache.get("key019"));
+        assertEquals("value9", cache.get("key009").value);
+        assertEquals("value20", cache.get("key020").value);
+        assertTrue(cache.getUsage() < usage);
+        // A range invalidation races with lookups of any key in it, whatever its shard.
+        long generation = cache.generation("key050");
+        cache.invalidateRange("key200", "key300");
+        cache.put("key050", "stale", generation);
+        assertEquals("value50", cache.get("key050").value);
+    }
+
+    @Test
+    void testLookupIsCachedWhileOtherKeysAreWritten() throws InterruptedException {
+        RowCache cache = new RowCache(1024 * 1024);
+        // A key of another shard than k1's: invalidating it leaves the generation of k1 alone.
+        int candidate = 0;
+        long generationOfK1 = cache.generation("k1");
+        cache.invalidate("k2-" + candidate);
+        while (cache.generation("k1") != generationOfK1) {
+            generationOfK1 = cache.generation("k1");
+            cache.invalidate("k2-" + ++candidate);
+        }
+        String otherKey = "k2-" + candidate;
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            while (writing.get()) {
+                cache.invalidate(otherKey);
+            }
+        });
+        writer.start();
+        try {
+            for (int i = 0; i < 1000; i++) {
+                long generation = cache.generation("k1");
+                cache.put("k1", "value" + i, generation);
+                assertEquals("value" + i, cache.get("k1").value);
+                cache.invalidate("k1");
+            }
+        } finally {
+            writing.set(false);
+            writer.join();
+        }
+    }
+}
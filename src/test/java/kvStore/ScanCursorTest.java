@@ -0,0 +1,156 @@
+package kvStore;
+
+import kvStore.fileStore.SSTableManager;
+import kvStore.fileStore.compression.CompressionCodec;
+import kvStore.log.WriteAheadLog;
+import kvStore.memStore.MemTable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScanCursorTest {
+    private Path tempDir;
+    private StorageEngine storageEngine;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("scan_cursor_test");
+        SSTableManager ssTableManager = new SSTableManager(tempDir.toString());
+        MemTable memTable = new MemTable(ssTableManager, new WriteAheadLog(tempDir.toString()));
+        storageEngine = new StorageEngine(memTable, ssTableManager);
+        // 1000 puts flush the first ones to an SSTable, the rest stay in the MemTable.
+        for (int i = 0; i < 1200; i++) {
+            storageEngine.put(String.format("user:%04d", i), "v" + i);
+        }
+        memTable.awaitFlush();
+        storageEngine.put("order:1", "o1");
+        storageEngine.delete("user:0002");
+        storageEngine.delete("user:1100");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.walk(tempDir)
+                .sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(File::delete); //TODO - handle output
+    }
+
+    @Test
+    void testPagesWithContinuationTokens() throws IOException {
+        ScanCursor.Options options = new ScanCursor.Options().setPrefix("user:").setLimit(50);
+        List<String> keys = new ArrayList<>();
+        String token = null;
+        int pages = 0;
+        do {
+            try (ScanCursor cursor = storageEngine.scan(options.setContinuationToken(token))) {
+                while (cursor.hasNext()) {
+                    keys.add(cursor.next().getKey());
+                }
+                token = cursor.continuationToken();
+            }
+            pages++;
+        } while (token != null);
+
+        assertEquals(24, pages);
+        assertEquals(1198, keys.size());
+        assertEquals("user:0000", keys.get(0));
+        assertEquals("user:0003", keys.get(2));
+        assertEquals("user:1199", keys.get(keys.size() - 1));
+        assertFalse(keys.contains("user:1100"));
+    }
+
+    @Test
+    void testReverseScanWithinBounds() throws IOException {
+        ScanCursor.Options options = new ScanCursor.Options()
+                .setStartKey("user:0995").setEndKey("user:1005").setReverse(true).setLimit(4);
+        try (ScanCursor cursor = storageEngine.scan(options)) {
+            assertEquals(List.of("user:1005", "user:1004", "user:1003", "user:1002"), drainKeys(cursor));
+            options.setContinuationToken(cursor.continuationToken());
+        }
+        try (ScanCursor cursor = storageEngine.scan(options.setLimit(100))) {
+            assertEquals(List.of("user:1001", "user:1000", "user:0999", "user:0998", "user:0997", "user:0996",
+                    "user:0995"), drainKeys(cursor));
+            assertNull(cursor.continuationToken());
+        }
+    }
+
+    @Test
+    void testReversePrefixScanStopsAtThePrefix() throws IOException {
+        storageEngine.put("user;", "after the prefix");
+        try (ScanCursor cursor = storageEngine.scan(new ScanCursor.Options().setPrefix("user:").setReverse(true).setLimit(2))) {
+            assertEquals(List.of("user:1199", "user:1198"), drainKeys(cursor));
+        }
+        try (ScanCursor cursor = storageEngine.scan(new ScanCursor.Options().setPrefix("order:"))) {
+            assertEquals(List.of("order:1"), drainKeys(cursor));
+        }
+    }
+
+    @Test
+    void testNextPreviousAndSeek() throws IOException {
+        try (ScanCursor cursor = storageEngine.scan(new ScanCursor.Options().setPrefix("user:"))) {
+            assertFalse(cursor.hasPrevious());
+            assertEquals("user:0000", cursor.next().getKey());
+            assertEquals("user:0001", cursor.next().getKey());
+            assertEquals("user:0003", cursor.next().getKey());
+            // Like a ListIterator, previous() returns the entry next() just returned.
+            assertEquals("user:0003", cursor.previous().getKey());
+            assertEquals(Map.entry("user:0001", "v1"), cursor.previous());
+            assertEquals("user:0001", cursor.next().getKey());
+
+            cursor.seek("user:0999x");
+            assertEquals("user:1000", cursor.next().getKey());
+            assertEquals("user:1000", cursor.previous().getKey());
+            assertEquals("user:0999", cursor.previous().getKey());
+        }
+    }
+
+    private static List<String> drainKeys(ScanCursor cursor) {
+        List<String> keys = new ArrayList<>();
+        cursor.forEachRemaining(entry -> keys.add(entry.getKey()));
+        return keys;
+    }
+
+    @Test
+    void testOpenCursorOutlivesTheEngineInMappedMode() throws IOException {
+        String directory = Files.createDirectory(tempDir.resolve("mapped")).toString();
+        // Uncompressed, so the cursor reads its blocks straight from the mapping.
+        SSTableManager.Options mapped = new SSTableManager.Options()
+                .setMemoryMapped(true).setCompressionCodec(CompressionCodec.NONE);
+        SSTableManager ssTableManager = new SSTableManager(directory, mapped);
+        MemTable memTable = new MemTable(ssTableManager, new WriteAheadLog(directory));
+        StorageEngine engine = new StorageEngine(memTable, ssTableManager);
+        for (int i = 0; i < 2000; i++) {
+            engine.put(String.format("user:%04d", i), "v" + i);
+        }
+        memTable.awaitFlush();
+
+        List<String> keys = new ArrayList<>();
+        try (ScanCursor cursor = engine.scan(new ScanCursor.Options().setPrefix("user:"))) {
+            for (int i = 0; i < 10; i++) {
+                keys.add(cursor.next().getKey());
+            }
+            // The cursor pins its tables, so closing the engine leaves their files mapped until it is closed.
+            engine.close();
+            keys.addAll(drainKeys(cursor));
+        }
+        assertEquals(2000, keys.size());
+        assertEquals("user:1999", keys.get(keys.size() - 1));
+
+        // The tables were released, not deleted.
+        SSTableManager reopened = new SSTableManager(directory, mapped);
+        assertEquals("v1500", reopened.readFromSSTables("user:1500"));
+        reopened.close();
+    }
+}
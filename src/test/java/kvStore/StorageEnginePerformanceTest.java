@@ -53,6 +53,39 @@ public class StorageEnginePerformanceTest {
         System.out.printf("Get throughput: %.2f ops/sec (%.2f ms total), found %d keys%n",
                 getsPerSecond, getDurationMs, foundCount.get());
 
+        // Measure short range reads; their cost should not grow with the amount of stored data.
+        int numRanges = 10_000;
+        Random random = new Random(42);
+        long rangeStartTime = System.nanoTime();
+        long rangeEntries = 0;
+        for (int i = 0; i < numRanges; i++) {
+            String startKey = "key" + random.nextInt(numOperations);
+            rangeEntries += storageEngine.readKeyRange(startKey, startKey + "~").size();
+        }
+        double rangeDurationMs = (System.nanoTime() - rangeStartTime) / 1_000_000.0;
+        System.out.printf("Range read throughput: %.2f ranges/sec (%.2f ms total), %.2f entries per range%n",
+                numRanges / (rangeDurationMs / 1000.0), rangeDurationMs, rangeEntries / (double) numRanges);
+
+        // Measure the first page of a large listing: a cursor reads 50 entries, readKeyRange the whole range.
+        int numPages = 1_000;
+        long pageStartTime = System.nanoTime();
+        for (int i = 0; i < numPages; i++) {
+            try (ScanCursor cursor = storageEngine.scan(new ScanCursor.Options().setPrefix("key1").setLimit(50))) {
+                while (cursor.hasNext()) {
+                    cursor.next();
+                }
+            }
+        }
+        double pageDurationMs = (System.nanoTime() - pageStartTime) / 1_000_000.0;
+        long fullRangeStartTime = System.nanoTime();
+        int fullRangeSize = 0;
+        for (int i = 0; i < numPages / 10; i++) {
+            fullRangeSize = storageEngine.readKeyRange("key1", "key1~").size();
+        }
+        double fullRangeDurationMs = (System.nanoTime() - fullRangeStartTime) / 1_000_000.0;
+        System.out.printf("Page of 50 via cursor: %.3f ms, via readKeyRange of %d entries: %.3f ms%n",
+                pageDurationMs / numPages, fullRangeSize, fullRangeDurationMs / (numPages / 10));
+
         // Trigger manual compaction and measure its duration.
         System.out.println("Triggering manual compaction...");
         long compactStartTime = System.nanoTime();
@@ -108,6 +141,57 @@ Performed already 100000/100000 get operations...
 Get throughput: 4447,95 ops/sec (22482,26 ms total), found 100000 keys
 Triggering manual compaction...
 Compaction completed in: 39,24 ms
+Temporary directory cleaned up.
+     */
+
+    /*
+    Performance test result after switching SSTables to the binary block format with a block index
+    (point lookups read a single 4 KB block instead of scanning the whole file):
+    Performing 100000 put operations...
+Put throughput: 94448,39 ops/sec (1058,78 ms total)
+Performing 100000 get operations...
+Get throughput: 39625,62 ops/sec (2523,62 ms total), found 100000 keys
+Triggering manual compaction...
+Compaction completed in: 319,90 ms
+Temporary directory cleaned up.
+     */
+
+    /*
+    Performance test result after streaming range reads through a k-way merge of the MemTable and SSTables
+    (100 SSTables, each range seeks every table once and reads only the entries up to its end key):
+    Performing 100000 put operations...
+Put throughput: 77174,75 ops/sec (1295,76 ms total)
+Performing 100000 get operations...
+Get throughput: 71637,94 ops/sec (1395,91 ms total), found 100000 keys
+Range read throughput: 8728,55 ranges/sec (1145,67 ms total), 5,86 entries per range
+Triggering manual compaction...
+Compaction completed in: 435,53 ms
+Temporary directory cleaned up.
+     */
+
+    /*
+    Performance test result after recording each SSTable's key range and skipping tables outside it:
+    Performing 100000 put operations...
+Put throughput: 74247,19 ops/sec (1346,85 ms total)
+Performing 100000 get operations...
+Get throughput: 114434,58 ops/sec (873,86 ms total), found 100000 keys
+Range read throughput: 24111,84 ranges/sec (414,73 ms total), 5,86 entries per range
+Triggering manual compaction...
+Compaction completed in: 307,73 ms
+Temporary directory cleaned up.
+     */
+
+    /*
+    Performance test result after adding the scan cursor (a 50-entry page of the "key1" prefix against
+    materialising the whole 11111-entry range with readKeyRange):
+    Performing 100000 put operations...
+Put throughput: 55842,28 ops/sec (1790,76 ms total)
+Performing 100000 get operations...
+Get throughput: 60822,75 ops/sec (1644,12 ms total), found 100000 keys
+Range read throughput: 13555,11 ranges/sec (737,73 ms total), 5,86 entries per range
+Page of 50 via cursor: 0,383 ms, via readKeyRange of 11111 entries: 15,798 ms
+Triggering manual compaction...
+Compaction completed in: 437,59 ms
 Temporary directory cleaned up.
      */
 }
@@ -0,0 +1,73 @@
+package kvStore.bloomFilter;
+
+import java.util.Random;
+
+public class BlockedBloomFilterPerformanceTest {
+    public static void main(String[] args) {
+        double falsePositiveRate = 0.01;
+        for (int numElements : new int[]{1_000_000, 10_000_000}) {
+            // Both filters get the same number of bits, up to the blocked filter's rounding to whole blocks.
+            BloomFilter<String> classic = new BloomFilter<>(numElements, falsePositiveRate);
+            BlockedBloomFilter blocked = new BlockedBloomFilter(numElements, falsePositiveRate);
+            Random random = new Random(42);
+            for (int i = 0; i < numElements; i++) {
+                long hash = random.nextLong();
+                classic.addHash(hash);
+                blocked.addHash(hash);
+            }
+
+            // Hashes of keys not added, computed up front so only the probes are timed. Probing a filter far
+            // bigger than the CPU caches is bound by the cache misses of its random reads.
+            int testCount = 10_000_000;
+            long[] probes = new long[testCount];
+            for (int i = 0; i < testCount; i++) {
+                probes[i] = random.nextLong();
+            }
+            System.out.printf("%,d keys: classic %,d bytes with %d hash functions, blocked %,d bytes%n",
+                    numElements, classic.sizeInBytes(), classic.getNumHashFunctions(), blocked.sizeInBytes());
+            for (int round = 0; round < 3; round++) {
+                run("classic", classic, probes);
+                run("blocked", blocked, probes);
+            }
+        }
+    }
+
+    private static void run(String label, KeyFilter filter, long[] probes) {
+        int falsePositives = 0;
+        long startTime = System.nanoTime();
+        for (long hash : probes) {
+            if (filter.containsHash(hash)) {
+                falsePositives++;
+            }
+        }
+        double durationMs = (System.nanoTime() - startTime) / 1_000_000.0;
+        System.out.printf("[%s] %d probes in %.1f ms (%.1f M/s), false positive rate %.4f%n",
+                label, probes.length, durationMs, probes.length / durationMs / 1000, falsePositives / (double) probes.length);
+    }
+}
+
+/*
+Both filters at 1% with equal memory, probed with 10M hashes of absent keys. Single-core sandbox VM, so the
+numbers move by 20% from run to run.
+
+1.000.000 keys: classic 1.198.136 bytes with 7 hash functions, blocked 1.198.144 bytes
+[classic] 10000000 probes in 255,4 ms (39,2 M/s), false positive rate 0,0100
+[blocked] 10000000 probes in 181,1 ms (55,2 M/s), false positive rate 0,0128
+[classic] 10000000 probes in 267,5 ms (37,4 M/s), false positive rate 0,0100
+[blocked] 10000000 probes in 132,7 ms (75,3 M/s), false positive rate 0,0128
+[classic] 10000000 probes in 258,3 ms (38,7 M/s), false positive rate 0,0100
+[blocked] 10000000 probes in 134,3 ms (74,5 M/s), false positive rate 0,0128
+10.000.000 keys: classic 11.981.328 bytes with 7 hash functions, blocked 11.981.376 bytes
+[classic] 10000000 probes in 525,2 ms (19,0 M/s), false positive rate 0,0100
+[blocked] 10000000 probes in 610,5 ms (16,4 M/s), false positive rate 0,0129
+[classic] 10000000 probes in 478,9 ms (20,9 M/s), false positive rate 0,0100
+[blocked] 10000000 probes in 671,8 ms (14,9 M/s), false positive rate 0,0129
+[classic] 10000000 probes in 520,0 ms (19,2 M/s), false positive rate 0,0100
+[blocked] 10000000 probes in 639,6 ms (15,6 M/s), false positive rate 0,0129
+
+The blocked filter is about twice as fast while it fits in the caches, which is the case for the filter of a
+single table. At 12 MB both are bound by one memory miss per probe of an absent key: the classic filter
+usually stops at its first or second bit. Checking the eight words with an early exit instead of the
+branch-free OR was faster there (16-21 M/s) but slower for the 1M-key filter (27-35 M/s).
+The blocked filter's false positive rate is 1.28% instead of 1.00% for the same memory.
+ */
@@ -0,0 +1,116 @@
+package kvStore.bloomFilter;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+
+public class BlockedBloomFilterTest {
+
+    @Test
+    public void testAddAndContains() {
+        BlockedBloomFilter bf = new BlockedBloomFilter(100, 0.01);
+        bf.add("apple");
+        bf.add("banana");
+
+        assertTrue(bf.contains("apple"), "Bloom filter should contain 'apple'");
+        assertTrue(bf.contains("banana"), "Bloom filter should contain 'banana'");
+        assertFalse(bf.contains("cherry"), "Bloom filter should not contain 'cherry'");
+    }
+
+    @Test
+    public void testSizeMatchesClassicFilter() {
+        for (int n : new int[]{1, 100, 100_000}) {
+            BlockedBloomFilter blocked = new BlockedBloomFilter(n, 0.01);
+            BloomFilter<String> classic = new BloomFilter<>(n, 0.01);
+            // Rounded up to whole 64-byte blocks.
+            assertEquals(0, blocked.sizeInBytes() % 64);
+            assertTrue(blocked.sizeInBytes() >= classic.getBitsetSize() / 8);
+            assertTrue(blocked.sizeInBytes() < classic.getBitsetSize() / 8 + 64);
+        }
+    }
+
+    @Test
+    public void testEachKeySetsOneBitPerWordOfOneBlock() throws IOException {
+        BlockedBloomFilter bf = new BlockedBloomFilter(10_000, 0.01);
+        bf.add("key");
+        long[] words = words(bf);
+        int firstSet = -1;
+        for (int i = 0; i < words.length; i++) {
+            if (words[i] != 0) {
+                if (firstSet < 0) {
+                    firstSet = i;
+                }
+                assertEquals(1, Long.bitCount(words[i]));
+                assertTrue(i < firstSet + 8, "Bits outside one block: words " + firstSet + " and " + i);
+            }
+        }
+        assertEquals(0, firstSet % 8);
+    }
+
+    @Test
+    public void testMeasuredFalsePositiveRateIsCloseToTarget() {
+        int n = 100_000;
+        int trials = 200_000;
+        for (double p : new double[]{0.1, 0.01}) {
+            BlockedBloomFilter bf = new BlockedBloomFilter(n, p);
+            for (int i = 0; i < n; i++) {
+                bf.add("tenant42:orders:" + i);
+            }
+            int falsePositives = 0;
+            for (int i = n; i < n + trials; i++) {
+                if (bf.contains("tenant42:orders:" + i)) {
+                    falsePositives++;
+                }
+            }
+            double observedRate = (double) falsePositives / trials;
+            // Uneven block loads cost some accuracy compared to a classic filter of the same size.
+            assertTrue(observedRate < p * 2, "Observed rate " + observedRate + " for a target of " + p);
+        }
+    }
+
+    @Test
+    public void testSerialization() throws IOException {
+        BlockedBloomFilter bf = new BlockedBloomFilter(100, 0.01);
+        bf.add("test");
+        bf.add("serialize");
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        bf.writeTo(baos);
+        assertEquals(9 + bf.sizeInBytes(), baos.size());
+
+        KeyFilter deserialized = KeyFilter.readFrom(new ByteArrayInputStream(baos.toByteArray()));
+        BlockedBloomFilter deserializedBf = assertInstanceOf(BlockedBloomFilter.class, deserialized);
+        assertEquals(bf.getNumBlocks(), deserializedBf.getNumBlocks());
+        assertTrue(deserializedBf.contains("test"));
+        assertTrue(deserializedBf.contains("serialize"));
+        assertFalse(deserializedBf.contains("other"));
+    }
+
+    @Test
+    public void testReadFromDispatchesOnFilterType() throws IOException {
+        BloomFilter<String> classic = new BloomFilter<>(100, 0.01);
+        classic.add("test");
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        classic.writeTo(baos);
+        KeyFilter deserialized = KeyFilter.readFrom(new ByteArrayInputStream(baos.toByteArray()));
+        assertInstanceOf(BloomFilter.class, deserialized);
+        assertTrue(deserialized.containsHash(KeyFilter.hash("test")));
+
+        assertThrows(IOException.class, () -> KeyFilter.readFrom(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5})));
+        assertThrows(IllegalArgumentException.class, () -> new BlockedBloomFilter(0, 0.01));
+    }
+
+    // The bit words of a filter, read back from its binary format.
+    private static long[] words(BlockedBloomFilter bf) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        bf.writeTo(baos);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        in.skipBytes(9);
+        long[] words = new long[(int) (bf.sizeInBytes() / 8)];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = in.readLong();
+        }
+        return words;
+    }
+}
@@ -5,27 +5,55 @@ public class BloomFilterPerformanceTest {
         int numElements = 1_000_000;
         double falsePositiveRate = 0.01; // 1% desired false positive probability
 
-        // Create and populate the Bloom filter.
-        BloomFilter<String> bloomFilter = new BloomFilter<>(numElements, falsePositiveRate);
-        for (int i = 0; i < numElements; i++) {
-            bloomFilter.add("element_" + i);
-        }
-        System.out.println("Bloom filter created with bitset size " + bloomFilter.getBitsetSize()
-                + " and " + bloomFilter.getNumHashFunctions() + " hash functions.");
+        // Sequential keys, and keys sharing a long prefix as produced by "tenant:entity:id" schemas.
+        for (String prefix : new String[]{"element_", "tenant42:orders:"}) {
+            // Create and populate the Bloom filter.
+            BloomFilter<String> bloomFilter = new BloomFilter<>(numElements, falsePositiveRate);
+            for (int i = 0; i < numElements; i++) {
+                bloomFilter.add(prefix + i);
+            }
+            System.out.println("Bloom filter created with bitset size " + bloomFilter.getBitsetSize()
+                    + " and " + bloomFilter.getNumHashFunctions() + " hash functions.");
 
-        // Perform membership tests on elements not added to the filter.
-        int falsePositives = 0;
-        int testCount = 100_000;
-        long startTime = System.nanoTime();
-        for (int i = numElements; i < numElements + testCount; i++) {
-            if (bloomFilter.contains("element_" + i)) {
-                falsePositives++;
+            // Perform membership tests on elements not added to the filter; the first rounds warm up the JIT.
+            int testCount = 1_000_000;
+            String[] keys = new String[testCount];
+            for (int i = 0; i < testCount; i++) {
+                keys[i] = prefix + (numElements + i);
+            }
+            for (int round = 0; round < 3; round++) {
+                int falsePositives = 0;
+                long startTime = System.nanoTime();
+                for (String key : keys) {
+                    if (bloomFilter.contains(key)) {
+                        falsePositives++;
+                    }
+                }
+                long endTime = System.nanoTime();
+                double durationMs = (endTime - startTime) / 1_000_000.0;
+                System.out.printf("[%s] %d membership tests in %.1f ms (%.1f M/s), false positive rate %.4f%n",
+                        prefix, testCount, durationMs, testCount / durationMs / 1000, falsePositives / (double) testCount);
             }
         }
-        long endTime = System.nanoTime();
-        double durationMs = (endTime - startTime) / 1_000_000.0;
-        System.out.println("Performed " + testCount + " membership tests in " + durationMs + " ms.");
-        System.out.println("False positives: " + falsePositives);
     }
 }
 
+/*
+64-bit hash with Kirsch-Mitzenmacher probing over a long[]:
+
+Bloom filter created with bitset size 9585059 and 7 hash functions.
+[element_] 1000000 membership tests in 101,9 ms (9,8 M/s), false positive rate 0,0101
+[element_] 1000000 membership tests in 206,9 ms (4,8 M/s), false positive rate 0,0101
+[element_] 1000000 membership tests in 145,6 ms (6,9 M/s), false positive rate 0,0101
+Bloom filter created with bitset size 9585059 and 7 hash functions.
+[tenant42:orders:] 1000000 membership tests in 103,0 ms (9,7 M/s), false positive rate 0,0101
+[tenant42:orders:] 1000000 membership tests in 89,6 ms (11,2 M/s), false positive rate 0,0101
+[tenant42:orders:] 1000000 membership tests in 82,9 ms (12,1 M/s), false positive rate 0,0101
+
+The previous filter, derived from String.hashCode() with hash2 = hash1 >>> 16, on the same keys. Strings cache
+their hashCode, so after the first round its probes did not hash at all; SSTableManager now hashes a key once
+per lookup for all tables instead.
+
+[element_] false positive rate 0,0200, 9,0 / 14,7 / 13,8 M/s
+[tenant42:orders:] false positive rate 0,0164, 5,7 / 15,8 / 38,2 M/s
+ */
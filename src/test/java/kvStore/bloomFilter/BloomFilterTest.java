@@ -64,27 +64,60 @@ public class BloomFilterTest {
     }
 
     @Test
-    public void testSerialization() throws IOException, ClassNotFoundException {
+    public void testMeasuredFalsePositiveRateMatchesTarget() {
+        int n = 100_000;
+        int trials = 200_000;
+        for (double p : new double[]{0.1, 0.01, 0.001}) {
+            BloomFilter<String> bf = new BloomFilter<>(n, p);
+            // Keys with long shared prefixes, which a weak hash maps to clustered bits.
+            for (int i = 0; i < n; i++) {
+                bf.add("tenant42:orders:" + i);
+            }
+            int falsePositives = 0;
+            for (int i = n; i < n + trials; i++) {
+                if (bf.contains("tenant42:orders:" + i)) {
+                    falsePositives++;
+                }
+            }
+            double observedRate = (double) falsePositives / trials;
+            // Rounding k and m up makes the filter slightly better than configured, never much worse.
+            assertTrue(observedRate < p * 1.25, "Observed rate " + observedRate + " for a target of " + p);
+            assertTrue(observedRate > p * 0.3, "Observed rate " + observedRate + " for a target of " + p);
+        }
+    }
+
+    @Test
+    public void testSerialization() throws IOException {
         BloomFilter<String> bf = new BloomFilter<>(100, 0.01);
         bf.add("test");
         bf.add("serialize");
 
-        // Serialize the Bloom filter to a byte array.
+        // Write the Bloom filter to a byte array.
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
-            oos.writeObject(bf);
-        }
+        bf.writeTo(baos);
         byte[] serializedData = baos.toByteArray();
+        // Header followed by the bit words, nothing else.
+        assertEquals(13 + (bf.getBitsetSize() + 63) / 64 * 8, serializedData.length);
 
-        // Deserialize the Bloom filter from the byte array.
-        BloomFilter<String> deserializedBf;
-        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(serializedData))) {
-            deserializedBf = (BloomFilter<String>) ois.readObject();
-        }
+        // Read the Bloom filter back from the byte array.
+        BloomFilter<String> deserializedBf = BloomFilter.readFrom(new ByteArrayInputStream(serializedData));
+        assertEquals(bf.getBitsetSize(), deserializedBf.getBitsetSize());
+        assertEquals(bf.getNumHashFunctions(), deserializedBf.getNumHashFunctions());
         // Verify that the deserialized filter contains the same elements.
         assertTrue(deserializedBf.contains("test"), "Deserialized Bloom filter should contain 'test'");
         assertTrue(deserializedBf.contains("serialize"), "Deserialized Bloom filter should contain 'serialize'");
         // Check that an element not added is not falsely reported as present.
         assertFalse(deserializedBf.contains("other"), "Deserialized Bloom filter should not contain 'other'");
     }
+
+    @Test
+    public void testUnknownFormatIsRejected() throws IOException {
+        // A filter persisted through Java serialization starts with the stream magic 0xACED.
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject("not a filter");
+        }
+        assertThrows(IOException.class, () -> BloomFilter.readFrom(new ByteArrayInputStream(baos.toByteArray())));
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter<String>(0, 0.01));
+    }
 }
@@ -0,0 +1,71 @@
+package kvStore.bloomFilter;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+
+public class XorFilterTest {
+
+    @Test
+    public void testContainsEveryKey() {
+        for (int n : new int[]{0, 1, 2, 10, 1000, 100_000}) {
+            long[] hashes = new long[n];
+            for (int i = 0; i < n; i++) {
+                hashes[i] = KeyFilter.hash("key" + i);
+            }
+            XorFilter filter = XorFilter.build(hashes, n);
+            for (int i = 0; i < n; i++) {
+                assertTrue(filter.containsHash(hashes[i]), "Missing key" + i + " of " + n);
+            }
+        }
+    }
+
+    @Test
+    public void testDuplicateHashesAreAllowed() {
+        long[] hashes = new long[1000];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = KeyFilter.hash("key" + i / 2);
+        }
+        XorFilter filter = XorFilter.build(hashes, hashes.length);
+        for (long hash : hashes) {
+            assertTrue(filter.containsHash(hash));
+        }
+    }
+
+    @Test
+    public void testFalsePositiveRateAndSize() {
+        int n = 100_000;
+        long[] hashes = new long[n];
+        for (int i = 0; i < n; i++) {
+            hashes[i] = KeyFilter.hash("tenant42:orders:" + i);
+        }
+        XorFilter filter = XorFilter.build(hashes, n);
+        int falsePositives = 0;
+        int trials = 1_000_000;
+        for (int i = n; i < n + trials; i++) {
+            if (filter.containsHash(KeyFilter.hash("tenant42:orders:" + i))) {
+                falsePositives++;
+            }
+        }
+        double observedRate = (double) falsePositives / trials;
+        // 1/256 with 8-bit fingerprints.
+        assertTrue(observedRate > 0.003 && observedRate < 0.005, "Observed rate " + observedRate);
+        assertTrue(filter.sizeInBytes() * 8.0 / n < 10, "Bits per key: " + filter.sizeInBytes() * 8.0 / n);
+    }
+
+    @Test
+    public void testSerialization() throws IOException {
+        long[] hashes = {KeyFilter.hash("test"), KeyFilter.hash("serialize")};
+        XorFilter filter = XorFilter.build(hashes, hashes.length);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        filter.writeTo(baos);
+        assertEquals(17 + filter.sizeInBytes(), baos.size());
+
+        KeyFilter deserialized = KeyFilter.readFrom(new ByteArrayInputStream(baos.toByteArray()));
+        assertInstanceOf(XorFilter.class, deserialized);
+        assertTrue(deserialized.containsHash(KeyFilter.hash("test")));
+        assertTrue(deserialized.containsHash(KeyFilter.hash("serialize")));
+        assertFalse(deserialized.containsHash(KeyFilter.hash("other")));
+    }
+}
@@ -0,0 +1,92 @@
+package kvStore.fileStore;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BlockCacheTest {
+
+    // Builds a block of roughly the requested size.
+    private static Block block(int size) {
+        BlockBuilder builder = new BlockBuilder();
+        builder.add(Entry.value("key", "x".repeat(size)));
+        return new Block(builder.finish());
+    }
+
+    @Test
+    void testHitAndMissCounters() {
+        BlockCache cache = new BlockCache(1024 * 1024);
+        Block block = block(100);
+
+        assertNull(cache.get(1, 0));
+        cache.put(1, 0, block);
+        assertSame(block, cache.get(1, 0));
+        assertSame(block, cache.get(1, 0));
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    void testUsageStaysWithinCapacity() {
+        long capacity = 64 * 1024;
+        BlockCache cache = new BlockCache(capacity);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(1, i * 4096L, block(2000));
+        }
+        assertTrue(cache.getUsage() <= capacity, "Usage " + cache.getUsage() + " exceeds capacity");
+        assertTrue(cache.getEvictionCount() > 0);
+    }
+
+    @Test
+    void testScanDoesNotEvictHotBlocks() {
+        BlockCache cache = new BlockCache(16 * 64 * 1024);
+        // Hot blocks are read twice and get promoted to the protected segment.
+        for (int i = 0; i < 64; i++) {
+            cache.put(1, i, block(1000));
+            cache.get(1, i);
+        }
+        // A long scan touching each block once.
+        for (int i = 0; i < 10_000; i++) {
+            cache.put(2, i, block(1000));
+        }
+        for (int i = 0; i < 64; i++) {
+            assertNotNull(cache.get(1, i), "Hot block " + i + " was evicted by the scan");
+        }
+    }
+
+    @Test
+    void testInvalidateDropsOnlyThatFile() {
+        BlockCache cache = new BlockCache(1024 * 1024);
+        cache.put(1, 0, block(100));
+        cache.put(1, 200, block(100));
+        cache.put(2, 0, block(100));
+
+        cache.invalidate(1);
+
+        assertNull(cache.get(1, 0));
+        assertNull(cache.get(1, 200));
+        assertNotNull(cache.get(2, 0));
+    }
+
+    @Test
+    void testInvalidateAfterPromotionsAndEvictions() {
+        long capacity = 16 * 16 * 1024;
+        BlockCache cache = new BlockCache(capacity);
+        for (int i = 0; i < 2000; i++) {
+            cache.put(i % 3, i, block(1000));
+            if (i % 2 == 0) {
+                cache.get(i % 3, i);
+            }
+        }
+        long usage = cache.getUsage();
+        cache.invalidate(0);
+        cache.invalidate(1);
+        cache.invalidate(2);
+        assertEquals(0, cache.getUsage(), "Usage was " + usage + " before invalidating every file");
+
+        cache.put(0, 0, block(100));
+        assertNotNull(cache.get(0, 0));
+    }
+}
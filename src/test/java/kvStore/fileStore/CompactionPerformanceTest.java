@@ -0,0 +1,314 @@
+package kvStore.fileStore;
+
+import kvStore.fileStore.compression.CompressionCodec;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class CompactionPerformanceTest {
+
+    public static void main(String[] args) throws Exception {
+        int numTables = 10;
+        // Peak heap during compaction should stay flat while the data grows.
+        for (int entriesPerTable : new int[]{20_000, 80_000}) {
+            Path directory = Files.createTempDirectory("compaction_perf_test");
+            try {
+                run(directory, numTables, entriesPerTable);
+            } finally {
+                deleteDirectory(directory);
+            }
+        }
+        // Scaling of one large compaction with the number of sub-compactions; the first run warms up the JIT.
+        for (int subcompactions : new int[]{1, 1, 2, 4}) {
+            Path directory = Files.createTempDirectory("compaction_perf_test");
+            try {
+                runSubcompactions(directory, subcompactions);
+            } finally {
+                deleteDirectory(directory);
+            }
+        }
+        // Write and read amplification of compacting everything after each flush against the strategies.
+        for (String mode : List.of("full", "leveled", "size-tiered")) {
+            Path directory = Files.createTempDirectory("compaction_perf_test");
+            try {
+                runAmplification(directory, mode);
+            } finally {
+                deleteDirectory(directory);
+            }
+        }
+        // Point read latency while a full compaction runs, with compaction writes unlimited and limited.
+        for (RateLimiter rateLimiter : new RateLimiter[]{null, new RateLimiter(16L * 1024 * 1024)}) {
+            Path directory = Files.createTempDirectory("compaction_perf_test");
+            try {
+                runReadLatencyDuringCompaction(directory, rateLimiter);
+            } finally {
+                deleteDirectory(directory);
+            }
+        }
+    }
+
+    private static void runReadLatencyDuringCompaction(Path directory, RateLimiter rateLimiter) throws Exception {
+        SSTableManager manager = new SSTableManager(directory.toString(), new SSTableManager.Options()
+                .setCompressionCodec(CompressionCodec.NONE)
+                .setTargetFileSize(8L * 1024 * 1024));
+        for (int table = 0; table < 10; table++) {
+            Map<String, String> data = new TreeMap<>();
+            for (int i = 0; i < 80_000; i++) {
+                data.put(String.format("key%010d", i * 10 + table), "value" + i + "-" + "x".repeat(64));
+            }
+            manager.writeToSSTable(data);
+            Thread.sleep(2);
+        }
+        // Reopen with the limiter, so only the compaction is limited.
+        manager = new SSTableManager(directory.toString(), new SSTableManager.Options()
+                .setCompressionCodec(CompressionCodec.NONE)
+                .setTargetFileSize(8L * 1024 * 1024)
+                .setRateLimiter(rateLimiter));
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            manager.readFromSSTables(String.format("key%010d", random.nextInt(800_000)));
+        }
+        long[] idle = readLatencies(manager, random, null, 100_000);
+
+        SSTableManager compacting = manager;
+        long[] compactionMs = new long[1];
+        Thread compaction = new Thread(() -> {
+            long startTime = System.nanoTime();
+            compacting.compact();
+            compactionMs[0] = (System.nanoTime() - startTime) / 1_000_000;
+        });
+        compaction.start();
+        long[] busy = readLatencies(manager, random, compaction, 10_000_000);
+        compaction.join();
+
+        String mode = rateLimiter == null ? "unlimited" : rateLimiter.getBytesPerSecond() / (1024 * 1024) + " MB/s";
+        System.out.printf("[%s] Idle reads p50 %.1f us, p99 %.1f us; during compaction (%d ms, throttled %d ms): "
+                        + "p50 %.1f us, p99 %.1f us, max %.1f us%n",
+                mode, percentile(idle, 50), percentile(idle, 99), compactionMs[0],
+                rateLimiter == null ? 0 : rateLimiter.getThrottledNanos(RateLimiter.Priority.BACKGROUND) / 1_000_000,
+                percentile(busy, 50), percentile(busy, 99), percentile(busy, 100));
+    }
+
+    // Latency of random point reads, sorted: up to maxReads of them, and only while the thread runs if given.
+    private static long[] readLatencies(SSTableManager manager, Random random, Thread until, int maxReads) {
+        long[] latencies = new long[maxReads];
+        int count = 0;
+        while (count < latencies.length && (until == null || until.isAlive())) {
+            String key = String.format("key%010d", random.nextInt(800_000));
+            long startTime = System.nanoTime();
+            manager.readFromSSTables(key);
+            latencies[count++] = System.nanoTime() - startTime;
+        }
+        long[] measured = Arrays.copyOf(latencies, count);
+        Arrays.sort(measured);
+        return measured;
+    }
+
+    // In microseconds.
+    private static double percentile(long[] sorted, int percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * (long) percentile / 100))] / 1000.0;
+    }
+
+    private static void runSubcompactions(Path directory, int subcompactions) throws Exception {
+        SSTableManager manager = new SSTableManager(directory.toString(), new SSTableManager.Options()
+                .setCompressionCodec(CompressionCodec.NONE)
+                .setTargetFileSize(8L * 1024 * 1024)
+                .setMaxSubcompactions(subcompactions));
+        for (int table = 0; table < 10; table++) {
+            Map<String, String> data = new TreeMap<>();
+            for (int i = 0; i < 80_000; i++) {
+                data.put(String.format("key%010d", i * 10 + table), "value" + i + "-" + "x".repeat(64));
+            }
+            manager.writeToSSTable(data);
+            Thread.sleep(2);
+        }
+        long inputBytes = directorySize(directory);
+        long startTime = System.nanoTime();
+        int tableCount = manager.compact();
+        double durationMs = (System.nanoTime() - startTime) / 1_000_000.0;
+        System.out.printf("[%d sub-compactions, %d cores] Compacted %.1f MB into %d tables in %.2f ms: %.2f MB/s%n",
+                subcompactions, Runtime.getRuntime().availableProcessors(), inputBytes / 1e6, tableCount, durationMs,
+                inputBytes / 1e6 / (durationMs / 1000));
+    }
+
+    private static void runAmplification(Path directory, String mode) throws Exception {
+        CompactionStrategy strategy = mode.equals("size-tiered") ? new SizeTieredCompactionStrategy()
+                : new LeveledCompactionStrategy(4, 8L * 1024 * 1024, 10);
+        SSTableManager manager = new SSTableManager(directory.toString(), new SSTableManager.Options()
+                .setCompressionCodec(CompressionCodec.NONE)
+                .setTargetFileSize(2L * 1024 * 1024)
+                .setCompactionStrategy(strategy));
+        Random random = new Random(42);
+        long flushedBytes = 0;
+        long startTime = System.nanoTime();
+        for (int batch = 0; batch < 60; batch++) {
+            Map<String, String> data = new TreeMap<>();
+            for (int i = 0; i < 20_000; i++) {
+                data.put(String.format("key%010d", random.nextInt(1_000_000)), "value" + batch + "-" + "x".repeat(64));
+            }
+            manager.writeToSSTable(data);
+            List<SSTable> level0 = manager.getLevels().get(0);
+            flushedBytes += level0.get(level0.size() - 1).fileSize();
+            if (mode.equals("full")) {
+                manager.compact();
+            } else {
+                manager.compactAsNeeded();
+            }
+        }
+        double durationMs = (System.nanoTime() - startTime) / 1_000_000.0;
+        List<List<SSTable>> levels = manager.getLevels();
+        StringBuilder shape = new StringBuilder();
+        long totalBytes = 0;
+        for (List<SSTable> level : levels) {
+            shape.append(shape.length() == 0 ? "" : "/").append(level.size());
+            for (SSTable table : level) {
+                totalBytes += table.fileSize();
+            }
+        }
+        System.out.printf("[%s] Flushed %.1f MB, compaction wrote %.1f MB: write amplification %.2f, %.2f ms, "
+                        + "%.1f MB on disk, tables per level %s%n",
+                mode, flushedBytes / 1e6, manager.getCompactionBytesWritten() / 1e6,
+                (flushedBytes + manager.getCompactionBytesWritten()) / (double) flushedBytes, durationMs,
+                totalBytes / 1e6, shape);
+
+        // Read amplification: tables whose key range covers a key, i.e. that a point read checks the Bloom filter of.
+        int numReads = 100_000;
+        long candidates = 0;
+        for (int i = 0; i < numReads; i++) {
+            String key = String.format("key%010d", random.nextInt(1_000_000));
+            for (List<SSTable> level : levels) {
+                for (SSTable table : level) {
+                    if (table.properties().mayContain(key)) {
+                        candidates++;
+                    }
+                }
+            }
+        }
+        long readStartTime = System.nanoTime();
+        for (int i = 0; i < numReads; i++) {
+            manager.readFromSSTables(String.format("key%010d", random.nextInt(1_000_000)));
+        }
+        double readDurationMs = (System.nanoTime() - readStartTime) / 1_000_000.0;
+        System.out.printf("[%s] Read amplification %.2f tables per lookup, %.2f lookups/sec%n",
+                mode, candidates / (double) numReads, numReads / (readDurationMs / 1000));
+    }
+
+    private static void deleteDirectory(Path directory) throws Exception {
+        Files.walk(directory)
+                .sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(File::delete);
+    }
+
+    private static void run(Path directory, int numTables, int entriesPerTable) throws Exception {
+        SSTableManager manager = new SSTableManager(directory.toString(),
+                new SSTableManager.Options().setCompressionCodec(CompressionCodec.NONE).setTargetFileSize(16L * 1024 * 1024));
+        for (int table = 0; table < numTables; table++) {
+            // Every table covers the whole key space, so each key is overwritten numTables times.
+            Map<String, String> data = new TreeMap<>();
+            for (int i = 0; i < entriesPerTable; i++) {
+                int id = i * numTables + table;
+                data.put(String.format("key%010d", id % (entriesPerTable * numTables / 2)), "value" + id + "-" + "x".repeat(64));
+            }
+            manager.writeToSSTable(data);
+            Thread.sleep(2);
+        }
+        long inputBytes = directorySize(directory);
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long baseline = memory.getHeapMemoryUsage().getUsed();
+        long[] peak = {baseline};
+        Thread sampler = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                peak[0] = Math.max(peak[0], memory.getHeapMemoryUsage().getUsed());
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        sampler.start();
+        long startTime = System.nanoTime();
+        int tableCount = manager.compact();
+        double durationMs = (System.nanoTime() - startTime) / 1_000_000.0;
+        sampler.interrupt();
+        sampler.join();
+
+        System.out.printf("[%d entries] Compacted %.1f MB into %d tables in %.2f ms: %.2f MB/s, peak heap growth %.1f MB%n",
+                numTables * entriesPerTable, inputBytes / 1e6, tableCount, durationMs,
+                inputBytes / 1e6 / (durationMs / 1000), (peak[0] - baseline) / 1e6);
+    }
+
+    private static long directorySize(Path directory) throws Exception {
+        try (var files = Files.list(directory)) {
+            return files.filter(path -> path.toString().endsWith(".sst")).mapToLong(path -> path.toFile().length()).sum();
+        }
+    }
+
+    /*
+    Result with the previous compaction, which merged every table into one TreeMap before writing:
+[200000 entries] Compacted 8,4 MB into 1 tables in 580,28 ms: 14,48 MB/s, peak heap growth 45,1 MB
+[800000 entries] Compacted 33,6 MB into 1 tables in 1192,23 ms: 28,19 MB/s, peak heap growth 149,2 MB
+     */
+
+    /*
+    Result with streaming compaction into tables of at most 16 MB:
+[200000 entries] Compacted 8,4 MB into 1 tables in 675,49 ms: 12,44 MB/s, peak heap growth 26,2 MB
+[800000 entries] Compacted 33,6 MB into 2 tables in 1384,93 ms: 24,26 MB/s, peak heap growth 27,7 MB
+     */
+
+    /*
+    Result with leveled compaction (level 0 trigger 4 tables, level 1 8 MB, x10 per level, 2 MB tables),
+    against compacting all tables after every flush:
+[200000 entries] Compacted 8,4 MB into 1 tables in 603,39 ms: 13,92 MB/s, peak heap growth 26,2 MB
+[800000 entries] Compacted 33,6 MB into 2 tables in 1113,96 ms: 30,17 MB/s, peak heap growth 27,7 MB
+[full] Flushed 95,1 MB, compaction wrote 2000,8 MB: write amplification 22,04, 29233,18 ms, tables per level 0/27
+[leveled] Flushed 95,1 MB, compaction wrote 385,4 MB: write amplification 5,05, 8582,61 ms, tables per level 0/4/26
+     */
+
+    /*
+    Result with the size-tiered strategy (size ratio 1%, merge width 4, space amplification 200%); read
+    amplification counts the tables whose key range covers a key, lookup throughput includes the Bloom filters:
+[200000 entries] Compacted 8,4 MB into 1 tables in 398,88 ms: 21,06 MB/s, peak heap growth 26,2 MB
+[800000 entries] Compacted 33,6 MB into 2 tables in 1289,84 ms: 26,05 MB/s, peak heap growth 27,7 MB
+[full] Flushed 95,1 MB, compaction wrote 2000,8 MB: write amplification 22,04, 25633,58 ms, 55,1 MB on disk, tables per level 0/27
+[full] Read amplification 1,00 tables per lookup, 53188,07 lookups/sec
+[leveled] Flushed 95,1 MB, compaction wrote 385,4 MB: write amplification 5,05, 10344,75 ms, 60,0 MB on disk, tables per level 0/4/26
+[leveled] Read amplification 1,76 tables per lookup, 98797,77 lookups/sec
+[size-tiered] Flushed 95,1 MB, compaction wrote 176,3 MB: write amplification 2,85, 7736,03 ms, 76,8 MB on disk, tables per level 0/3/6/11/18
+[size-tiered] Read amplification 4,00 tables per lookup, 113065,91 lookups/sec
+     */
+
+    /*
+    Result with sub-compactions, measured on a sandbox with a single core, where the key ranges can only
+    interleave: the run-to-run noise is larger than any difference, so this only shows that splitting
+    costs nothing. Scaling has to be measured on a multi-core node.
+[1 sub-compactions, 1 cores] Compacted 66,3 MB into 8 tables in 1807,03 ms: 36,69 MB/s
+[1 sub-compactions, 1 cores] Compacted 66,3 MB into 8 tables in 1214,00 ms: 54,62 MB/s
+[2 sub-compactions, 1 cores] Compacted 66,3 MB into 8 tables in 1920,91 ms: 34,52 MB/s
+[4 sub-compactions, 1 cores] Compacted 66,3 MB into 8 tables in 953,54 ms: 69,54 MB/s
+     */
+
+    /*
+    Result of point reads during a full compaction of 66 MB, without and with a 16 MB/s rate limiter.
+    The sandbox serves the files from the page cache, so the limiter cannot show its effect on a saturated
+    disk; here it only holds compaction to the rate. Before background requests waited in batches of at
+    least 10 ms, the limited compaction woke up for every block and the p99 during compaction rose to 80 us.
+[unlimited] Idle reads p50 7,9 us, p99 18,7 us; during compaction (2154 ms, throttled 0 ms): p50 8,1 us, p99 19,5 us, max 149907,0 us
+[16 MB/s] Idle reads p50 7,4 us, p99 18,6 us; during compaction (3957 ms, throttled 2137 ms): p50 7,4 us, p99 17,8 us, max 124213,1 us
+     */
+}
@@ -0,0 +1,46 @@
+package kvStore.fileStore;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FilterBudgetTest {
+    private static final double LN2_SQUARED = Math.log(2) * Math.log(2);
+
+    @Test
+    void testRatesAreProportionalToRunSizesAndUseTheBudget() {
+        long[] runEntries = {1_000, 1_000, 10_000, 100_000, 1_000_000};
+        double budgetBits = 10.0 * 1_112_000;
+        double[] rates = FilterBudget.falsePositiveRates(runEntries, budgetBits);
+        double bits = 0;
+        for (int run = 0; run < runEntries.length; run++) {
+            assertEquals(rates[0] / runEntries[0], rates[run] / runEntries[run], 1e-12);
+            bits += runEntries[run] * -Math.log(rates[run]) / LN2_SQUARED;
+        }
+        assertEquals(budgetBits, bits, budgetBits * 1e-9);
+    }
+
+    @Test
+    void testFewerFalsePositivesThanTheSameRateEverywhere() {
+        long[] runEntries = {1_000, 10_000, 100_000, 1_000_000};
+        double budgetBits = 5.0 * 1_111_000;
+        double[] rates = FilterBudget.falsePositiveRates(runEntries, budgetBits);
+        double sum = 0;
+        for (double rate : rates) {
+            sum += rate;
+        }
+        double uniformRate = Math.exp(-5.0 * LN2_SQUARED);
+        assertTrue(sum < runEntries.length * uniformRate * 0.7, sum + " against " + runEntries.length * uniformRate);
+    }
+
+    @Test
+    void testLargestRunGetsNoFilterOnATightBudget() {
+        long[] runEntries = {100, 100, 1_000_000};
+        double[] rates = FilterBudget.falsePositiveRates(runEntries, 2_000);
+        assertEquals(1, rates[2]);
+        assertTrue(rates[0] < 0.01);
+        // A budget of nothing leaves every run without a filter, as do runs without entries.
+        assertArrayEquals(new double[]{1, 1, 1}, FilterBudget.falsePositiveRates(runEntries, 0));
+        assertArrayEquals(new double[]{1}, FilterBudget.falsePositiveRates(new long[]{0}, 1_000));
+    }
+}
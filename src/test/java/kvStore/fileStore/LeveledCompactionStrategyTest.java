@@ -0,0 +1,129 @@
+package kvStore.fileStore;
+
+import kvStore.fileStore.compression.CompressionCodec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LeveledCompactionStrategyTest {
+    private Path tempDir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        tempDir = Files.createTempDirectory("leveled_test");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.walk(tempDir)
+                .sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(File::delete); //TODO - handle output
+    }
+
+    private SSTableManager newManager() {
+        // Small tables and levels, so a few thousand keys spread over several levels.
+        return new SSTableManager(tempDir.toString(), new SSTableManager.Options()
+                .setCompressionCodec(CompressionCodec.NONE)
+                .setTargetFileSize(8 * 1024)
+                .setCompactionStrategy(new LeveledCompactionStrategy(2, 16 * 1024, 2)));
+    }
+
+    @Test
+    void testLevelsStayDisjointAndReadsSeeNewestData() throws IOException, InterruptedException {
+        SSTableManager manager = newManager();
+        Map<String, String> expected = new TreeMap<>();
+        Random random = new Random(42);
+        for (int batch = 0; batch < 12; batch++) {
+            Map<String, String> data = new TreeMap<>();
+            Map<String, Boolean> deletes = new TreeMap<>();
+            for (int i = 0; i < 400; i++) {
+                String key = String.format("key%05d", random.nextInt(3000));
+                if (random.nextInt(10) == 0) {
+                    deletes.put(key, true);
+                    data.remove(key);
+                    expected.remove(key);
+                } else {
+                    data.put(key, "value" + batch + "-" + i);
+                    deletes.remove(key);
+                    expected.put(key, data.get(key));
+                }
+            }
+            manager.writeToSSTable(data, deletes);
+            manager.compactAsNeeded();
+            Thread.sleep(2);
+        }
+
+        List<List<SSTable>> levels = manager.getLevels();
+        assertTrue(levels.size() > 2, "Expected data below level 1, got " + levels.size() + " levels");
+        assertTrue(levels.get(0).size() < 2);
+        assertLevelsDisjoint(levels);
+        assertContents(expected, manager);
+
+        // Levels are recorded next to the tables and survive a restart.
+        SSTableManager reloaded = newManager();
+        List<List<SSTable>> reloadedLevels = reloaded.getLevels();
+        for (int level = 0; level < levels.size(); level++) {
+            assertEquals(levels.get(level).size(), reloadedLevels.get(level).size(), "Tables on level " + level);
+        }
+        assertLevelsDisjoint(reloadedLevels);
+        assertContents(expected, reloaded);
+    }
+
+    @Test
+    void testCompactionMustIncludeOverlappingTables() throws InterruptedException {
+        SSTableManager manager = newManager();
+        manager.writeToSSTable(Map.of("a", "1", "c", "1"));
+        Thread.sleep(2);
+        manager.writeToSSTable(Map.of("b", "2"));
+        List<SSTable> level0 = manager.getLevels().get(0);
+
+        // The older table's key range covers "b", so it has to move down together with the newer table.
+        assertThrows(IllegalArgumentException.class,
+                () -> manager.compact(new Compaction(List.of(level0.get(1)), 1)));
+
+        manager.compact(new Compaction(level0, 1));
+        assertEquals(0, manager.getLevels().get(0).size());
+        assertEquals(1, manager.getLevels().get(1).size());
+        assertEquals("2", manager.readFromSSTables("b"));
+    }
+
+    @Test
+    void testSingleTableWithoutOverlapIsMovedWithoutRewriting() {
+        SSTableManager manager = newManager();
+        manager.writeToSSTable(Map.of("a", "1", "b", "2"));
+        SSTable table = manager.getLevels().get(0).get(0);
+
+        manager.compact(new Compaction(List.of(table), 2));
+
+        assertSame(table, manager.getLevels().get(2).get(0));
+        assertEquals("2", newManager().readFromSSTables("b"));
+        assertEquals(1, newManager().getLevels().get(2).size());
+    }
+
+    private static void assertLevelsDisjoint(List<List<SSTable>> levels) throws IOException {
+        for (int level = 1; level < levels.size(); level++) {
+            List<SSTable> tables = levels.get(level);
+            for (int i = 1; i < tables.size(); i++) {
+                assertTrue(tables.get(i - 1).properties().largestKey.compareTo(tables.get(i).properties().smallestKey) < 0,
+                        "Tables overlap on level " + level);
+            }
+        }
+    }
+
+    private static void assertContents(Map<String, String> expected, SSTableManager manager) {
+        for (int i = 0; i < 3000; i++) {
+            String key = String.format("key%05d", i);
+            assertEquals(expected.get(key), manager.readFromSSTables(key), key);
+        }
+        assertEquals(expected, manager.readKeyRange("key00000", "key99999"));
+    }
+}
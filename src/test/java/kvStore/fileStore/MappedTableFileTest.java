@@ -0,0 +1,57 @@
+package kvStore.fileStore;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedTableFileTest {
+    private Path file;
+    private final byte[] content = new byte[10_000];
+
+    @BeforeEach
+    void setup() throws IOException {
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        file = Files.createTempFile("mapped_table_test", ".sst");
+        Files.write(file, content);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    void testSlicesWithinAndAcrossChunks() throws IOException {
+        // Chunks of 4 KB stand in for the 1 GB chunks of files over 2 GB.
+        MappedTableFile mapped = MappedTableFile.map(file, 4096);
+        assertEquals(content.length, mapped.size());
+
+        ByteBuffer within = mapped.slice(100, 1000);
+        assertTrue(within.isDirect());
+        assertSlice(within, 100, 1000);
+        // Spans all three chunks.
+        ByteBuffer across = mapped.slice(4000, 5000);
+        assertSlice(across, 4000, 5000);
+
+        assertThrows(IOException.class, () -> mapped.slice(9000, 2000));
+        mapped.close();
+        assertThrows(IOException.class, () -> mapped.slice(0, 10));
+    }
+
+    private void assertSlice(ByteBuffer slice, int position, int length) {
+        assertEquals(0, slice.position());
+        assertEquals(length, slice.remaining());
+        for (int i = 0; i < length; i++) {
+            assertEquals(content[position + i], slice.get(i));
+        }
+    }
+}
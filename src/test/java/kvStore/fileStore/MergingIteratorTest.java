@@ -0,0 +1,65 @@
+package kvStore.fileStore;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MergingIteratorTest {
+
+    @Test
+    void testNewestSourceShadowsOlderOnes() {
+        Iterator<Entry> newest = List.of(Entry.value("b", "new"), Entry.tombstone("d")).iterator();
+        Iterator<Entry> oldest = List.of(Entry.value("a", "old"), Entry.value("b", "old"),
+                Entry.value("c", "old"), Entry.value("d", "old")).iterator();
+
+        List<String> merged = new ArrayList<>();
+        MergingIterator iterator = new MergingIterator(List.of(newest, oldest));
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            merged.add(entry.key + "=" + (entry.isTombstone() ? "deleted" : entry.value));
+        }
+        assertEquals(List.of("a=old", "b=new", "c=old", "d=deleted"), merged);
+    }
+
+    @Test
+    void testEmptySources() {
+        MergingIterator iterator = new MergingIterator(List.of(List.<Entry>of().iterator()));
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    void testCloseClosesSourcesAndRunsHook() throws IOException {
+        ClosingIterator first = new ClosingIterator();
+        ClosingIterator second = new ClosingIterator();
+        boolean[] hookRun = new boolean[1];
+        new MergingIterator(List.of(first, second), false, () -> hookRun[0] = true).close();
+        assertTrue(first.closed);
+        assertTrue(second.closed);
+        assertTrue(hookRun[0]);
+    }
+
+    private static class ClosingIterator implements Iterator<Entry>, Closeable {
+        boolean closed;
+
+        @Override
+        public boolean hasNext() {
+            return false;
+        }
+
+        @Override
+        public Entry next() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package kvStore.fileStore;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrefixExtractorTest {
+
+    @Test
+    void testFixedLength() {
+        PrefixExtractor extractor = PrefixExtractor.fixedLength(4);
+        assertEquals("t042", extractor.extract("t042:orders:1"));
+        assertEquals("t042", extractor.extract("t042"));
+        assertNull(extractor.extract("t04"));
+        assertEquals("fixed:4", extractor.name());
+        assertThrows(IllegalArgumentException.class, () -> PrefixExtractor.fixedLength(0));
+    }
+
+    @Test
+    void testDelimiter() {
+        PrefixExtractor extractor = PrefixExtractor.delimiter(':');
+        assertEquals("tenant42:", extractor.extract("tenant42:orders:1"));
+        assertEquals("tenant42:", extractor.extract("tenant42:"));
+        assertEquals(":", extractor.extract(":orders"));
+        assertNull(extractor.extract("tenant42"));
+        assertNotEquals(extractor.name(), PrefixExtractor.delimiter('/').name());
+    }
+
+    @Test
+    void testPrefixIsConsistentWithKeyOrder() {
+        for (PrefixExtractor extractor : new PrefixExtractor[]{PrefixExtractor.fixedLength(3), PrefixExtractor.delimiter(':')}) {
+            for (String key : new String[]{"abc:1", "ab:cdef", "abcd:e:f"}) {
+                String prefix = extractor.extract(key);
+                // A prefix is a key with that prefix, and so is every key starting with it.
+                assertEquals(prefix, extractor.extract(prefix));
+                assertEquals(prefix, extractor.extract(prefix + "zz:9"));
+            }
+        }
+    }
+}
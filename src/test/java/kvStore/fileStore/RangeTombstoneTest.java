@@ -0,0 +1,60 @@
+package kvStore.fileStore;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RangeTombstoneTest {
+
+    @Test
+    void testUnionMergesOverlappingAndAdjacentRanges() {
+        List<RangeTombstone> union = RangeTombstone.union(List.of(
+                new RangeTombstone("m", "p"),
+                new RangeTombstone("a", "c"),
+                new RangeTombstone("b", "e"),
+                new RangeTombstone("e\0", "f"),
+                new RangeTombstone("n", "o")));
+
+        assertEquals(List.of(new RangeTombstone("a", "f"), new RangeTombstone("m", "p")), union);
+        assertTrue(RangeTombstone.covers(union, "a"));
+        assertTrue(RangeTombstone.covers(union, "e5"));
+        assertTrue(RangeTombstone.covers(union, "p"));
+        assertFalse(RangeTombstone.covers(union, "f0"));
+        assertFalse(RangeTombstone.covers(union, "p0"));
+        assertFalse(RangeTombstone.covers(List.of(), "a"));
+    }
+
+    @Test
+    void testCoversRangeAndClip() {
+        List<RangeTombstone> union = List.of(new RangeTombstone("b", "d"), new RangeTombstone("k", "m"));
+
+        assertTrue(RangeTombstone.coversRange(union, "b", "d"));
+        assertTrue(RangeTombstone.coversRange(union, "c", "c9"));
+        assertFalse(RangeTombstone.coversRange(union, "a", "c"));
+        assertFalse(RangeTombstone.coversRange(union, "c", "l"));
+
+        assertEquals(List.of(new RangeTombstone("c", "d"), new RangeTombstone("k", "l")),
+                RangeTombstone.clip(union, "c", "l"));
+        assertEquals(List.of(new RangeTombstone("b", "d")), RangeTombstone.clip(union, null, "e"));
+        assertEquals(List.of(new RangeTombstone("k", "m")), RangeTombstone.clip(union, "e", null));
+        assertEquals(List.of(), RangeTombstone.clip(union, "e", "j"));
+    }
+
+    @Test
+    void testEncodeDecodeRoundTrip() {
+        List<RangeTombstone> tombstones = List.of(new RangeTombstone("", "tenant1/"), new RangeTombstone("tenant2/", "tenant2/\uffff"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RangeTombstone.encode(out, tombstones);
+
+        assertEquals(tombstones, RangeTombstone.decode(ByteBuffer.wrap(out.toByteArray())));
+    }
+
+    @Test
+    void testStartAfterEndIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new RangeTombstone("b", "a"));
+    }
+}
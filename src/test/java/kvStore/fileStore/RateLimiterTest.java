@@ -0,0 +1,78 @@
+package kvStore.fileStore;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimiterTest {
+
+    @Test
+    void testWritesAreHeldToTheRate() {
+        RateLimiter limiter = new RateLimiter(1024 * 1024);
+        long startTime = System.nanoTime();
+        for (int i = 0; i < 50; i++) {
+            limiter.request(10 * 1024, RateLimiter.Priority.BACKGROUND);
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+
+        // 500 KB at 1 MB/s, less the last request, which may take the bucket below zero.
+        assertTrue(elapsedMs >= 450, "Took only " + elapsedMs + " ms");
+        assertEquals(500 * 1024, limiter.getBytesGranted(RateLimiter.Priority.BACKGROUND));
+        assertTrue(limiter.getThrottledNanos(RateLimiter.Priority.BACKGROUND) > 0);
+        assertEquals(0, limiter.getThrottledNanos(RateLimiter.Priority.FOREGROUND));
+    }
+
+    @Test
+    void testForegroundGoesBeforeWaitingBackgroundRequests() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(100 * 1024);
+        Thread background = new Thread(() -> {
+            for (int i = 0; i < 30; i++) {
+                limiter.request(10 * 1024, RateLimiter.Priority.BACKGROUND);
+            }
+        });
+        background.start();
+        Thread.sleep(200);
+
+        long startTime = System.nanoTime();
+        limiter.request(10 * 1024, RateLimiter.Priority.FOREGROUND);
+        long waitedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+
+        // The background thread needs about 3 s, the foreground request waits for one refill at most.
+        assertTrue(background.isAlive());
+        assertTrue(waitedMs < 1000, "Foreground request waited " + waitedMs + " ms");
+        background.join();
+        assertEquals(300 * 1024, limiter.getBytesGranted(RateLimiter.Priority.BACKGROUND));
+        assertEquals(10 * 1024, limiter.getBytesGranted(RateLimiter.Priority.FOREGROUND));
+    }
+
+    @Test
+    void testAutoTuneRaisesTheRateWithCompactionDebt() {
+        RateLimiter limiter = new RateLimiter(1_000_000, 11_000_000, 100_000_000);
+        assertTrue(limiter.isAutoTuned());
+        assertEquals(1_000_000, limiter.getBytesPerSecond());
+
+        limiter.setCompactionDebt(50_000_000);
+        assertEquals(6_000_000, limiter.getBytesPerSecond());
+        assertEquals(50_000_000, limiter.getCompactionDebt());
+
+        limiter.setCompactionDebt(500_000_000);
+        assertEquals(11_000_000, limiter.getBytesPerSecond());
+
+        limiter.setCompactionDebt(0);
+        assertEquals(1_000_000, limiter.getBytesPerSecond());
+
+        RateLimiter fixed = new RateLimiter(1_000_000);
+        fixed.setCompactionDebt(500_000_000);
+        assertFalse(fixed.isAutoTuned());
+        assertEquals(1_000_000, fixed.getBytesPerSecond());
+        assertEquals(500_000_000, fixed.getCompactionDebt());
+    }
+
+    @Test
+    void testInvalidRatesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiter(0));
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiter(2_000_000, 1_000_000, 10));
+    }
+}
@@ -1,10 +1,22 @@
 package kvStore.fileStore;
 
+import kvStore.bloomFilter.BlockedBloomFilter;
+import kvStore.bloomFilter.BloomFilter;
+import kvStore.bloomFilter.FilterPolicy;
+import kvStore.bloomFilter.KeyFilter;
+import kvStore.bloomFilter.XorFilter;
+import kvStore.fileStore.compression.CompressionCodec;
 import org.junit.jupiter.api.*;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.*;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import static org.junit.jupiter.api.Assertions.*;
 
 public class SSTableManagerTest {
@@ -73,12 +85,12 @@ public class SSTableManagerTest {
         assertEquals("value2_new", ssTableManager.readFromSSTables("key2"));
         assertEquals("value3", ssTableManager.readFromSSTables("key3"));
 
-        // Create a tombstones set to simulate deletion of key2.
-        Set<String> tombstones = new HashSet<>();
-        tombstones.add("key2");
+        Thread.sleep(5);
+        // Delete key2 in a newer SSTable.
+        ssTableManager.writeToSSTable(Map.of(), Map.of("key2", true));
 
         // Trigger compaction; this should merge SSTables and remove key2.
-        ssTableManager.compact(tombstones);
+        ssTableManager.compact();
 
         // After compaction, key2 should no longer be available.
         assertNull(ssTableManager.readFromSSTables("key2"));
@@ -105,6 +117,115 @@ public class SSTableManagerTest {
         assertNull(reloadedManager.readFromSSTables("key3"));
     }
 
+    @Test
+    void testFilterPoliciesCanBeMixed() {
+        Path dir = tempDir.resolve("filter_policies");
+        SSTableManager manager = new SSTableManager(dir.toString(),
+                new SSTableManager.Options().setFilterPolicy(FilterPolicy.blockedBloom(0.01)));
+        manager.writeToSSTable(Map.of("key1", "value1", "key2", "value2"));
+        assertInstanceOf(BlockedBloomFilter.class, manager.getLevels().get(0).get(0).getFilter());
+
+        // Tables with any kind of filter are read whatever the policy.
+        SSTableManager xorManager = new SSTableManager(dir.toString(),
+                new SSTableManager.Options().setFilterPolicy(FilterPolicy.xor()));
+        xorManager.writeToSSTable(Map.of("key3", "value3"));
+        SSTableManager reloadedManager = new SSTableManager(dir.toString());
+        reloadedManager.writeToSSTable(Map.of("key4", "value4"));
+        List<SSTable> tables = reloadedManager.getLevels().get(0);
+        assertInstanceOf(BlockedBloomFilter.class, tables.get(0).getFilter());
+        assertInstanceOf(XorFilter.class, tables.get(1).getFilter());
+        assertInstanceOf(BloomFilter.class, tables.get(2).getFilter());
+        for (int i = 1; i <= 4; i++) {
+            assertEquals("value" + i, reloadedManager.readFromSSTables("key" + i));
+        }
+        assertNull(reloadedManager.readFromSSTables("key5"));
+        assertThrows(IllegalArgumentException.class, () -> new SSTableManager.Options().setFilterPolicy(null));
+    }
+
+    @Test
+    void testFilterMemoryBudgetGivesSmallTablesMoreBitsPerKey() {
+        Path dir = tempDir.resolve("filter_budget");
+        SSTableManager manager = new SSTableManager(dir.toString(),
+                new SSTableManager.Options().setFilterMemoryBudget(10_000 * 5 / 8));
+        Map<String, String> large = new TreeMap<>();
+        for (int i = 0; i < 10_000; i++) {
+            large.put(String.format("key%05d", i), "value");
+        }
+        manager.writeToSSTable(large);
+        manager.writeToSSTable(Map.of("small1", "value", "small2", "value"));
+
+        List<SSTable> tables = manager.getLevels().get(0);
+        double largeBitsPerKey = tables.get(0).getFilter().sizeInBytes() * 8.0 / 10_000;
+        double smallBitsPerKey = tables.get(1).getFilter().sizeInBytes() * 8.0 / 2;
+        assertTrue(largeBitsPerKey < 6, "Bits per key of the large table: " + largeBitsPerKey);
+        assertTrue(smallBitsPerKey > 2 * largeBitsPerKey, "Bits per key of the small table: " + smallBitsPerKey);
+        assertEquals("value", manager.readFromSSTables("key04711"));
+        assertEquals("value", manager.readFromSSTables("small2"));
+    }
+
+    @Test
+    void testOptimizeFiltersForHitsLeavesTheLastLevelWithoutFilters() {
+        Path dir = tempDir.resolve("filters_for_hits");
+        SSTableManager.Options options = new SSTableManager.Options().setOptimizeFiltersForHits(true);
+        SSTableManager manager = new SSTableManager(dir.toString(), options);
+        manager.writeToSSTable(Map.of("a", "1", "b", "2"));
+        manager.writeToSSTable(Map.of("c", "3"));
+        assertNotNull(manager.getLevels().get(0).get(0).getFilter());
+        manager.compact();
+
+        SSTable compacted = manager.getLevels().get(manager.getLevels().size() - 1).get(0);
+        assertNull(compacted.getFilter());
+        SSTableManager reloadedManager = new SSTableManager(dir.toString(), options);
+        assertEquals("2", reloadedManager.readFromSSTables("b"));
+        assertNull(reloadedManager.readFromSSTables("d"));
+    }
+
+    @Test
+    void testPrefixScansSkipTablesWithoutThePrefix() throws IOException {
+        Path dir = tempDir.resolve("prefix_filter");
+        SSTableManager.Options options = new SSTableManager.Options().setPrefixExtractor(PrefixExtractor.delimiter(':'));
+        SSTableManager manager = new SSTableManager(dir.toString(), options);
+        manager.writeToSSTable(Map.of("b:1", "old", "b:2", "two"));
+        // Its key range spans the "b:" keys, but it holds none of them.
+        manager.writeToSSTable(Map.of("a:1", "one", "c:1", "three"), Map.of(), List.of(new RangeTombstone("b:1", "b:1")));
+        manager.writeToSSTable(Map.of("b:3", "four"));
+        Path coldTable = manager.getLevels().get(0).get(1).getFile().toPath();
+
+        SSTableManager reloadedManager = new SSTableManager(dir.toString(), options);
+        assertNotNull(reloadedManager.getLevels().get(0).get(1).getPrefixFilter());
+        // Reading the table would fail now, so it must not be opened.
+        Files.delete(coldTable);
+        assertEquals(Map.of("b:2", "two", "b:3", "four"), reloadedManager.readKeyRange("b:", "b:9"));
+        List<String> keys = new ArrayList<>();
+        try (MergingIterator iterator = reloadedManager.scan("b:", null, false, "b:", List.of(), List.of())) {
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (!entry.key.startsWith("b:")) {
+                    break;
+                }
+                keys.add(entry.key);
+            }
+        }
+        // The range tombstone of the skipped table still hides the older "b:1".
+        assertEquals(List.of("b:2", "b:3"), keys);
+        assertThrows(RuntimeException.class, () -> reloadedManager.readKeyRange("a", "z"));
+    }
+
+    @Test
+    void testPrefixFiltersOfAnotherExtractorAreIgnored() {
+        Path dir = tempDir.resolve("prefix_filter_changed");
+        SSTableManager manager = new SSTableManager(dir.toString(),
+                new SSTableManager.Options().setPrefixExtractor(PrefixExtractor.fixedLength(2)));
+        manager.writeToSSTable(Map.of("ab:1", "one", "ab:2", "two"));
+        assertNotNull(manager.getLevels().get(0).get(0).getPrefixFilter());
+
+        SSTableManager reloadedManager = new SSTableManager(dir.toString(),
+                new SSTableManager.Options().setPrefixExtractor(PrefixExtractor.delimiter(':')));
+        assertNull(reloadedManager.getLevels().get(0).get(0).getPrefixFilter());
+        assertEquals(Map.of("ab:1", "one", "ab:2", "two"), reloadedManager.readKeyRange("ab:", "ab:9"));
+        assertNull(new SSTableManager(dir.toString()).getLevels().get(0).get(0).getPrefixFilter());
+    }
+
     @Test
     void testReadKeyRange() {
         // Prepare a sorted data set.
@@ -128,4 +249,618 @@ public class SSTableManagerTest {
         assertEquals("delta", rangeResult.get("d"));
     }
 
+    @Test
+    void testReadKeyRangeRespectsNewerTombstones() throws InterruptedException {
+        ssTableManager.writeToSSTable(Map.of("a", "alpha", "b", "bravo", "c", "charlie"));
+        Thread.sleep(5);
+        ssTableManager.writeToSSTable(Map.of("c", "charlie2"), Map.of("b", true));
+
+        Map<String, String> rangeResult = ssTableManager.readKeyRange("a", "z");
+        assertEquals(Map.of("a", "alpha", "c", "charlie2"), rangeResult);
+        assertNull(ssTableManager.readFromSSTables("b"));
+    }
+
+    @Test
+    void testLegacyTextSSTableIsUpgraded() throws IOException {
+        // A table written in the old line-based format, with a Bloom filter in the old Java-serialized one.
+        Files.write(tempDir.resolve("sstable_1.txt"), List.of("key1,value1", "key2,__TOMBSTONE__", "key3,a,b"));
+        Files.write(tempDir.resolve("sstable_1.bf"), new byte[]{(byte) 0xAC, (byte) 0xED, 0x00, 0x05});
+
+        SSTableManager reloadedManager = new SSTableManager(tempDir.toString());
+
+        assertEquals("value1", reloadedManager.readFromSSTables("key1"));
+        assertNull(reloadedManager.readFromSSTables("key2"));
+        assertEquals("a,b", reloadedManager.readFromSSTables("key3"));
+        assertFalse(Files.exists(tempDir.resolve("sstable_1.txt")));
+        assertTrue(Files.exists(tempDir.resolve("sstable_1.sst")));
+        // The filter was built again from the keys, in the binary format.
+        try (InputStream in = Files.newInputStream(tempDir.resolve("sstable_1.bf"))) {
+            KeyFilter filter = KeyFilter.readFrom(in);
+            assertTrue(filter.containsHash(KeyFilter.hash("key1")));
+            assertTrue(filter.containsHash(KeyFilter.hash("key3")));
+        }
+    }
+
+    @Test
+    void testSparseIndexIsPersistedNextToBloomFilter() throws IOException {
+        SSTableManager sparseManager = new SSTableManager(tempDir.toString(), 256);
+        Map<String, String> data = new TreeMap<>();
+        for (int i = 0; i < 3000; i++) {
+            data.put("key" + i, "value" + i);
+        }
+        sparseManager.writeToSSTable(data);
+
+        try (DirectoryStream<Path> indexFiles = Files.newDirectoryStream(tempDir, "sstable_*.idx")) {
+            assertTrue(indexFiles.iterator().hasNext(), "Sparse index should be written with the table");
+        }
+
+        // Reload and check that lookups are served through the persisted index.
+        SSTableManager reloadedManager = new SSTableManager(tempDir.toString(), 256);
+        assertEquals("value0", reloadedManager.readFromSSTables("key0"));
+        assertEquals("value1234", reloadedManager.readFromSSTables("key1234"));
+        assertEquals("value2999", reloadedManager.readFromSSTables("key2999"));
+        assertNull(reloadedManager.readFromSSTables("key3000"));
+        assertEquals(Map.of("key1234", "value1234", "key1235", "value1235"),
+                reloadedManager.readKeyRange("key1234", "key1235"));
+    }
+
+    @Test
+    void testBlockCacheServesRepeatedReadsAndIsInvalidatedByCompaction() throws InterruptedException {
+        Map<String, String> data = new TreeMap<>();
+        for (int i = 0; i < 1000; i++) {
+            data.put("key" + i, "value" + i);
+        }
+        ssTableManager.writeToSSTable(data);
+        BlockCache cache = ssTableManager.getBlockCache();
+
+        assertEquals("value42", ssTableManager.readFromSSTables("key42"));
+        long missesAfterFirstRead = cache.getMissCount();
+        assertEquals("value42", ssTableManager.readFromSSTables("key42"));
+        assertEquals(missesAfterFirstRead, cache.getMissCount());
+        assertTrue(cache.getHitCount() > 0);
+
+        Thread.sleep(5);
+        ssTableManager.writeToSSTable(Map.of("key42", "updated"));
+        ssTableManager.compact();
+
+        // Only the compacted table's blocks may remain cached.
+        assertEquals(0, cache.getUsage());
+        assertEquals("updated", ssTableManager.readFromSSTables("key42"));
+        assertEquals("value43", ssTableManager.readFromSSTables("key43"));
+    }
+
+    @Test
+    void testTableFilesStayOpenAndAreClosedByCompaction() throws InterruptedException {
+        ssTableManager.writeToSSTable(Map.of("key1", "value1"));
+        Thread.sleep(5);
+        ssTableManager.writeToSSTable(Map.of("key2", "value2"));
+        TableHandleCache handles = ssTableManager.getTableHandleCache();
+
+        assertEquals("value1", ssTableManager.readFromSSTables("key1"));
+        assertEquals("value2", ssTableManager.readFromSSTables("key2"));
+        assertEquals(Map.of("key1", "value1", "key2", "value2"), ssTableManager.readKeyRange("key0", "key9"));
+        assertEquals(2, handles.getOpenCount());
+        assertEquals(2, handles.getMissCount());
+
+        ssTableManager.compact();
+
+        // The deleted inputs are closed; only the compacted table may be open.
+        assertTrue(handles.getOpenCount() <= 1);
+        assertEquals("value1", ssTableManager.readFromSSTables("key1"));
+        assertEquals(1, handles.getOpenCount());
+    }
+
+    @Test
+    void testCloseReleasesTableFilesAndManifest() throws InterruptedException {
+        SSTableManager mappedManager = new SSTableManager(tempDir.resolve("mapped").toString(),
+                new SSTableManager.Options().setMemoryMapped(true).setCompressionCodec(CompressionCodec.NONE));
+        mappedManager.writeToSSTable(Map.of("key1", "value1"));
+        ssTableManager.writeToSSTable(Map.of("key1", "value1"));
+        Thread.sleep(5);
+        ssTableManager.writeToSSTable(Map.of("key2", "value2"));
+        assertEquals("value1", mappedManager.readFromSSTables("key1"));
+        assertEquals("value1", ssTableManager.readFromSSTables("key1"));
+        assertEquals("value2", ssTableManager.readFromSSTables("key2"));
+        assertEquals(2, ssTableManager.getTableHandleCache().getOpenCount());
+
+        mappedManager.close();
+        ssTableManager.close();
+
+        assertEquals(0, ssTableManager.getTableHandleCache().getOpenCount());
+        SSTableManager reopened = new SSTableManager(tempDir.toString());
+        assertEquals("value1", reopened.readFromSSTables("key1"));
+        assertEquals("value2", reopened.readFromSSTables("key2"));
+        reopened.close();
+    }
+
+    @Test
+    void testMemoryMappedManagerReadsAndCompacts() throws InterruptedException {
+        SSTableManager mappedManager = new SSTableManager(tempDir.resolve("mapped").toString(),
+                new SSTableManager.Options().setMemoryMapped(true).setCompressionCodec(CompressionCodec.NONE));
+        Map<String, String> data = new TreeMap<>();
+        for (int i = 0; i < 500; i++) {
+            data.put("key" + i, "value" + i);
+        }
+        mappedManager.writeToSSTable(data);
+        Thread.sleep(5);
+        mappedManager.writeToSSTable(Map.of("key42", "updated"), Map.of("key43", true));
+
+        assertEquals("updated", mappedManager.readFromSSTables("key42"));
+        assertNull(mappedManager.readFromSSTables("key43"));
+        assertEquals(Map.of("key429", "value429", "key430", "value430"), mappedManager.readKeyRange("key429", "key430"));
+
+        // Compaction unmaps and deletes its inputs; the compacted table is mapped on its first read.
+        assertEquals(1, mappedManager.compact());
+        assertEquals("updated", mappedManager.readFromSSTables("key42"));
+        assertNull(mappedManager.readFromSSTables("key43"));
+        assertEquals("value499", mappedManager.readFromSSTables("key499"));
+    }
+
+    @Test
+    void testOpenScanBlocksNeitherCompactionNorReads() throws Exception {
+        ssTableManager.writeToSSTable(Map.of("key1", "value1", "key2", "value2"));
+        Thread.sleep(5);
+        ssTableManager.writeToSSTable(Map.of("key2", "updated", "key3", "value3"));
+        List<File> inputFiles = new ArrayList<>();
+        for (SSTable ssTable : ssTableManager.getLevels().get(SSTableManager.FLUSH_LEVEL)) {
+            inputFiles.add(ssTable.getFile());
+        }
+
+        try (MergingIterator scan = ssTableManager.scan(null, null, false, null, List.of(), List.of())) {
+            assertEquals("key1", scan.next().key);
+            // Compacting and flushing on the thread holding the scan, and reading on another, do not wait for it.
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+                assertEquals(1, ssTableManager.compact());
+                ssTableManager.writeToSSTable(Map.of("key4", "value4"));
+                assertEquals("updated", CompletableFuture.supplyAsync(() -> ssTableManager.readFromSSTables("key2")).get());
+            });
+            // The scan keeps reading the replaced tables, whose files outlive the compaction until it is closed.
+            for (File file : inputFiles) {
+                assertTrue(file.exists());
+            }
+            assertEquals("updated", scan.next().value);
+            assertEquals("key3", scan.next().key);
+            assertFalse(scan.hasNext());
+        }
+        for (File file : inputFiles) {
+            assertFalse(file.exists());
+        }
+        assertEquals(Map.of("key1", "value1", "key2", "updated", "key3", "value3", "key4", "value4"),
+                ssTableManager.readKeyRange("key0", "key9"));
+    }
+
+    @Test
+    void testTablesOutsideTheKeyRangeAreSkipped() throws InterruptedException {
+        ssTableManager.writeToSSTable(Map.of("2024-01-01", "old", "2024-01-31", "old"));
+        Thread.sleep(5);
+        ssTableManager.writeToSSTable(Map.of("2024-02-01", "new", "2024-02-29", "new"));
+
+        // Properties come from the metadata files, so no table is opened at startup.
+        SSTableManager reloadedManager = new SSTableManager(tempDir.toString());
+        TableHandleCache handles = reloadedManager.getTableHandleCache();
+        assertEquals(0, handles.getMissCount());
+
+        assertEquals("old", reloadedManager.readFromSSTables("2024-01-31"));
+        assertNull(reloadedManager.readFromSSTables("2023-12-31"));
+        assertEquals(Map.of("2024-01-01", "old"), reloadedManager.readKeyRange("2023-12-01", "2024-01-15"));
+        // Only the January table overlaps any of those reads.
+        assertEquals(1, handles.getMissCount());
+    }
+
+    @Test
+    void testCompactionSplitsOutputAtTargetFileSize() throws InterruptedException {
+        SSTableManager splitManager = new SSTableManager(tempDir.resolve("split").toString(),
+                new SSTableManager.Options().setTargetFileSize(8 * 1024).setCompressionCodec(CompressionCodec.NONE));
+        Map<String, String> data = new TreeMap<>();
+        for (int i = 0; i < 2000; i++) {
+            data.put(String.format("key%04d", i), "value" + i);
+        }
+        splitManager.writeToSSTable(data);
+        Thread.sleep(5);
+        splitManager.writeToSSTable(Map.of("key0042", "updated", "key1999", "updated"),
+                Map.of("key0043", true, "key0044", true));
+
+        int tableCount = splitManager.compact();
+
+        assertTrue(tableCount > 1, "Expected several output tables, got " + tableCount);
+        File[] tableFiles = tempDir.resolve("split").toFile().listFiles((dir, name) -> name.endsWith(".sst"));
+        for (File tableFile : tableFiles) {
+            // A table is closed by the first entry that takes it past the target.
+            assertTrue(tableFile.length() < 8 * 1024 + SSTableWriter.BLOCK_SIZE, tableFile + " is too large");
+        }
+        assertEquals(tableCount, tableFiles.length);
+        SSTableManager reloadedManager = new SSTableManager(tempDir.resolve("split").toString());
+        assertEquals("updated", reloadedManager.readFromSSTables("key0042"));
+        assertNull(reloadedManager.readFromSSTables("key0043"));
+        assertNull(reloadedManager.readFromSSTables("key0044"));
+        assertEquals("updated", reloadedManager.readFromSSTables("key1999"));
+        assertEquals("value1000", reloadedManager.readFromSSTables("key1000"));
+        assertEquals(1998, reloadedManager.readKeyRange("key0000", "key9999").size());
+    }
+
+    @Test
+    void testSubcompactionsMergeDisjointKeyRangesInParallel() throws InterruptedException, IOException {
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) Executors.newFixedThreadPool(4);
+        SSTableManager parallelManager = new SSTableManager(tempDir.resolve("parallel").toString(),
+                new SSTableManager.Options().setTargetFileSize(8 * 1024).setCompressionCodec(CompressionCodec.NONE)
+                        .setMaxSubcompactions(4).setCompactionExecutor(pool));
+        Map<String, String> expected = new TreeMap<>();
+        for (int table = 0; table < 3; table++) {
+            Map<String, String> data = new TreeMap<>();
+            Map<String, Boolean> deletes = new TreeMap<>();
+            for (int i = table; i < 3000; i += 2) {
+                String key = String.format("key%04d", i);
+                if (i % 7 == 0) {
+                    deletes.put(key, true);
+                    expected.remove(key);
+                } else {
+                    data.put(key, "value" + table);
+                    expected.put(key, "value" + table);
+                }
+            }
+            parallelManager.writeToSSTable(data, deletes);
+            Thread.sleep(5);
+        }
+
+        parallelManager.compact();
+
+        // A task only counts as completed once the pool is done with it, which may be after its result is in.
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(4, pool.getCompletedTaskCount());
+        List<SSTable> tables = parallelManager.getLevels().get(1);
+        for (int i = 1; i < tables.size(); i++) {
+            assertTrue(tables.get(i - 1).properties().largestKey.compareTo(tables.get(i).properties().smallestKey) < 0);
+        }
+        assertEquals(expected, parallelManager.readKeyRange("key0000", "key9999"));
+        for (int i = 0; i < 3000; i++) {
+            String key = String.format("key%04d", i);
+            assertEquals(expected.get(key), parallelManager.readFromSSTables(key), key);
+        }
+    }
+
+    @Test
+    void testCloseStopsTheSubcompactionPool() throws InterruptedException {
+        SSTableManager parallelManager = new SSTableManager(tempDir.resolve("parallel").toString(),
+                new SSTableManager.Options().setTargetFileSize(8 * 1024).setCompressionCodec(CompressionCodec.NONE)
+                        .setMaxSubcompactions(4));
+        for (int table = 0; table < 2; table++) {
+            Map<String, String> data = new TreeMap<>();
+            for (int i = table; i < 3000; i += 2) {
+                data.put(String.format("key%04d", i), "value" + table);
+            }
+            parallelManager.writeToSSTable(data);
+            Thread.sleep(5);
+        }
+        parallelManager.compact();
+        assertFalse(compactionThreads().isEmpty());
+
+        parallelManager.close();
+        for (Thread thread : compactionThreads()) {
+            thread.join(10_000);
+            assertFalse(thread.isAlive());
+        }
+    }
+
+    private static List<Thread> compactionThreads() {
+        List<Thread> threads = new ArrayList<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("sstable-compaction")) {
+                threads.add(thread);
+            }
+        }
+        return threads;
+    }
+
+    @Test
+    void testFlushesAndCompactionsAreChargedToTheRateLimiter() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(64L * 1024 * 1024, 128L * 1024 * 1024, 1024 * 1024);
+        SSTableManager limitedManager = new SSTableManager(tempDir.resolve("limited").toString(),
+                new SSTableManager.Options().setCompressionCodec(CompressionCodec.NONE).setRateLimiter(limiter)
+                        .setCompactionStrategy(new LeveledCompactionStrategy(2, 1024 * 1024, 10)));
+        assertSame(limiter, limitedManager.getRateLimiter());
+        for (int table = 0; table < 2; table++) {
+            Map<String, String> data = new TreeMap<>();
+            for (int i = 0; i < 1000; i++) {
+                data.put(String.format("key%04d", i), "value" + table);
+            }
+            limitedManager.writeToSSTable(data);
+            Thread.sleep(2);
+        }
+
+        // Two flushed tables reach the level 0 trigger: all of level 0 is owed to compaction.
+        long flushedBytes = 0;
+        for (SSTable table : limitedManager.getLevels().get(0)) {
+            flushedBytes += table.fileSize();
+        }
+        assertEquals(flushedBytes, limitedManager.getPendingCompactionBytes());
+        assertEquals(flushedBytes, limiter.getCompactionDebt());
+        assertTrue(limiter.getBytesPerSecond() > 64L * 1024 * 1024);
+        assertEquals(flushedBytes, limiter.getBytesGranted(RateLimiter.Priority.FOREGROUND));
+
+        assertEquals(1, limitedManager.compactAsNeeded());
+        assertEquals(limitedManager.getCompactionBytesWritten(), limiter.getBytesGranted(RateLimiter.Priority.BACKGROUND));
+        assertEquals(0, limiter.getCompactionDebt());
+        assertEquals(64L * 1024 * 1024, limiter.getBytesPerSecond());
+        assertEquals("value1", limitedManager.readFromSSTables("key0500"));
+    }
+
+    @Test
+    void testFlushDoesNotWaitForARunningCompaction() throws Exception {
+        String directory = tempDir.resolve("throttled").toString();
+        SSTableManager.Options options = new SSTableManager.Options().setCompressionCodec(CompressionCodec.NONE);
+        SSTableManager unlimitedManager = new SSTableManager(directory, options);
+        for (int table = 0; table < 2; table++) {
+            Map<String, String> data = new TreeMap<>();
+            for (int i = 0; i < 3000; i++) {
+                data.put(String.format("key%04d", i), "value" + table + "-".repeat(60));
+            }
+            unlimitedManager.writeToSSTable(data);
+            Thread.sleep(2);
+        }
+        unlimitedManager.close();
+
+        // About 400 KB to rewrite at 200 KB/s: the compaction runs for about two seconds.
+        RateLimiter limiter = new RateLimiter(200 * 1024);
+        SSTableManager throttledManager = new SSTableManager(directory,
+                new SSTableManager.Options().setCompressionCodec(CompressionCodec.NONE).setRateLimiter(limiter));
+        assertTimeoutPreemptively(Duration.ofSeconds(20), () -> {
+            CompletableFuture<Integer> compaction =
+                    CompletableFuture.supplyAsync(() -> throttledManager.compact());
+            while (limiter.getBytesGranted(RateLimiter.Priority.BACKGROUND) == 0) {
+                Thread.sleep(1);
+            }
+            throttledManager.writeToSSTable(Map.of("flushed", "value"));
+            assertFalse(compaction.isDone(), "The flush waited for the compaction");
+            assertEquals("value", throttledManager.readFromSSTables("flushed"));
+
+            compaction.get();
+            assertEquals("value", throttledManager.readFromSSTables("flushed"));
+            assertTrue(throttledManager.readFromSSTables("key1500").startsWith("value1"));
+            assertEquals(1, throttledManager.getLevels().get(0).size());
+        });
+        throttledManager.close();
+    }
+
+    @Test
+    void testRangeTombstonesHideOlderTablesInReadsAndScans() throws InterruptedException {
+        ssTableManager.writeToSSTable(Map.of("a", "alpha", "b", "bravo", "c", "charlie", "d", "delta", "e", "echo"));
+        Thread.sleep(5);
+        // The entry written with the range tombstone is newer than it.
+        ssTableManager.writeToSSTable(Map.of("c", "charlie2"), Map.of(), List.of(new RangeTombstone("b", "d")));
+
+        assertEquals("alpha", ssTableManager.readFromSSTables("a"));
+        assertNull(ssTableManager.readFromSSTables("b"));
+        assertEquals("charlie2", ssTableManager.readFromSSTables("c"));
+        assertNull(ssTableManager.readFromSSTables("d"));
+        assertEquals(Map.of("a", "alpha", "c", "charlie2", "e", "echo"), ssTableManager.readKeyRange("a", "z"));
+
+        SSTableManager reloadedManager = new SSTableManager(tempDir.toString());
+        assertNull(reloadedManager.readFromSSTables("b"));
+        assertEquals(Map.of("a", "alpha", "c", "charlie2", "e", "echo"), reloadedManager.readKeyRange("a", "z"));
+    }
+
+    @Test
+    void testTableOfRangeTombstonesOnlyCoversItsRange() throws InterruptedException, IOException {
+        ssTableManager.writeToSSTable(Map.of("a", "alpha", "m", "mike", "z", "zulu"));
+        Thread.sleep(5);
+        ssTableManager.writeToSSTable(Map.of(), Map.of(), List.of(new RangeTombstone("l", "n")));
+
+        TableProperties properties = ssTableManager.getLevels().get(0).get(1).properties();
+        assertEquals(0, properties.entryCount);
+        assertEquals("l", properties.smallestKey);
+        assertEquals("n", properties.largestKey);
+        assertNull(ssTableManager.readFromSSTables("m"));
+        assertEquals(Map.of("a", "alpha", "z", "zulu"), ssTableManager.readKeyRange("a", "z"));
+    }
+
+    @Test
+    void testCompactionDropsDataCoveredByRangeTombstones() throws InterruptedException, IOException {
+        SSTableManager splitManager = new SSTableManager(tempDir.resolve("range").toString(),
+                new SSTableManager.Options().setTargetFileSize(8 * 1024).setCompressionCodec(CompressionCodec.NONE));
+        Map<String, String> data = new TreeMap<>();
+        for (int i = 0; i < 2000; i++) {
+            data.put(String.format("key%04d", i), "value" + i);
+        }
+        splitManager.writeToSSTable(data);
+        Thread.sleep(5);
+        splitManager.writeToSSTable(Map.of("key0500", "updated"), Map.of(),
+                List.of(new RangeTombstone("key0100", "key1099")));
+
+        splitManager.compact();
+
+        // The bottommost level has no older data to hide, so the range tombstones are gone with the data.
+        long entryCount = 0;
+        for (List<SSTable> level : splitManager.getLevels()) {
+            for (SSTable table : level) {
+                assertEquals(List.of(), table.properties().rangeTombstones);
+                entryCount += table.properties().entryCount;
+            }
+        }
+        assertEquals(1001, entryCount);
+        assertNull(splitManager.readFromSSTables("key0100"));
+        assertEquals("updated", splitManager.readFromSSTables("key0500"));
+        assertEquals("value1100", splitManager.readFromSSTables("key1100"));
+        assertEquals(1001, splitManager.readKeyRange("key0000", "key9999").size());
+    }
+
+    @Test
+    void testCompactionAboveOlderDataKeepsRangeTombstonesInDisjointTables() throws InterruptedException, IOException {
+        SSTableManager leveledManager = new SSTableManager(tempDir.resolve("leveled").toString(),
+                new SSTableManager.Options().setTargetFileSize(4 * 1024).setCompressionCodec(CompressionCodec.NONE)
+                        .setCompactionStrategy(new LeveledCompactionStrategy(2, 64 * 1024, 10)));
+        Map<String, String> data = new TreeMap<>();
+        for (int i = 0; i < 2000; i++) {
+            data.put(String.format("key%04d", i), "value" + i);
+        }
+        leveledManager.writeToSSTable(data);
+        Thread.sleep(5);
+        leveledManager.writeToSSTable(Map.of("key0000", "first"));
+        Thread.sleep(5);
+        assertEquals(1, leveledManager.compactAsNeeded());
+        // Level 1 now holds the data; delete a range spanning several of its tables and compact the deletes down.
+        leveledManager.writeToSSTable(Map.of("key0000", "second"));
+        Thread.sleep(5);
+        Map<String, String> batch = new TreeMap<>();
+        for (int i = 500; i < 600; i++) {
+            batch.put(String.format("key%04d", i), "again" + i);
+        }
+        leveledManager.writeToSSTable(batch, Map.of(), List.of(new RangeTombstone("key0200", "key1499")));
+        leveledManager.compactAsNeeded();
+
+        for (List<SSTable> level : leveledManager.getLevels().subList(1, leveledManager.getLevels().size())) {
+            for (int i = 1; i < level.size(); i++) {
+                assertTrue(level.get(i - 1).properties().largestKey.compareTo(level.get(i).properties().smallestKey) < 0,
+                        level.get(i - 1) + " overlaps " + level.get(i));
+            }
+        }
+        Map<String, String> expected = new TreeMap<>();
+        for (int i = 0; i < 2000; i++) {
+            if (i < 200 || i >= 1500) {
+                expected.put(String.format("key%04d", i), "value" + i);
+            } else if (i >= 500 && i < 600) {
+                expected.put(String.format("key%04d", i), "again" + i);
+            }
+        }
+        expected.put("key0000", "second");
+        assertEquals(expected, leveledManager.readKeyRange("key0000", "key9999"));
+        SSTableManager reloadedManager = new SSTableManager(tempDir.resolve("leveled").toString());
+        for (int i = 0; i < 2000; i += 7) {
+            String key = String.format("key%04d", i);
+            assertEquals(expected.get(key), reloadedManager.readFromSSTables(key), key);
+        }
+    }
+
+    @Test
+    void testTablesCoveredByRangeTombstonesAreDroppedWithoutRewriting() throws InterruptedException {
+        SSTableManager leveledManager = new SSTableManager(tempDir.resolve("covered").toString(),
+                new SSTableManager.Options().setCompactionStrategy(new LeveledCompactionStrategy(10, 1024 * 1024, 10)));
+        leveledManager.writeToSSTable(Map.of("tenant1/a", "1", "tenant1/b", "2"));
+        Thread.sleep(5);
+        leveledManager.writeToSSTable(Map.of("tenant2/a", "3"));
+        Thread.sleep(5);
+        leveledManager.writeToSSTable(Map.of(), Map.of(), List.of(new RangeTombstone("tenant1/", "tenant1/\uffff")));
+
+        assertEquals(0, leveledManager.compactAsNeeded());
+
+        assertEquals(0, leveledManager.getCompactionBytesWritten());
+        assertEquals(2, leveledManager.getTableCount());
+        assertNull(leveledManager.readFromSSTables("tenant1/a"));
+        assertEquals(Map.of("tenant2/a", "3"), leveledManager.readKeyRange("tenant", "tenant9"));
+        File[] tableFiles = tempDir.resolve("covered").toFile().listFiles((dir, name) -> name.endsWith(".sst"));
+        assertEquals(2, tableFiles.length);
+    }
+
+    @Test
+    void testManifestRestoresLevelsAndFlushOrder() throws IOException {
+        SSTableManager leveledManager = new SSTableManager(tempDir.resolve("manifest").toString(),
+                new SSTableManager.Options().setCompactionStrategy(new LeveledCompactionStrategy(2, 1024 * 1024, 10)));
+        leveledManager.writeToSSTable(Map.of("a", "1", "b", "1"));
+        leveledManager.writeToSSTable(Map.of("b", "2", "c", "2"));
+        assertEquals(1, leveledManager.compactAsNeeded());
+        // Flushed right after each other: only the file numbers tell their order.
+        for (int i = 3; i <= 5; i++) {
+            leveledManager.writeToSSTable(Map.of("b", String.valueOf(i)));
+        }
+
+        SSTableManager reloadedManager = new SSTableManager(tempDir.resolve("manifest").toString());
+        assertEquals(tableNames(leveledManager), tableNames(reloadedManager));
+        assertEquals("5", reloadedManager.readFromSSTables("b"));
+        assertEquals(Map.of("a", "1", "b", "5", "c", "2"), reloadedManager.readKeyRange("a", "z"));
+        assertEquals(List.of("sstable_4.sst", "sstable_5.sst", "sstable_6.sst"), tableNames(reloadedManager).get(0));
+        reloadedManager.writeToSSTable(Map.of("d", "7"));
+        assertTrue(Files.exists(tempDir.resolve("manifest").resolve("sstable_7.sst")));
+    }
+
+    @Test
+    void testStartupDeletesFilesNotInTheManifest() throws IOException {
+        Path dir = tempDir.resolve("obsolete");
+        SSTableManager manager = new SSTableManager(dir.toString());
+        manager.writeToSSTable(Map.of("a", "1"));
+        // Left behind by a crash during a compaction that never got recorded.
+        for (String suffix : List.of(".sst", ".idx", ".bf")) {
+            Files.copy(dir.resolve("sstable_1" + suffix), dir.resolve("sstable_9" + suffix));
+        }
+        // Torn edit from a crash while appending to the manifest.
+        Files.write(dir.resolve("MANIFEST"), new byte[]{0, 0, 1, 0, 42}, StandardOpenOption.APPEND);
+
+        SSTableManager reloadedManager = new SSTableManager(dir.toString());
+        assertEquals(1, reloadedManager.getTableCount());
+        assertFalse(Files.exists(dir.resolve("sstable_9.sst")));
+        assertFalse(Files.exists(dir.resolve("sstable_9.bf")));
+        assertEquals("1", reloadedManager.readFromSSTables("a"));
+        reloadedManager.writeToSSTable(Map.of("a", "2"));
+        assertEquals("2", new SSTableManager(dir.toString()).readFromSSTables("a"));
+    }
+
+    @Test
+    void testDirectoryWithoutManifestIsLoadedByListingIt() throws IOException {
+        Path dir = tempDir.resolve("unmanifested");
+        SSTableManager manager = new SSTableManager(dir.toString());
+        manager.writeToSSTable(Map.of("a", "1"));
+        manager.writeToSSTable(Map.of("a", "2"));
+        Files.delete(dir.resolve("MANIFEST"));
+
+        SSTableManager reloadedManager = new SSTableManager(dir.toString());
+        assertEquals(2, reloadedManager.getTableCount());
+        assertEquals("2", reloadedManager.readFromSSTables("a"));
+        assertTrue(Files.exists(dir.resolve("MANIFEST")));
+        reloadedManager.writeToSSTable(Map.of("a", "3"));
+        assertTrue(Files.exists(dir.resolve("sstable_3.sst")));
+    }
+
+    @Test
+    void testLazyMetadataIsLoadedOnFirstProbe() {
+        Path dir = tempDir.resolve("lazy");
+        SSTableManager manager = new SSTableManager(dir.toString());
+        manager.writeToSSTable(Map.of("a1", "1", "a2", "2"));
+        manager.writeToSSTable(Map.of("b1", "3", "b2", "4"));
+        manager.writeToSSTable(Map.of("c1", "5", "c2", "6"));
+
+        SSTableManager lazyManager = new SSTableManager(dir.toString(), new SSTableManager.Options().setLazyMetadata(true));
+        List<SSTable> tables = lazyManager.getLevels().get(0);
+        for (SSTable table : tables) {
+            assertFalse(table.isMetadataLoaded());
+        }
+        // The key ranges come from the manifest, so only the table that may hold the key is loaded.
+        assertEquals("3", lazyManager.readFromSSTables("b1"));
+        assertFalse(tables.get(0).isMetadataLoaded());
+        assertTrue(tables.get(1).isMetadataLoaded());
+        assertFalse(tables.get(2).isMetadataLoaded());
+        assertNotNull(tables.get(1).getFilter());
+        assertEquals(Map.of("a1", "1", "a2", "2", "b1", "3", "b2", "4", "c1", "5", "c2", "6"),
+                lazyManager.readKeyRange("a", "z"));
+    }
+
+    @Test
+    void testMetadataIsLoadedInParallelAtStartup() {
+        Path dir = tempDir.resolve("parallel_load");
+        SSTableManager manager = new SSTableManager(dir.toString());
+        for (int table = 0; table < 20; table++) {
+            manager.writeToSSTable(Map.of(String.format("key%02d", table), "value" + table));
+        }
+
+        SSTableManager reloadedManager = new SSTableManager(dir.toString(),
+                new SSTableManager.Options().setMetadataLoadThreads(4));
+        for (SSTable table : reloadedManager.getLevels().get(0)) {
+            assertTrue(table.isMetadataLoaded());
+            assertNotNull(table.getFilter());
+        }
+        for (int table = 0; table < 20; table++) {
+            assertEquals("value" + table, reloadedManager.readFromSSTables(String.format("key%02d", table)));
+        }
+        assertThrows(IllegalArgumentException.class, () -> new SSTableManager.Options().setMetadataLoadThreads(0));
+    }
+
+    private static List<List<String>> tableNames(SSTableManager manager) {
+        List<List<String>> names = new ArrayList<>();
+        for (List<SSTable> level : manager.getLevels()) {
+            List<String> levelNames = new ArrayList<>();
+            for (SSTable table : level) {
+                levelNames.add(table.getFile().getName());
+            }
+            names.add(levelNames);
+        }
+        return names;
+    }
 }
@@ -1,12 +1,18 @@
 package kvStore.fileStore;
 
 import kvStore.bloomFilter.BloomFilter;
+import kvStore.fileStore.compression.CompressionCodec;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import static org.junit.jupiter.api.Assertions.*;
 
 public class SSTableTest {
@@ -19,7 +25,7 @@ public class SSTableTest {
 
     @BeforeEach
     void setUp() {
-        ssTable = new SSTable(TEST_FILE, bloomFilter);
+        ssTable = new SSTable(TEST_FILE, new SSTable.Options().setFilter(bloomFilter));
     }
 
     @AfterEach
@@ -39,4 +45,263 @@ public class SSTableTest {
         ssTable.write(Map.of("key1", "value1"));
         assertNull(ssTable.read("key3"));
     }
+
+    @Test
+    void testLookupAndIterationAcrossBlocks() throws IOException {
+        // Enough entries to span many data blocks.
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            entries.add(Entry.value(String.format("key%05d", i), "value" + i));
+        }
+        ssTable.write(entries);
+
+        assertEquals("value0", ssTable.read("key00000"));
+        assertEquals("value2718", ssTable.read("key02718"));
+        assertEquals("value4999", ssTable.read("key04999"));
+        assertNull(ssTable.read("key05000"));
+        assertNull(ssTable.read("key"));
+
+        // Seeking to a key between two stored keys starts at the next one.
+        try (SSTableIterator iterator = ssTable.iterator("key04990x")) {
+            int count = 0;
+            String previous = null;
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (previous == null) {
+                    assertEquals("key04991", entry.key);
+                } else {
+                    assertTrue(entry.key.compareTo(previous) > 0);
+                }
+                previous = entry.key;
+                count++;
+            }
+            assertEquals(9, count);
+        }
+        assertEquals(5000, ssTable.readAllKeys().size());
+    }
+
+    @Test
+    void testTombstonesAreStoredInline() throws IOException {
+        ssTable.write(List.of(Entry.value("a", "1"), Entry.tombstone("b"), Entry.value("c", "3")));
+
+        assertTrue(ssTable.get("b").isTombstone());
+        assertNull(ssTable.read("b"));
+        assertEquals("3", ssTable.read("c"));
+        assertEquals(List.of("a", "b", "c"), ssTable.readAllKeys());
+    }
+
+    @Test
+    void testValuesMayContainSeparators() throws IOException {
+        ssTable.write(Map.of("key,1", "value,with,commas\nand newline"));
+        assertEquals("value,with,commas\nand newline", ssTable.read("key,1"));
+    }
+
+    @Test
+    void testUnsortedEntriesAreRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> ssTable.write(List.of(Entry.value("b", "2"), Entry.value("a", "1"))));
+        assertFalse(Files.exists(ssTable.filePath));
+    }
+
+    @Test
+    void testSparseIndexCoversRunsOfBlocks() throws IOException {
+        List<IndexEntry> sparseIndex;
+        SSTableWriter.Options options = new SSTableWriter.Options().setIndexInterval(1000);
+        try (SSTableWriter writer = new SSTableWriter(ssTable.filePath, options)) {
+            for (int i = 0; i < 5000; i++) {
+                writer.add(Entry.value(String.format("key%05d", i), "value" + i));
+            }
+            sparseIndex = writer.finish();
+        }
+        SSTable sparseTable = new SSTable(TEST_FILE,
+                new SSTable.Options().setFilter(bloomFilter).setIndex(sparseIndex));
+
+        // One index entry per run of at least 1000 keys.
+        assertTrue(sparseTable.index().size() <= 5);
+        for (int i = 0; i < 5000; i += 97) {
+            assertEquals("value" + i, sparseTable.read(String.format("key%05d", i)));
+        }
+        assertNull(sparseTable.read("key01000x"));
+
+        // Seeking lands inside a run, past its first block.
+        try (SSTableIterator iterator = sparseTable.iterator("key00700")) {
+            assertEquals("key00700", iterator.next().key);
+            assertEquals("key00701", iterator.next().key);
+        }
+    }
+
+    @Test
+    void testCompressedBlocksRoundTripAndShrinkTheFile() throws IOException {
+        Path uncompressedFile = Files.createTempFile("sstable_uncompressed", ".sst");
+        try {
+            writeSequentialKeys(uncompressedFile, CompressionCodec.NONE);
+            writeSequentialKeys(ssTable.filePath, CompressionCodec.DEFLATE);
+
+            assertTrue(Files.size(ssTable.filePath) < Files.size(uncompressedFile) / 2,
+                    "Deflate should at least halve repetitive data");
+            assertEquals("value-1234-value-1234-value-1234", ssTable.read(String.format("key%05d", 1234)));
+            assertEquals(3000, ssTable.readAllKeys().size());
+        } finally {
+            Files.deleteIfExists(uncompressedFile);
+        }
+    }
+
+    @Test
+    void testCorruptedBlockIsDetected() throws IOException {
+        writeSequentialKeys(ssTable.filePath, CompressionCodec.DEFLATE);
+        // Flip a byte inside the first data block.
+        try (RandomAccessFile file = new RandomAccessFile(ssTable.filePath.toFile(), "rw")) {
+            file.seek(20);
+            int original = file.read();
+            file.seek(20);
+            file.write(original ^ 0xFF);
+        }
+        SSTable reopened = new SSTable(TEST_FILE, new SSTable.Options());
+        IOException error = assertThrows(IOException.class, () -> reopened.read("key00000"));
+        assertTrue(error.getMessage().contains("checksum"), error.getMessage());
+    }
+
+    @Test
+    void testCorruptedBlockLengthIsDetected() throws IOException {
+        writeSequentialKeys(ssTable.filePath, CompressionCodec.DEFLATE);
+        // The first block's stored length is the file's first four bytes.
+        try (RandomAccessFile file = new RandomAccessFile(ssTable.filePath.toFile(), "rw")) {
+            file.seek(0);
+            file.writeInt(Integer.MAX_VALUE - 4);
+        }
+        SSTable reopened = new SSTable(TEST_FILE, new SSTable.Options());
+        IOException error = assertThrows(IOException.class, () -> reopened.read("key00000"));
+        assertTrue(error.getMessage().contains("offset 0"), error.getMessage());
+    }
+
+    @Test
+    void testPrefixCompressedKeysSeekInStringOrder() throws IOException {
+        // Shared prefixes, multi-byte characters and supplementary characters, which sort differently
+        // as UTF-16 (String order) than as UTF-8 bytes.
+        TreeMap<String, String> data = new TreeMap<>();
+        String[] suffixes = {"a", "ab", "abc", "\u00e9", "\uE000", "\uFFFF", "\uD83D\uDE00", "z"};
+        for (int i = 0; i < 500; i++) {
+            data.put("tenant:entity:" + i / 7 + ":" + suffixes[i % suffixes.length], "v" + i);
+        }
+        List<Entry> entries = new ArrayList<>();
+        data.forEach((key, value) -> entries.add(Entry.value(key, value)));
+        ssTable.write(entries);
+
+        for (Map.Entry<String, String> entry : data.entrySet()) {
+            assertEquals(entry.getValue(), ssTable.read(entry.getKey()), entry.getKey());
+            // A key just past an existing one is absent, and seeking to it lands on the next key.
+            String missing = entry.getKey() + "\u0000";
+            assertNull(ssTable.read(missing));
+            try (SSTableIterator iterator = ssTable.iterator(missing)) {
+                String expected = data.higherKey(entry.getKey());
+                assertEquals(expected, iterator.hasNext() ? iterator.next().key : null);
+            }
+        }
+        assertEquals(new ArrayList<>(data.keySet()), ssTable.readAllKeys());
+    }
+
+    @Test
+    void testPrefixCompressionShrinksHierarchicalKeys() throws IOException {
+        Path fullKeysFile = Files.createTempFile("sstable_full_keys", ".sst");
+        try {
+            writeHierarchicalKeys(fullKeysFile, 1);
+            writeHierarchicalKeys(ssTable.filePath, 16);
+            assertTrue(Files.size(ssTable.filePath) < Files.size(fullKeysFile) * 3 / 4);
+            assertEquals("v1234", ssTable.read("tenant:orders:0000001234"));
+        } finally {
+            Files.deleteIfExists(fullKeysFile);
+        }
+    }
+
+    private static void writeHierarchicalKeys(Path path, int restartInterval) throws IOException {
+        SSTableWriter.Options options = new SSTableWriter.Options().setRestartInterval(restartInterval);
+        try (SSTableWriter writer = new SSTableWriter(path, options)) {
+            for (int i = 0; i < 3000; i++) {
+                writer.add(Entry.value(String.format("tenant:orders:%010d", i), "v" + i));
+            }
+            writer.finish();
+        }
+    }
+
+    @Test
+    void testMemoryMappedTableReadsInPlace() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            String key = String.format("key%05d", i);
+            entries.add(i % 10 == 0 ? Entry.tombstone(key) : Entry.value(key, "value" + i));
+        }
+        ssTable.write(entries);
+        BlockCache blockCache = new BlockCache(1024 * 1024);
+        SSTable mapped = new SSTable(TEST_FILE, new SSTable.Options().setBlockCache(blockCache).setMemoryMapped(true));
+
+        assertEquals("value1234", mapped.read("key01234"));
+        assertTrue(mapped.get("key01230").isTombstone());
+        assertNull(mapped.get("key01234x"));
+        try (SSTableIterator iterator = mapped.iterator("key01995")) {
+            assertEquals("key01995", iterator.next().key);
+            assertEquals("key01996", iterator.next().key);
+        }
+        assertEquals(2000, mapped.readAllKeys().size());
+        // Uncompressed blocks are views of the mapping and stay out of the block cache.
+        assertEquals(0, blockCache.getUsage());
+
+        // Released the way compaction does before deleting the file.
+        mapped.release();
+        Files.delete(mapped.filePath);
+        assertThrows(IOException.class, () -> mapped.get("key01234"));
+    }
+
+    @Test
+    void testPropertiesAreStoredInTheFile() throws IOException {
+        ssTable.write(List.of(Entry.value("apple", "red"), Entry.tombstone("banana"), Entry.value("cherry", "dark")));
+
+        TableProperties properties = new SSTable(TEST_FILE, new SSTable.Options()).properties();
+        assertEquals("apple", properties.smallestKey);
+        assertEquals("cherry", properties.largestKey);
+        assertEquals(3, properties.entryCount);
+        assertEquals(1, properties.tombstoneCount);
+        assertTrue(properties.mayContain("banana"));
+        assertFalse(properties.mayContain("aardvark"));
+        assertFalse(properties.mayContain("date"));
+        assertTrue(properties.overlaps("b", "c"));
+        assertTrue(properties.overlaps(null, "apple"));
+        assertFalse(properties.overlaps("cherryx", null));
+        assertFalse(properties.overlaps("a", "aa"));
+    }
+
+    @Test
+    void testReverseIterationAcrossBlocks() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            entries.add(Entry.value(String.format("key%05d", i), "value" + i));
+        }
+        ssTable.write(entries);
+
+        List<String> keys = new ArrayList<>();
+        try (SSTableReverseIterator iterator = ssTable.reverseIterator("key01000x")) {
+            while (iterator.hasNext()) {
+                keys.add(iterator.next().key);
+            }
+        }
+        assertEquals(1001, keys.size());
+        assertEquals("key01000", keys.get(0));
+        assertEquals("key00999", keys.get(1));
+        assertEquals("key00000", keys.get(1000));
+
+        try (SSTableReverseIterator iterator = ssTable.reverseIterator(null)) {
+            assertEquals("key01999", iterator.next().key);
+        }
+        try (SSTableReverseIterator iterator = ssTable.reverseIterator("a")) {
+            assertFalse(iterator.hasNext());
+        }
+    }
+
+    private static void writeSequentialKeys(Path path, CompressionCodec codec) throws IOException {
+        try (SSTableWriter writer = new SSTableWriter(path, new SSTableWriter.Options().setCompressionCodec(codec))) {
+            for (int i = 0; i < 3000; i++) {
+                writer.add(Entry.value(String.format("key%05d", i), "value-" + i + "-value-" + i + "-value-" + i));
+            }
+            writer.finish();
+        }
+    }
 }
@@ -49,6 +49,7 @@ public class SSTableTombstoneTest {
         for (int i = 4; i < 1010; i++) {
             memTable.put("key" + i, "value" + i);
         }
+        memTable.awaitFlush();
 
         // Now, after flush, the tombstone for "key2" should have been persisted.
         // Simulate a restart by creating a new SSTableManager from the same directory.
@@ -83,6 +84,7 @@ public class SSTableTombstoneTest {
         for (int i = 1010; i < 2010; i++) {
             memTable.put("key" + i, "value" + i);
         }
+        memTable.awaitFlush();
 
         // Manually trigger compaction.
         storageEngine.compactSSTables();
@@ -114,6 +116,7 @@ public class SSTableTombstoneTest {
         for (int i = 1010; i < 2010; i++) {
             memTable.put("key" + i, "value" + i);
         }
+        memTable.awaitFlush();
 
         // Manually trigger compaction.
         storageEngine.compactSSTables();
@@ -0,0 +1,135 @@
+package kvStore.fileStore;
+
+import kvStore.fileStore.compression.CompressionCodec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SizeTieredCompactionStrategyTest {
+    private Path tempDir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        tempDir = Files.createTempDirectory("size_tiered_test");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.walk(tempDir)
+                .sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(File::delete); //TODO - handle output
+    }
+
+    private SSTableManager newManager() {
+        return new SSTableManager(tempDir.toString(), new SSTableManager.Options()
+                .setCompressionCodec(CompressionCodec.NONE)
+                .setTargetFileSize(8 * 1024)
+                .setCompactionStrategy(new SizeTieredCompactionStrategy(1, 4, 200)));
+    }
+
+    // Writes a flushed table of keys that no other batch writes.
+    private static void writeBatch(SSTableManager manager, int batch, int keys) throws InterruptedException {
+        Map<String, String> data = new TreeMap<>();
+        for (int i = 0; i < keys; i++) {
+            data.put(String.format("key%04d-%02d", i, batch), "value" + batch);
+        }
+        manager.writeToSSTable(data);
+        Thread.sleep(2);
+    }
+
+    @Test
+    void testSimilarlySizedRunsAreMergedOnceThresholdIsHit() throws InterruptedException {
+        SSTableManager manager = newManager();
+        for (int batch = 0; batch < 3; batch++) {
+            writeBatch(manager, batch, 200);
+            assertEquals(0, manager.compactAsNeeded());
+        }
+        writeBatch(manager, 3, 200);
+        assertEquals(1, manager.compactAsNeeded());
+        assertEquals(0, manager.getLevels().get(0).size());
+        long mergedTables = manager.getLevels().get(1).size();
+
+        // Four smaller flushes form a window of their own; the larger run moves down a level to make room.
+        for (int batch = 4; batch < 8; batch++) {
+            writeBatch(manager, batch, 100);
+        }
+        assertEquals(2, manager.compactAsNeeded());
+        List<List<SSTable>> levels = manager.getLevels();
+        assertEquals(0, levels.get(0).size());
+        assertFalse(levels.get(1).isEmpty());
+        assertEquals(mergedTables, levels.get(2).size());
+
+        for (int batch = 0; batch < 8; batch++) {
+            assertEquals("value" + batch, manager.readFromSSTables(String.format("key0042-%02d", batch)));
+        }
+        assertEquals(1200, manager.readKeyRange("key", "key~").size());
+    }
+
+    @Test
+    void testSpaceAmplificationMergesAllRuns() throws InterruptedException {
+        SSTableManager manager = new SSTableManager(tempDir.toString(), new SSTableManager.Options()
+                .setCompressionCodec(CompressionCodec.NONE)
+                .setCompactionStrategy(new SizeTieredCompactionStrategy(1, 2, 50)));
+        Map<String, String> data = new TreeMap<>();
+        for (int i = 0; i < 1000; i++) {
+            data.put(String.format("key%04d", i), "old");
+        }
+        manager.writeToSSTable(data);
+        manager.compactAsNeeded();
+        Thread.sleep(2);
+        // A run much smaller than the next older one is never merged by size, but it is by space amplification.
+        for (int i = 0; i < 600; i++) {
+            data.put(String.format("key%04d", i), "new");
+        }
+        manager.writeToSSTable(data.entrySet().stream().filter(e -> e.getValue().equals("new"))
+                .collect(TreeMap::new, (map, e) -> map.put(e.getKey(), e.getValue()), Map::putAll));
+
+        assertEquals(1, manager.compactAsNeeded());
+        assertEquals(1, manager.getTableCount());
+        assertEquals("new", manager.readFromSSTables("key0042"));
+        assertEquals("old", manager.readFromSSTables("key0942"));
+    }
+
+    @Test
+    void testDataSurvivesRandomWritesAndRestart() throws InterruptedException {
+        SSTableManager manager = newManager();
+        Map<String, String> expected = new TreeMap<>();
+        Random random = new Random(7);
+        for (int batch = 0; batch < 20; batch++) {
+            Map<String, String> data = new TreeMap<>();
+            Map<String, Boolean> deletes = new TreeMap<>();
+            for (int i = 0; i < 200; i++) {
+                String key = String.format("key%05d", random.nextInt(2000));
+                if (random.nextInt(10) == 0) {
+                    deletes.put(key, true);
+                    data.remove(key);
+                    expected.remove(key);
+                } else {
+                    data.put(key, "value" + batch);
+                    deletes.remove(key);
+                    expected.put(key, "value" + batch);
+                }
+            }
+            manager.writeToSSTable(data, deletes);
+            manager.compactAsNeeded();
+            Thread.sleep(2);
+        }
+
+        for (SSTableManager reader : List.of(manager, newManager())) {
+            for (int i = 0; i < 2000; i++) {
+                String key = String.format("key%05d", i);
+                assertEquals(expected.get(key), reader.readFromSSTables(key), key);
+            }
+            assertEquals(expected, reader.readKeyRange("key00000", "key99999"));
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package kvStore.fileStore;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class StartupPerformanceTest {
+    private static final int NUM_TABLES = 10_000;
+    private static final int KEYS_PER_TABLE = 100;
+
+    public static void main(String[] args) throws Exception {
+        Path directory = Files.createTempDirectory("startup_perf_test");
+        try {
+            long writeStartTime = System.nanoTime();
+            SSTableManager manager = new SSTableManager(directory.toString());
+            for (int table = 0; table < NUM_TABLES; table++) {
+                Map<String, String> data = new TreeMap<>();
+                for (int i = 0; i < KEYS_PER_TABLE; i++) {
+                    data.put(key(table * KEYS_PER_TABLE + i), "value" + i);
+                }
+                manager.writeToSSTable(data);
+            }
+            System.out.printf("Wrote %d tables in %.0f ms%n", NUM_TABLES, (System.nanoTime() - writeStartTime) / 1e6);
+
+            // Without a manifest the directory is listed and every table loaded on the opening thread, as before.
+            Files.delete(directory.resolve(Manifest.FILE_NAME));
+            run(directory, "directory listing", new SSTableManager.Options());
+            for (int round = 0; round < 2; round++) {
+                run(directory, "manifest, 1 thread", new SSTableManager.Options().setMetadataLoadThreads(1));
+                run(directory, "manifest, 4 threads", new SSTableManager.Options().setMetadataLoadThreads(4));
+                run(directory, "manifest, lazy", new SSTableManager.Options().setLazyMetadata(true));
+            }
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    private static void run(Path directory, String label, SSTableManager.Options options) {
+        long startTime = System.nanoTime();
+        SSTableManager manager = new SSTableManager(directory.toString(), options);
+        double startupMs = (System.nanoTime() - startTime) / 1e6;
+
+        Random random = new Random(42);
+        long readStartTime = System.nanoTime();
+        String value = manager.readFromSSTables(key(random.nextInt(NUM_TABLES * KEYS_PER_TABLE)));
+        double firstReadMs = (System.nanoTime() - readStartTime) / 1e6;
+        if (value == null) {
+            throw new IllegalStateException("Key not found");
+        }
+        readStartTime = System.nanoTime();
+        for (int i = 0; i < 10_000; i++) {
+            manager.readFromSSTables(key(random.nextInt(NUM_TABLES * KEYS_PER_TABLE)));
+        }
+        double readsMs = (System.nanoTime() - readStartTime) / 1e6;
+        System.out.printf("[%s] %d tables: startup %.1f ms, first read %.2f ms, next 10,000 reads %.0f ms%n",
+                label, manager.getTableCount(), startupMs, firstReadMs, readsMs);
+    }
+
+    private static String key(int i) {
+        return String.format("key%08d", i);
+    }
+
+    private static void deleteDirectory(Path directory) {
+        File[] files = directory.toFile().listFiles();
+        if (files != null) {
+            Arrays.sort(files, Comparator.reverseOrder());
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.toFile().delete();
+    }
+}
+
+/*
+10,000 tables of 100 keys each, all on level 0 with disjoint key ranges. The files are in the page cache,
+and the sandbox has a single core, so the threads only overlap file reads with deserialization.
+
+Wrote 10000 tables in 10601 ms
+[directory listing] 10000 tables: startup 2078,3 ms, first read 74,30 ms, next 10,000 reads 2914 ms
+Loaded the metadata of 10000 SSTables on 1 threads in 1154 ms
+[manifest, 1 thread] 10000 tables: startup 1419,4 ms, first read 2,21 ms, next 10,000 reads 2110 ms
+Loaded the metadata of 10000 SSTables on 4 threads in 741 ms
+[manifest, 4 threads] 10000 tables: startup 941,7 ms, first read 0,34 ms, next 10,000 reads 1308 ms
+[manifest, lazy] 10000 tables: startup 217,3 ms, first read 0,73 ms, next 10,000 reads 1617 ms
+Loaded the metadata of 10000 SSTables on 1 threads in 559 ms
+[manifest, 1 thread] 10000 tables: startup 702,1 ms, first read 0,30 ms, next 10,000 reads 1390 ms
+Loaded the metadata of 10000 SSTables on 4 threads in 594 ms
+[manifest, 4 threads] 10000 tables: startup 724,5 ms, first read 0,33 ms, next 10,000 reads 931 ms
+[manifest, lazy] 10000 tables: startup 119,7 ms, first read 0,60 ms, next 10,000 reads 1625 ms
+ */
@@ -0,0 +1,98 @@
+package kvStore.fileStore;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TableHandleCacheTest {
+    private Path tempDir;
+    private final List<Path> files = new ArrayList<>();
+
+    @BeforeEach
+    void setup() throws IOException {
+        tempDir = Files.createTempDirectory("handle_cache_test");
+        for (int i = 0; i < 4; i++) {
+            files.add(Files.writeString(tempDir.resolve("file" + i), "data" + i));
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.walk(tempDir)
+                .sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(File::delete); //TODO - handle output
+    }
+
+    @Test
+    void testHandleIsReusedAcrossReads() throws IOException {
+        TableHandleCache cache = new TableHandleCache(2);
+        FileChannel first;
+        try (TableHandleCache.Handle handle = cache.acquire(files.get(0))) {
+            first = handle.channel();
+        }
+        try (TableHandleCache.Handle handle = cache.acquire(files.get(0))) {
+            assertSame(first, handle.channel());
+        }
+        assertTrue(first.isOpen());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    void testLeastRecentlyUsedHandleIsClosed() throws IOException {
+        TableHandleCache cache = new TableHandleCache(2);
+        FileChannel[] channels = new FileChannel[3];
+        for (int i = 0; i < 3; i++) {
+            try (TableHandleCache.Handle handle = cache.acquire(files.get(i))) {
+                channels[i] = handle.channel();
+            }
+            if (i == 1) {
+                // Touch file 0 so file 1 becomes the eldest.
+                cache.acquire(files.get(0)).close();
+            }
+        }
+        assertEquals(2, cache.getOpenCount());
+        assertTrue(channels[0].isOpen());
+        assertFalse(channels[1].isOpen());
+        assertTrue(channels[2].isOpen());
+    }
+
+    @Test
+    void testEvictedHandleStaysOpenUntilReleased() throws IOException {
+        TableHandleCache cache = new TableHandleCache(2);
+        TableHandleCache.Handle held = cache.acquire(files.get(0));
+        cache.evict(files.get(0));
+
+        assertEquals(0, cache.getOpenCount());
+        assertTrue(held.channel().isOpen());
+        held.close();
+        assertFalse(held.channel().isOpen());
+    }
+
+    @Test
+    void testClosedChannelIsReopened() throws IOException {
+        TableHandleCache cache = new TableHandleCache(2);
+        FileChannel first;
+        try (TableHandleCache.Handle handle = cache.acquire(files.get(0))) {
+            first = handle.channel();
+            // What an interrupted read does to a channel.
+            first.close();
+        }
+        try (TableHandleCache.Handle handle = cache.acquire(files.get(0))) {
+            assertNotSame(first, handle.channel());
+            assertTrue(handle.channel().isOpen());
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package kvStore.fileStore.compression;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompressionCodecTest {
+
+    @Test
+    void testDeflateRoundTrip() throws IOException {
+        byte[] data = "tenant:entity:0001=value;".repeat(200).getBytes(StandardCharsets.UTF_8);
+        for (int level = 1; level <= 9; level++) {
+            DeflateCodec codec = new DeflateCodec(level);
+            byte[] compressed = codec.compress(data);
+            assertTrue(compressed.length < data.length / 4);
+            assertArrayEquals(data, codec.decompress(compressed, data.length));
+        }
+    }
+
+    @Test
+    void testDeflateRejectsCorruptInput() {
+        byte[] data = "some block contents".getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = CompressionCodec.DEFLATE.compress(data);
+        assertThrows(IOException.class, () -> CompressionCodec.DEFLATE.decompress(compressed, data.length + 10));
+    }
+
+    @Test
+    void testRegistry() throws IOException {
+        assertSame(CompressionCodec.NONE, CompressionCodec.forId((byte) 0));
+        assertSame(CompressionCodec.DEFLATE, CompressionCodec.forId((byte) 1));
+        assertThrows(IOException.class, () -> CompressionCodec.forId((byte) 42));
+
+        // Another deflate level is the same codec on disk; a different codec may not reuse the id.
+        CompressionCodec.register(new DeflateCodec(9));
+        assertThrows(IllegalArgumentException.class, () -> CompressionCodec.register(new CompressionCodec() {
+            public byte id() { return 1; }
+            public String name() { return "fake"; }
+            public byte[] compress(byte[] data) { return data; }
+            public byte[] decompress(byte[] data, int uncompressedLength) { return data; }
+        }));
+    }
+}
@@ -29,8 +29,8 @@ public class StorageEngineIntegrationTest {
 
     @AfterEach
     void tearDown() throws IOException {
-        // Stop background compaction if running
-        storageEngine.stopBackgroundCompaction();
+        // Stop background compaction if running, and close the table files
+        storageEngine.close();
         // Recursively delete temporary directory and files
         Files.walk(tempDir)
                 .sorted(Comparator.reverseOrder())
@@ -107,6 +107,27 @@ public class StorageEngineIntegrationTest {
         assertEquals("brown", rangeResult.get("date"));
     }
 
+    @Test
+    void testReadKeyRangeMergesMemTableOverSSTables() {
+        // 1000 puts fill the MemTable and flush it to an SSTable.
+        for (int i = 0; i < 1000; i++) {
+            storageEngine.put(String.format("key%04d", i), "old" + i);
+        }
+        memTable.awaitFlush();
+        storageEngine.put("key0101", "new101");
+        storageEngine.delete("key0102");
+        storageEngine.put("key0103x", "added");
+
+        Map<String, String> expected = new TreeMap<>();
+        expected.put("key0100", "old100");
+        expected.put("key0101", "new101");
+        expected.put("key0103", "old103");
+        expected.put("key0103x", "added");
+        expected.put("key0104", "old104");
+        assertEquals(expected, storageEngine.readKeyRange("key0100", "key0104"));
+        assertTrue(storageEngine.readKeyRange("key2000", "key3000").isEmpty());
+    }
+
     @Test
     void testBackgroundCompaction() throws InterruptedException {
         // Start background compaction to run every 500ms
@@ -116,6 +137,7 @@ public class StorageEngineIntegrationTest {
         for (int i = 0; i < 2500; i++) {
             memTable.put("key" + i, "value" + i);
         }
+        memTable.awaitFlush();
 
         // Delete a few specific keys
         memTable.delete("key100");
@@ -137,4 +159,106 @@ public class StorageEngineIntegrationTest {
         assertEquals("value2499", storageEngine.get("key2499"));
         assertEquals("value1501", storageEngine.get("key1501"));
     }
+
+    @Test
+    void testRowCacheStaysCoherentAcrossWritesFlushAndCompaction() {
+        SSTableManager ssTableManager = new SSTableManager(tempDir.resolve("row_cache").toString());
+        WriteAheadLog wal = new WriteAheadLog(tempDir.resolve("row_cache").toString());
+        MemTable cachedMemTable = new MemTable(ssTableManager, wal);
+        StorageEngine cachedEngine = new StorageEngine(cachedMemTable, ssTableManager, 1024 * 1024);
+
+        // Flush a first batch so that reads go to the SSTables.
+        for (int i = 0; i < 1000; i++) {
+            cachedEngine.put("key" + i, "value" + i);
+        }
+        cachedMemTable.awaitFlush();
+        assertEquals("value10", cachedEngine.get("key10"));
+        assertEquals("value10", cachedEngine.get("key10"));
+        assertNull(cachedEngine.get("missing"));
+        assertNull(cachedEngine.get("missing"));
+        assertTrue(cachedEngine.getRowCache().getHitCount() >= 2);
+
+        // Writes through the engine are visible immediately.
+        cachedEngine.put("key10", "updated");
+        cachedEngine.put("missing", "found");
+        assertEquals("updated", cachedEngine.get("key10"));
+        assertEquals("found", cachedEngine.get("missing"));
+        cachedEngine.delete("key11");
+        assertNull(cachedEngine.get("key11"));
+
+        // Writes that bypass the engine are picked up once they are flushed out of the MemTable.
+        assertEquals("value12", cachedEngine.get("key12"));
+        cachedMemTable.put("key12", "direct");
+        for (int i = 1000; i < 2000; i++) {
+            cachedMemTable.put("key" + i, "value" + i);
+        }
+        cachedMemTable.awaitFlush();
+        assertEquals("direct", cachedEngine.get("key12"));
+        assertEquals("updated", cachedEngine.get("key10"));
+
+        // So are range deletes, which drop every cached key in their range.
+        assertEquals("value25", cachedEngine.get("key25"));
+        cachedMemTable.deleteRange("key20", "key29");
+        for (int i = 2000; i < 3000; i++) {
+            cachedMemTable.put("key" + i, "value" + i);
+        }
+        cachedMemTable.awaitFlush();
+        assertNull(cachedEngine.get("key25"));
+        assertEquals("value30", cachedEngine.get("key30"));
+
+        cachedEngine.compactSSTables();
+        assertEquals("direct", cachedEngine.get("key12"));
+        assertNull(cachedEngine.get("key11"));
+        assertEquals("value1500", cachedEngine.get("key1500"));
+        wal.close();
+    }
+
+    @Test
+    void testDeleteRangeAcrossMemTableSSTablesAndRestart() {
+        SSTableManager ssTableManager = new SSTableManager(tempDir.resolve("range").toString());
+        WriteAheadLog wal = new WriteAheadLog(tempDir.resolve("range").toString());
+        MemTable rangeMemTable = new MemTable(ssTableManager, wal);
+        StorageEngine rangeEngine = new StorageEngine(rangeMemTable, ssTableManager, 1024 * 1024);
+        // The first 1000 keys fill the MemTable and are flushed, the rest stay in memory.
+        for (int i = 0; i < 1500; i++) {
+            rangeEngine.put(String.format("key%04d", i), "value" + i);
+        }
+        rangeMemTable.awaitFlush();
+        assertEquals("value300", rangeEngine.get("key0300"));
+
+        rangeEngine.deleteRange("key0200", "key1199");
+        rangeEngine.put("key0300", "revived");
+
+        assertNull(rangeEngine.get("key0200"));
+        assertNull(rangeEngine.get("key1199"));
+        assertEquals("revived", rangeEngine.get("key0300"));
+        assertEquals("value199", rangeEngine.get("key0199"));
+        assertEquals("value1200", rangeEngine.get("key1200"));
+        Map<String, String> range = rangeEngine.readKeyRange("key0190", "key1210");
+        assertEquals(10 + 1 + 11, range.size());
+        assertEquals("revived", range.get("key0300"));
+
+        // Replayed from the WAL after a restart.
+        WriteAheadLog recoveredWal = new WriteAheadLog(tempDir.resolve("range").toString());
+        MemTable recoveredMemTable = new MemTable(ssTableManager, recoveredWal);
+        recoveredMemTable.recoverFromWAL();
+        StorageEngine recoveredEngine = new StorageEngine(recoveredMemTable, ssTableManager);
+        assertNull(recoveredEngine.get("key0500"));
+        assertNull(recoveredEngine.get("key1100"));
+        assertEquals("revived", recoveredEngine.get("key0300"));
+        assertEquals(range, recoveredEngine.readKeyRange("key0190", "key1210"));
+
+        // Flushed with the next batch, then compacted away.
+        for (int i = 2000; i < 3000; i++) {
+            recoveredEngine.put(String.format("key%04d", i), "value" + i);
+        }
+        recoveredMemTable.awaitFlush();
+        recoveredEngine.compactSSTables();
+        assertNull(recoveredEngine.get("key0500"));
+        assertEquals("revived", recoveredEngine.get("key0300"));
+        assertEquals(range, recoveredEngine.readKeyRange("key0190", "key1210"));
+        assertThrows(IllegalArgumentException.class, () -> recoveredEngine.deleteRange("b", "a"));
+        wal.close();
+        recoveredWal.close();
+    }
 }
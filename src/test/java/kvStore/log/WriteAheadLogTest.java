@@ -1,5 +1,6 @@
 package kvStore.log;
 
+import kvStore.fileStore.RateLimiter;
 import org.junit.jupiter.api.*;
 import java.io.*;
 import java.nio.file.*;
@@ -55,6 +56,18 @@ public class WriteAheadLogTest {
         assertEquals("value3", e3.value);
     }
 
+    @Test
+    void testDeleteRangeIsRecovered() {
+        wal.appendPut("tenant1/a", "value1");
+        wal.appendDeleteRange("tenant1/", "tenant1/z");
+
+        List<WriteAheadLog.LogEntry> entries = wal.recover();
+        assertEquals(2, entries.size());
+        assertEquals(WriteAheadLog.LogEntry.Operation.DELETE_RANGE, entries.get(1).op);
+        assertEquals("tenant1/", entries.get(1).key);
+        assertEquals("tenant1/z", entries.get(1).value);
+    }
+
     @Test
     void testRotate() throws InterruptedException {
         // Append an operation.
@@ -112,4 +125,20 @@ public class WriteAheadLogTest {
         assertEquals("valueB", e2.value);
 
     }
-}
\ No newline at end of file
+
+    @Test
+    void testAppendsAreChargedToTheRateLimiter() throws IOException {
+        RateLimiter limiter = new RateLimiter(1024 * 1024);
+        Path directory = Files.createDirectory(tempDir.resolve("limited"));
+        WriteAheadLog limitedWal = new WriteAheadLog(directory.toString(), true, limiter);
+        limitedWal.appendPut("key1", "value1");
+        limitedWal.appendDelete("key2");
+        limitedWal.appendPut("schlüssel", "größe");
+        limitedWal.close();
+
+        // "PUT,key1,value1\n", "DELETE,key2\n" and "PUT,schlüssel,größe\n", whose umlauts and ß take two bytes each.
+        assertEquals(16 + 12 + 23, limiter.getBytesGranted(RateLimiter.Priority.FOREGROUND));
+        assertEquals(0, limiter.getBytesGranted(RateLimiter.Priority.BACKGROUND));
+        assertEquals(limitedWal.getLogFile().length(), limiter.getBytesGranted(RateLimiter.Priority.FOREGROUND));
+    }
+}
@@ -0,0 +1,84 @@
+package kvStore.memStore;
+
+import kvStore.fileStore.SSTableManager;
+import kvStore.log.WriteAheadLog;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+
+public class MemTablePerformanceTest {
+    private static final int NUM_PUTS = 200_000;
+
+    public static void main(String[] args) throws Exception {
+        for (int round = 0; round < 2; round++) {
+            run("unpaced", 0);
+            // Pauses after every full MemTable, so the writes come in no faster than the flushes go out.
+            run("paced", 10);
+        }
+    }
+
+    private static void run(String label, long pauseMs) throws Exception {
+        Path directory = Files.createTempDirectory("memtable_perf_test");
+        try {
+            SSTableManager ssTableManager = new SSTableManager(directory.toString());
+            MemTable memTable = new MemTable(ssTableManager, new WriteAheadLog(directory.toString()));
+            // Every 1,000 puts fill the MemTable, so the run goes through 200 flushes.
+            long[] latencies = new long[NUM_PUTS];
+            long startTime = System.nanoTime();
+            for (int i = 0; i < NUM_PUTS; i++) {
+                long putStartTime = System.nanoTime();
+                memTable.put(String.format("key%08d", i), "value" + i);
+                latencies[i] = System.nanoTime() - putStartTime;
+                if (pauseMs > 0 && i % 1000 == 999) {
+                    Thread.sleep(pauseMs);
+                }
+            }
+            double durationMs = (System.nanoTime() - startTime) / 1e6;
+            memTable.awaitFlush();
+            Arrays.sort(latencies);
+            System.out.printf("[%s] %d puts in %.0f ms: p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f ms, %d SSTables%n",
+                    label, NUM_PUTS, durationMs, percentile(latencies, 0.5) / 1e3, percentile(latencies, 0.99) / 1e3,
+                    percentile(latencies, 0.999) / 1e3, latencies[NUM_PUTS - 1] / 1e6, ssTableManager.getTableCount());
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.round(sorted.length * fraction))];
+    }
+
+    private static void deleteDirectory(Path directory) {
+        File[] files = directory.toFile().listFiles();
+        if (files != null) {
+            Arrays.sort(files, Comparator.reverseOrder());
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.toFile().delete();
+    }
+}
+
+/*
+200,000 puts of distinct keys, timed one by one; the MemTable fills every 1,000 puts. Unpaced, the writer
+fills MemTables faster than the single core of the sandbox flushes them, so it stalls at the frozen MemTable
+limit on almost every swap and waits for flushes either way. Paced to a rate the flushes keep up with, the
+full MemTable is no longer flushed on the put that fills it: p99.9 drops from ~3.3 ms to 0.15-0.3 ms. The
+max stays around 10 ms, the flush thread taking the only core away from the writer.
+
+Before, flushing on the writing thread:
+[unpaced] 200000 puts in 2926 ms: p50 1,8 us, p99 14,9 us, p99.9 4093,5 us, max 68,3 ms, 200 SSTables
+[paced] 200000 puts in 3842 ms: p50 2,4 us, p99 6,4 us, p99.9 3495,3 us, max 15,7 ms, 200 SSTables
+[unpaced] 200000 puts in 1488 ms: p50 2,3 us, p99 4,6 us, p99.9 3503,1 us, max 13,4 ms, 200 SSTables
+[paced] 200000 puts in 3442 ms: p50 2,3 us, p99 4,7 us, p99.9 3124,2 us, max 18,8 ms, 200 SSTables
+
+After, flushing in the background:
+[unpaced] 200000 puts in 2313 ms: p50 2,5 us, p99 22,0 us, p99.9 4051,3 us, max 59,4 ms, 200 SSTables
+[paced] 200000 puts in 2926 ms: p50 2,1 us, p99 5,3 us, p99.9 311,5 us, max 9,6 ms, 200 SSTables
+[unpaced] 200000 puts in 964 ms: p50 1,5 us, p99 4,5 us, p99.9 1064,3 us, max 10,5 ms, 200 SSTables
+[paced] 200000 puts in 2671 ms: p50 2,0 us, p99 6,0 us, p99.9 154,9 us, max 10,6 ms, 200 SSTables
+ */
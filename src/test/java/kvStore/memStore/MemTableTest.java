@@ -1,12 +1,22 @@
 package kvStore.memStore;
 
 import kvStore.StorageEngine;
+import kvStore.fileStore.RangeTombstone;
 import kvStore.fileStore.SSTableManager;
 import kvStore.log.WriteAheadLog;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -43,6 +53,8 @@ public class MemTableTest {
         for (int i = 0; i < 2000; i++) {
             memTable.put("key" + i, "value" + i);
         }
+        // Full MemTables are flushed in the background.
+        memTable.awaitFlush();
 
         // MemTable should have flushed, check if data is still accessible
         assertEquals("value500", ssTableManager.readFromSSTables("key500"));
@@ -102,5 +114,125 @@ public class MemTableTest {
         assertEquals("value2", entry.value);
     }
 
+    @Test
+    void testFullMemTableStaysReadableWhileFlushing() {
+        StorageEngine storageEngine = new StorageEngine(memTable, ssTableManager);
+        for (int i = 0; i < 1500; i++) {
+            storageEngine.put("key" + i, "value" + i);
+        }
+        storageEngine.delete("key7");
+
+        // Whether or not the background flush has finished, every key is found in exactly one place.
+        assertEquals("value500", storageEngine.get("key500"));
+        assertEquals("value1499", storageEngine.get("key1499"));
+        assertNull(storageEngine.get("key7"));
+        memTable.awaitFlush();
+        assertNull(memTable.get("key500"));
+        assertEquals("value500", storageEngine.get("key500"));
+    }
+
+    @Test
+    void testRecoveryReplaysEveryWalFile() {
+        // The first file stands for the WAL of a full MemTable whose flush did not finish.
+        writeAheadLog.appendPut("key1", "old");
+        writeAheadLog.appendPut("key2", "value2");
+        writeAheadLog.rotate();
+        writeAheadLog.appendPut("key1", "new");
+        writeAheadLog.appendDelete("key2");
+        writeAheadLog.close();
+
+        WriteAheadLog reopenedLog = new WriteAheadLog(TEST_DIRECTORY);
+        MemTable recovered = new MemTable(ssTableManager, reopenedLog);
+        recovered.recoverFromWAL();
+        assertEquals("new", recovered.get("key1"));
+        assertTrue(recovered.hasTombstone("key2"));
+
+        // Once flushed, the SSTable holds both files, so neither is replayed again.
+        recovered.flush();
+        assertEquals("new", ssTableManager.readFromSSTables("key1"));
+        assertTrue(new WriteAheadLog(TEST_DIRECTORY).recoverAll().isEmpty());
+    }
+
+    @Test
+    void testCloseFlushesFrozenBuffersAndLeavesTheActiveOneToTheWal() {
+        for (int i = 0; i < 1500; i++) {
+            memTable.put("closed" + i, "value" + i);
+        }
+        memTable.close();
+
+        // The full buffer was flushed, the flush thread is gone and the rest is replayed from the WAL.
+        assertEquals("value500", ssTableManager.readFromSSTables("closed500"));
+        assertThrows(RejectedExecutionException.class, memTable::awaitFlush);
+        WriteAheadLog reopenedLog = new WriteAheadLog(TEST_DIRECTORY);
+        MemTable recovered = new MemTable(ssTableManager, reopenedLog);
+        recovered.recoverFromWAL();
+        assertEquals("value1499", recovered.get("closed1499"));
+        recovered.close();
+    }
+
+    @Test
+    void testWritersRecoverFromFailedFlushes() throws IOException {
+        Path tempDir = Files.createTempDirectory("failing_flush_test");
+        // The first flushes fail, more often than a flush is retried before the flush thread gives up.
+        FailingSSTableManager manager = new FailingSSTableManager(tempDir.toString(), 10);
+        MemTable failing = new MemTable(manager, new WriteAheadLog(tempDir.toString()));
+        for (int i = 0; i < 8500; i++) {
+            failing.put("key" + i, "value" + i);
+        }
+        failing.awaitFlush();
+        assertEquals("value0", manager.readFromSSTables("key0"));
+        assertEquals("value7999", manager.readFromSSTables("key7999"));
+        assertEquals("value8499", failing.get("key8499"));
+        failing.close();
+        manager.close();
+        deleteDirectory(tempDir);
+    }
+
+    @Test
+    void testWritersGetTheErrorOfAFlushThatKeepsFailing() throws IOException {
+        Path tempDir = Files.createTempDirectory("failing_flush_test");
+        FailingSSTableManager manager = new FailingSSTableManager(tempDir.toString(), Integer.MAX_VALUE);
+        MemTable failing = new MemTable(manager, new WriteAheadLog(tempDir.toString()));
+        // Once the frozen buffers are full, a writer fails instead of waiting for a flush that never comes.
+        RuntimeException error = assertThrows(RuntimeException.class, () -> {
+            for (int i = 0; i < 10000; i++) {
+                failing.put("key" + i, "value" + i);
+            }
+        });
+        assertEquals("Error flushing mem table", error.getMessage());
+        // The other writers are not blocked either, and the unflushed changes stay readable.
+        failing.delete("key0");
+        assertNull(failing.get("key0"));
+        assertEquals("value1", failing.get("key1"));
+        assertThrows(RuntimeException.class, failing::close);
+        manager.close();
+        deleteDirectory(tempDir);
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete); //TODO - handle output
+        }
+    }
 
+    // Fails the first flushes.
+    private static class FailingSSTableManager extends SSTableManager {
+        private final AtomicInteger failuresLeft;
+
+        FailingSSTableManager(String directory, int failures) {
+            super(directory);
+            this.failuresLeft = new AtomicInteger(failures);
+        }
+
+        @Override
+        public void writeToSSTable(Map<String, String> data, Map<String, Boolean> tombstones,
+                                   List<RangeTombstone> rangeTombstones) {
+            if (failuresLeft.getAndUpdate(left -> left - 1) > 0) {
+                throw new RuntimeException("Disk full");
+            }
+            super.writeToSSTable(data, tombstones, rangeTombstones);
+        }
+    }
 }